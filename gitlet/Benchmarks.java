@@ -0,0 +1,815 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/** A debugging class whose main program may be invoked as follows:
+ *      java gitlet.Benchmarks chunking FILE...
+ *  which splits each FILE into content-defined chunks as the object
+ *  store would, and reports how many bytes remain once identical chunks
+ *  across all the FILEs are stored only once, along with the rate at
+ *  which the files were chunked and hashed.  Nothing is written.
+ *      java gitlet.Benchmarks checkout FILE...
+ *  stores each FILE in a scratch repository and reports the rate at
+ *  which each checkout.mode writes them back out.
+ *      java gitlet.Benchmarks codec [FILES]
+ *  times encoding and decoding a commit tracking FILES files (1000 by
+ *  default) with CommitCodec and with Java serialization, and reports
+ *  the size of each.
+ *      java gitlet.Benchmarks trees [FILES]
+ *  times storing the trees of commits that each change one of FILES
+ *  files (10000 by default), from scratch and by updating the previous
+ *  commit's trees.
+ *      java gitlet.Benchmarks tables [FILES [COMMITS]]
+ *  compares the heap held by the file tables of COMMITS commits
+ *  (10000 by default) of FILES files (50000 by default) as separate
+ *  HashMaps and as FileTables that share structure.
+ *      java gitlet.Benchmarks prefix [COMMITS]
+ *  writes a commit index of COMMITS random IDs (a million by default)
+ *  to a scratch repository and times resolving 7-digit prefixes of
+ *  them.
+ *      java gitlet.Benchmarks reflog [UPDATES]
+ *  times logging UPDATES branch updates (1000 by default) to a scratch
+ *  reflog, each forced to disk, and then finding entries by number and
+ *  by time.
+ *      java gitlet.Benchmarks index [FILES]
+ *  writes FILES small files (10000 by default) to a scratch working
+ *  directory and times finding the ID of each by hashing it and from
+ *  the stat data the index keeps.
+ *      java gitlet.Benchmarks hashing [FILES [KILOBYTES]]
+ *  writes FILES files (2000 by default) of KILOBYTES each (64 by
+ *  default) to a scratch directory and times hashing them all as
+ *  status does, on 1, 2, 4... threads up to one per processor.
+ *      java gitlet.Benchmarks cache [ROUNDS]
+ *  run in a Gitlet repository, repeats what log and merge do to every
+ *  pair of branches ROUNDS times (10 by default), once with the commit
+ *  cache off and once with it on, and reports the times and hit rate.
+ *      java gitlet.Benchmarks compression [ROUNDS]
+ *  run in a Gitlet repository, trains a dictionary in a scratch
+ *  repository from the objects train-dict would sample, and reports
+ *  the ratio and the rate in uncompressed MB/s at which the sample is
+ *  deflated and inflated ROUNDS times (5 by default), with and
+ *  without the dictionary.
+ *  @author Andrew Tom
+ */
+public class Benchmarks {
+
+    /** Bytes in a megabyte. */
+    private static final double MEGABYTE = 1 << 20;
+
+    /** Nanoseconds in a second. */
+    private static final double SECOND = 1e9;
+
+    /** Run the benchmark named by ARGS[0] on the rest of ARGS. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Benchmarks NAME ARGS...");
+            return;
+        }
+        switch (args[0]) {
+        case "chunking":
+            chunking(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "checkout":
+            checkout(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "codec":
+            codec(args.length > 1 ? Integer.parseInt(args[1]) : CODEC_FILES);
+            break;
+        case "trees":
+            trees(args.length > 1 ? Integer.parseInt(args[1]) : TREE_FILES);
+            break;
+        case "tables":
+            tables(args.length > 1 ? Integer.parseInt(args[1]) : TABLE_FILES,
+                    args.length > 2 ? Integer.parseInt(args[2])
+                            : TABLE_COMMITS);
+            break;
+        case "prefix":
+            prefix(args.length > 1 ? Integer.parseInt(args[1])
+                    : PREFIX_COMMITS);
+            break;
+        case "reflog":
+            reflog(args.length > 1 ? Integer.parseInt(args[1])
+                    : REFLOG_UPDATES);
+            break;
+        case "index":
+            index(args.length > 1 ? Integer.parseInt(args[1])
+                    : INDEX_FILES);
+            break;
+        case "hashing":
+            hashing(args.length > 1 ? Integer.parseInt(args[1])
+                    : HASHING_FILES,
+                    args.length > 2 ? Integer.parseInt(args[2])
+                            : HASHING_KILOBYTES);
+            break;
+        case "cache":
+            cache(args.length > 1 ? Integer.parseInt(args[1])
+                    : CACHE_ROUNDS);
+            break;
+        case "compression":
+            compression(args.length > 1 ? Integer.parseInt(args[1])
+                    : COMPRESSION_ROUNDS);
+            break;
+        default:
+            System.out.println("No benchmark with that name.");
+        }
+    }
+
+    /**
+     * Chunks and hashes FILES, reporting the deduplicated size and the
+     * ingest rate.
+     * @param files The names of the files to chunk.
+     */
+    private static void chunking(String... files) {
+        HashSet<ObjectId> seen = new HashSet<>();
+        long total = 0, unique = 0, chunks = 0;
+        long start = System.nanoTime();
+        byte[] buf = new byte[2 * Chunker.MAX];
+        for (String name : files) {
+            try (InputStream in = Files.newInputStream(new File(name)
+                    .toPath())) {
+                int from = 0, end = 0;
+                boolean eof = false;
+                while (true) {
+                    if (!eof && end - from < Chunker.MAX) {
+                        System.arraycopy(buf, from, buf, 0, end - from);
+                        end -= from;
+                        from = 0;
+                        end += in.readNBytes(buf, end, buf.length - end);
+                        eof = end < buf.length;
+                    }
+                    if (from == end) {
+                        break;
+                    }
+                    int len = Chunker.cut(buf, from, end - from);
+                    ObjectId id = ObjectId.hash(buf, from, len);
+                    chunks += 1;
+                    total += len;
+                    if (seen.add(id)) {
+                        unique += len;
+                    }
+                    from += len;
+                }
+            } catch (IOException excp) {
+                System.out.printf("Cannot read %s.%n", name);
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / SECOND;
+        System.out.printf("%d bytes in %d chunks, %d unique bytes.%n",
+                total, chunks, unique);
+        System.out.printf("Deduplication ratio: %.2f%n",
+                unique == 0 ? 1.0 : (double) total / unique);
+        System.out.printf("Ingest: %.1f MB/s%n",
+                total / MEGABYTE / Math.max(seconds, 1 / SECOND));
+    }
+
+    /**
+     * Stores FILES in a scratch repository and times checking them out
+     * in each checkout mode.
+     * @param files The names of the files to check out.
+     */
+    private static void checkout(String... files) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            File repo = new File(scratch, ".gitlet");
+            ObjectStore.looseDir(repo).mkdirs();
+            ArrayList<ObjectId> ids = new ArrayList<>();
+            long total = 0;
+            for (String name : files) {
+                ids.add(ObjectStore.writeFile(repo, new File(name), null));
+                total += new File(name).length();
+            }
+            for (String mode : CHECKOUT_MODES) {
+                Config.set(repo, "checkout.mode", mode);
+                File out = new File(scratch, mode);
+                out.mkdir();
+                long start = System.nanoTime();
+                for (int k = 0; k < ids.size(); k += 1) {
+                    ObjectStore.checkout(repo, ids.get(k),
+                            new File(out, Integer.toString(k)));
+                }
+                double seconds = (System.nanoTime() - start) / SECOND;
+                System.out.printf("%-8s %.1f MB/s%n", mode,
+                        total / MEGABYTE / Math.max(seconds, 1 / SECOND));
+            }
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Compares CommitCodec with Java serialization on a commit with N
+     * tracked files.
+     * @param n The number of files in the commit.
+     */
+    private static void codec(int n) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            ObjectStore.looseDir(scratch).mkdirs();
+            new File(scratch, "commits").mkdir();
+            codec(scratch, n);
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Compares CommitCodec with Java serialization on a commit with N
+     * tracked files, stored in REPO and read back so that its trees
+     * are read from there.
+     * @param repo The scratch .gitlet directory.
+     * @param n The number of files in the commit.
+     */
+    private static void codec(File repo, int n) {
+        Commit c = new Commit("A commit message",
+                Utils.sha1Id("parent"));
+        c.setTree(Tree.write(repo, files(n)));
+        c.setID();
+        Commit.writeCommit(repo, c.getID(), c);
+        c = Commit.read(repo, c.getID());
+        byte[] binary = CommitCodec.encode(c);
+        byte[] java = Utils.serialize(c);
+        int rounds = Math.max(1, CODEC_WORK / Math.max(n, 1));
+        for (int pass = 0; pass < 2; pass += 1) {
+            long encode = 0, decode = 0, jEncode = 0, jDecode = 0;
+            for (int r = 0; r < rounds; r += 1) {
+                long t0 = System.nanoTime();
+                CommitCodec.encode(c);
+                long t1 = System.nanoTime();
+                try {
+                    CommitCodec.decode(new ByteArrayInputStream(binary));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                long t2 = System.nanoTime();
+                Utils.serialize(c);
+                long t3 = System.nanoTime();
+                Utils.deserialize(java, Commit.class);
+                long t4 = System.nanoTime();
+                encode += t1 - t0;
+                decode += t2 - t1;
+                jEncode += t3 - t2;
+                jDecode += t4 - t3;
+            }
+            if (pass == 0) {
+                continue;
+            }
+            System.out.printf("%-13s %10s %12s %12s%n", "", "bytes",
+                    "encode us", "decode us");
+            System.out.printf("%-13s %10d %12.1f %12.1f%n", "CommitCodec",
+                    binary.length, encode / MICRO / rounds,
+                    decode / MICRO / rounds);
+            System.out.printf("%-13s %10d %12.1f %12.1f%n", "Serializable",
+                    java.length, jEncode / MICRO / rounds,
+                    jDecode / MICRO / rounds);
+        }
+    }
+
+    /**
+     * Times storing the trees of a commit that changes one file of N,
+     * spread over directories, from scratch and by updating its
+     * parent's trees.
+     * @param n The number of files in the commit.
+     */
+    private static void trees(int n) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            ObjectStore.looseDir(scratch).mkdirs();
+            HashMap<String, ObjectId> files = files(n);
+            ObjectId base = Tree.write(scratch, files);
+            HashMap<String, ObjectId> change = new HashMap<>();
+            long full = 0, update = 0;
+            for (int r = 0; r < TREE_ROUNDS; r += 1) {
+                String path = "src/dir" + (r % TREE_DIRS) + "/file"
+                        + r + ".java";
+                ObjectId blob = Utils.sha1Id("new" + r);
+                change.clear();
+                change.put(path, blob);
+                files.put(path, blob);
+                long t0 = System.nanoTime();
+                ObjectId whole = Tree.write(scratch, files);
+                long t1 = System.nanoTime();
+                base = Tree.update(scratch, base, change);
+                long t2 = System.nanoTime();
+                if (!whole.equals(base)) {
+                    throw new IllegalStateException("trees differ");
+                }
+                full += t1 - t0;
+                update += t2 - t1;
+            }
+            System.out.printf("%d files: %.1f us from scratch, "
+                    + "%.1f us by update%n", n,
+                    full / MICRO / TREE_ROUNDS,
+                    update / MICRO / TREE_ROUNDS);
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Compares the heap held by the file tables of a history of
+     * COMMITS commits of N files, each changing a few of its parent's
+     * files, when every commit has its own HashMap, as Tree.flatten
+     * builds, and when they are FileTables, each made from its
+     * parent's. HashMaps are only kept for the first TABLE_SAMPLE
+     * commits, since all of them would not fit, and their cost is
+     * scaled up.
+     * @param n The number of files.
+     * @param commits The number of commits.
+     */
+    private static void tables(int n, int commits) {
+        HashMap<String, ObjectId> base = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            base.put("src/dir" + (i % TREE_DIRS) + "/sub"
+                    + (i / TREE_DIRS % TREE_DIRS) + "/file" + i + ".java",
+                    Utils.sha1Id(Integer.toString(i)));
+        }
+        ArrayList<String> paths = new ArrayList<>(base.keySet());
+        int sample = Math.min(commits, TABLE_SAMPLE);
+        Random random = new Random(n);
+        long before = heap();
+        ArrayList<HashMap<String, ObjectId>> maps = new ArrayList<>();
+        HashMap<String, ObjectId> map = base;
+        for (int c = 0; c < sample; c += 1) {
+            HashMap<String, ObjectId> copy = new HashMap<>();
+            for (String path : map.keySet()) {
+                copy.put(new String(path.toCharArray()),
+                        ObjectId.fromBytes(map.get(path).toBytes(), 0));
+            }
+            copy.putAll(changes(random, paths, c));
+            maps.add(copy);
+            map = copy;
+        }
+        double perMap = (double) (heap() - before) / sample;
+        Reference.reachabilityFence(maps);
+        maps = null;
+        map = null;
+        random = new Random(n);
+        before = heap();
+        ArrayList<FileTable> tables = new ArrayList<>(commits);
+        FileTable table = FileTable.of(base);
+        for (int c = 0; c < commits; c += 1) {
+            table = table.with(changes(random, paths, c));
+            tables.add(table);
+        }
+        long shared = heap() - before;
+        Reference.reachabilityFence(tables);
+        System.out.printf("%d commits of %d files:%n", commits, n);
+        System.out.printf("  HashMap   %10.1f MB (%.2f MB per commit, "
+                + "measured over %d)%n", perMap * commits / MEGABYTE,
+                perMap / MEGABYTE, sample);
+        System.out.printf("  FileTable %10.1f MB (%d distinct paths)%n",
+                shared / MEGABYTE, PathTable.size());
+        if (tables.get(commits - 1).size() != n + commits) {
+            throw new IllegalStateException("wrong table size");
+        }
+    }
+
+    /**
+     * Makes up the changes of one commit: TABLE_CHANGES files of PATHS
+     * modified, and one file added.
+     * @param random Where to choose the files from.
+     * @param paths The paths to choose from.
+     * @param c The number of the commit.
+     * @return The new blob ID of each changed file, by path.
+     */
+    private static HashMap<String, ObjectId> changes(Random random,
+                                                     ArrayList<String> paths,
+                                                     int c) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < TABLE_CHANGES; i += 1) {
+            result.put(paths.get(random.nextInt(paths.size())),
+                    Utils.sha1Id(c + "/" + i));
+        }
+        result.put("src/new/file" + c + ".java", Utils.sha1Id("new" + c));
+        return result;
+    }
+
+    /**
+     * Returns the bytes of heap in use once garbage has been collected.
+     * @return The bytes in use.
+     */
+    private static long heap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_PASSES; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Makes up N files spread over TREE_DIRS directories.
+     * @param n The number of files.
+     * @return A blob ID for each file, by path.
+     */
+    private static HashMap<String, ObjectId> files(int n) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            result.put("src/dir" + (i % TREE_DIRS) + "/file" + i + ".java",
+                    Utils.sha1Id(Integer.toString(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Times prefix lookups in a commit index of N random IDs.
+     * @param n The number of IDs in the index.
+     */
+    private static void prefix(int n) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            Random random = new Random(n);
+            ArrayList<ObjectId> ids = new ArrayList<>(n);
+            byte[] raw = new byte[ObjectId.BYTES];
+            for (int i = 0; i < n; i += 1) {
+                random.nextBytes(raw);
+                ids.add(ObjectId.fromBytes(raw, 0));
+            }
+            String[] prefixes = new String[PREFIX_LOOKUPS];
+            for (int i = 0; i < prefixes.length; i += 1) {
+                prefixes[i] = ids.get(random.nextInt(n)).toString()
+                        .substring(0, PREFIX_DIGITS);
+            }
+            CommitIndex.write(scratch, ids);
+            CommitIndex index = CommitIndex.open(scratch);
+            int ambiguous = 0;
+            long start = 0;
+            for (int pass = 0; pass < 2; pass += 1) {
+                start = System.nanoTime();
+                ambiguous = 0;
+                for (String p : prefixes) {
+                    if (index.find(p, 2).size() != 1) {
+                        ambiguous += 1;
+                    }
+                }
+            }
+            double each = (System.nanoTime() - start) / MICRO
+                    / prefixes.length;
+            System.out.printf("%d commits: %.2f us per lookup, "
+                    + "%d of %d prefixes ambiguous.%n", n, each,
+                    ambiguous, prefixes.length);
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Times appending N updates to the reflog of a scratch repository,
+     * and then reading entries by number and finding them by time.
+     * @param n The number of updates.
+     */
+    private static void reflog(int n) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            ObjectId old = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                ObjectId id = Utils.sha1Id(Integer.toString(i));
+                Reflog.append(scratch, "master", old, id, "commit: " + i);
+                old = id;
+            }
+            double append = (System.nanoTime() - start) / MICRO / n;
+            Reflog log = Reflog.open(scratch, "master");
+            Random random = new Random(n);
+            long first = log.time(0), span = log.time(n - 1) - first + 1;
+            start = System.nanoTime();
+            long found = 0;
+            for (int i = 0; i < REFLOG_LOOKUPS; i += 1) {
+                found += log.newId(random.nextInt(n)).firstByte();
+            }
+            double byIndex = (System.nanoTime() - start) / MICRO
+                    / REFLOG_LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < REFLOG_LOOKUPS; i += 1) {
+                long time = first + (long) (random.nextDouble() * span);
+                found += log.before(time);
+            }
+            double byTime = (System.nanoTime() - start) / MICRO
+                    / REFLOG_LOOKUPS;
+            System.out.printf("%d updates: %.1f us per append, "
+                    + "%.3f us per entry, %.3f us per time%n",
+                    n, append, byIndex, byTime);
+            if (found < 0 || log.before(first - 1) != -1
+                    || log.before(first + span) != n - 1) {
+                throw new IllegalStateException("wrong reflog entries");
+            }
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Times finding the IDs of N working files by hashing each and
+     * through an index that has recorded their stat data.
+     * @param n The number of files.
+     */
+    private static void index(int n) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            File repo = new File(scratch, ".gitlet");
+            repo.mkdir();
+            for (int i = 0; i < n; i += 1) {
+                Utils.writeContents(new File(scratch, "f" + i),
+                        "contents of file " + i + "\n");
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                Utils.sha1FileId(new File(scratch, "f" + i));
+            }
+            double hashed = (System.nanoTime() - start) / SECOND;
+            Index index = Index.read(repo);
+            for (int i = 0; i < n; i += 1) {
+                index.hash("f" + i);
+            }
+            index.write();
+            index = Index.read(repo);
+            start = System.nanoTime();
+            int cached = 0;
+            for (int i = 0; i < n; i += 1) {
+                if (index.cached("f" + i) != null) {
+                    cached += 1;
+                }
+            }
+            double statted = (System.nanoTime() - start) / SECOND;
+            System.out.printf("%d files: %.1f ms hashing, %.1f ms from "
+                    + "the index (%d cached)%n",
+                    n, hashed * MILLI, statted * MILLI, cached);
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Times hashing N files of KILOBYTES each on increasing numbers of
+     * threads.
+     * @param n The number of files.
+     * @param kilobytes The size of each.
+     */
+    private static void hashing(int n, int kilobytes) {
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            ArrayList<String> names = new ArrayList<>();
+            Random random = new Random(n);
+            byte[] contents = new byte[kilobytes << 10];
+            for (int i = 0; i < n; i += 1) {
+                random.nextBytes(contents);
+                names.add("f" + i);
+                Utils.writeContents(new File(scratch, "f" + i), contents);
+            }
+            ObjectId[] serial = Status.hash(scratch, names, 1);
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads <= cores;
+                 threads = threads == cores ? cores + 1
+                         : Math.min(2 * threads, cores)) {
+                long start = System.nanoTime();
+                ObjectId[] ids = Status.hash(scratch, names, threads);
+                double seconds = (System.nanoTime() - start) / SECOND;
+                System.out.printf("%2d threads %8.1f ms %8.1f MB/s%n",
+                        threads, seconds * MILLI,
+                        (double) n * contents.length / MEGABYTE / seconds);
+                if (!Arrays.equals(ids, serial)) {
+                    throw new IllegalStateException("wrong hashes");
+                }
+            }
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Times history walks over the branches of the repository in the
+     * current directory with and without the commit cache.
+     * @param rounds How many times to walk them.
+     */
+    private static void cache(int rounds) {
+        File repo = new File(".gitlet");
+        ArrayList<ObjectId> heads = new ArrayList<>(Refs.all(repo).values());
+        int[] sizes = {0, Commit.DEFAULT_CACHE_SIZE};
+        for (int size : sizes) {
+            Commit.setCacheSize(size);
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                CommitGraph graph = CommitGraph.open(repo);
+                for (ObjectId a : heads) {
+                    for (ObjectId b : heads) {
+                        mergeWalk(graph, a, b);
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / SECOND;
+            long hits = Commit.cacheHits(), misses = Commit.cacheMisses();
+            System.out.printf("cache %-5d %8.1f ms  %d hits, %d misses%n",
+                    size, seconds * MILLI, hits, misses);
+        }
+    }
+
+    /**
+     * Times compressing and decompressing a sample of the objects of
+     * the repository in the current directory, with no dictionary and
+     * with one trained on the sample.
+     * @param rounds How many times to compress and decompress it.
+     */
+    private static void compression(int rounds) {
+        ArrayList<byte[]> samples = Compression.samples(new File(".gitlet"));
+        File scratch = null;
+        try {
+            scratch = Files.createTempDirectory("gitlet-bench").toFile();
+            byte[] dict = Compression.train(scratch, samples);
+            if (dict == null) {
+                System.out.println("Not enough objects to train a "
+                        + "dictionary.");
+                return;
+            }
+            long raw = 0;
+            for (byte[] sample : samples) {
+                raw += sample.length;
+            }
+            System.out.printf("%d objects, %.1f MB; %d-byte dictionary%n",
+                    samples.size(), raw / MEGABYTE, dict.length);
+            System.out.printf("%-13s %8s %13s %13s%n", "", "ratio",
+                    "deflate MB/s", "inflate MB/s");
+            for (byte[] preset : new byte[][] {null, dict}) {
+                long deflate = 0, inflate = 0, stored = 0;
+                for (int pass = 0; pass < 2; pass += 1) {
+                    deflate = 0;
+                    inflate = 0;
+                    stored = 0;
+                    for (int r = 0; r < rounds; r += 1) {
+                        for (byte[] sample : samples) {
+                            long t0 = System.nanoTime();
+                            byte[] packed = Compression.deflate(sample,
+                                    preset);
+                            long t1 = System.nanoTime();
+                            byte[] back = Compression.decompress(scratch,
+                                    packed);
+                            long t2 = System.nanoTime();
+                            if (!Arrays.equals(back, sample)) {
+                                throw new IllegalStateException(
+                                        "wrong round trip");
+                            }
+                            deflate += t1 - t0;
+                            inflate += t2 - t1;
+                            stored += packed.length;
+                        }
+                    }
+                }
+                double bytes = (double) raw * rounds / MEGABYTE;
+                System.out.printf("%-13s %8.2f %13.1f %13.1f%n",
+                        preset == null ? "no dictionary" : "dictionary",
+                        (double) raw * rounds / stored,
+                        bytes / (deflate / SECOND),
+                        bytes / (inflate / SECOND));
+            }
+        } catch (IOException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Retrieves the commits that merging B into A and then logging
+     * both would: the heads, looked up repeatedly as the commands do,
+     * the split point, and both first-parent histories.
+     * @param graph The commit graph of the repository.
+     * @param a The ID of the current head.
+     * @param b The ID of the given head.
+     */
+    private static void mergeWalk(CommitGraph graph, ObjectId a,
+                                  ObjectId b) {
+        for (int i = 0; i < HEAD_LOOKUPS; i += 1) {
+            Commit.retrieve(a);
+            Commit.retrieve(b);
+        }
+        int split = graph.mergeBase(graph.index(a), graph.index(b));
+        Commit.retrieve(graph.id(split));
+        for (ObjectId head : new ObjectId[] {a, b}) {
+            for (int k = graph.index(head); k != CommitGraph.NONE;
+                 k = graph.parent(k, 0)) {
+                Commit.retrieve(graph.id(k));
+            }
+        }
+    }
+
+    /**
+     * Deletes a file, or a directory and everything under it.
+     * @param f The file to delete, or null.
+     */
+    private static void delete(File f) {
+        if (f == null) {
+            return;
+        }
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    /** Nanoseconds in a microsecond. */
+    private static final double MICRO = 1e3;
+
+    /** Default number of files in the codec benchmark's commit. */
+    private static final int CODEC_FILES = 1000;
+
+    /** Files encoded per measured pass of the codec benchmark. */
+    private static final int CODEC_WORK = 2000000;
+
+    /** Default number of files in the trees benchmark's commits. */
+    private static final int TREE_FILES = 10000;
+
+    /** Directories the benchmark files are spread over. */
+    private static final int TREE_DIRS = 100;
+
+    /** Commits timed by the trees benchmark. */
+    private static final int TREE_ROUNDS = 50;
+
+    /** Default number of files in the tables benchmark's commits. */
+    private static final int TABLE_FILES = 50000;
+
+    /** Default number of commits of the tables benchmark. */
+    private static final int TABLE_COMMITS = 10000;
+
+    /** Commits whose HashMaps the tables benchmark keeps. */
+    private static final int TABLE_SAMPLE = 20;
+
+    /** Files each commit of the tables benchmark modifies. */
+    private static final int TABLE_CHANGES = 4;
+
+    /** Collections run before measuring the heap. */
+    private static final int GC_PASSES = 3;
+
+    /** Default number of commits in the prefix benchmark's index. */
+    private static final int PREFIX_COMMITS = 1000000;
+
+    /** Lookups timed by the prefix benchmark. */
+    private static final int PREFIX_LOOKUPS = 100000;
+
+    /** Length of the prefixes looked up by the prefix benchmark. */
+    private static final int PREFIX_DIGITS = 7;
+
+    /** Default number of updates of the reflog benchmark. */
+    private static final int REFLOG_UPDATES = 1000;
+
+    /** Lookups of each kind timed by the reflog benchmark. */
+    private static final int REFLOG_LOOKUPS = 100000;
+
+    /** Default number of files of the index benchmark. */
+    private static final int INDEX_FILES = 10000;
+
+    /** Default number of files of the hashing benchmark. */
+    private static final int HASHING_FILES = 2000;
+
+    /** Default kilobytes per file of the hashing benchmark. */
+    private static final int HASHING_KILOBYTES = 64;
+
+    /** Default number of rounds of the cache benchmark. */
+    private static final int CACHE_ROUNDS = 10;
+
+    /** Times the cache benchmark looks up each head per merge. */
+    private static final int HEAD_LOOKUPS = 4;
+
+    /** Default number of rounds of the compression benchmark. */
+    private static final int COMPRESSION_ROUNDS = 5;
+
+    /** Milliseconds in a second. */
+    private static final double MILLI = 1e3;
+
+    /** The checkout modes compared by the checkout benchmark. */
+    private static final String[] CHECKOUT_MODES = {
+        "copy", "transfer", "hardlink"
+    };
+}
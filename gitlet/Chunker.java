@@ -0,0 +1,92 @@
+package gitlet;
+
+/**
+ * Content-defined chunking in the style of FastCDC. A Gear rolling
+ * hash is run over the data and a chunk ends where the top bits of
+ * the hash are all zero. Boundaries therefore depend only on the
+ * nearby bytes, so an edit in one place of a large file changes only
+ * the chunks around it, and the rest are stored once no matter how
+ * many versions or files contain them. Until a chunk reaches AVERAGE
+ * bytes a stricter mask is used, and a looser one after, which keeps
+ * chunk sizes close to AVERAGE.
+ * @author Andrew Tom
+ */
+class Chunker {
+
+    /** Smallest chunk, other than the last one of a file. */
+    static final int MIN = 1 << 14;
+
+    /** Size that chunks are normalized towards. */
+    static final int AVERAGE = 1 << 16;
+
+    /** Largest chunk. */
+    static final int MAX = 1 << 18;
+
+    /** Number of mask bits that gives chunks of about AVERAGE bytes. */
+    private static final int BITS = 16;
+
+    /** Bits in a long. */
+    private static final int LONG_BITS = 64;
+
+    /** Mask used before a chunk reaches AVERAGE bytes. */
+    private static final long MASK_SMALL = topBits(BITS + 2);
+
+    /** Mask used once a chunk is past AVERAGE bytes. */
+    private static final long MASK_LARGE = topBits(BITS - 2);
+
+    /** The Gear table: one fixed pseudo-random value per byte value.
+     *  It must never change, or chunks stored by earlier versions
+     *  would no longer be found again. */
+    private static final long[] GEAR = new long[1 << Byte.SIZE];
+
+    static {
+        long seed = 0x67697466656c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Finds the end of the chunk that starts at OFF in BUF.
+     * @param buf The data being chunked.
+     * @param off The start of the chunk.
+     * @param len The number of bytes available from OFF. If this is
+     *            less than MAX, the data must end there.
+     * @return The length of the chunk starting at OFF.
+     */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN) {
+            return len;
+        }
+        int end = Math.min(len, MAX);
+        int normal = Math.min(end, AVERAGE);
+        long hash = 0;
+        int i = MIN;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns a mask of the top N bits of a long.
+     * @param n The number of bits.
+     * @return The mask.
+     */
+    private static long topBits(int n) {
+        return ((1L << n) - 1) << (LONG_BITS - n);
+    }
+}
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of where content-defined chunks end.
+ *  @author Andrew Tom
+ */
+public class ChunkerTest {
+
+    /** Data of at most MIN bytes is a single chunk. */
+    @Test
+    public void shortDataIsOneChunk() {
+        byte[] data = random(Chunker.MIN, 1);
+        assertEquals(0, Chunker.cut(data, 0, 0));
+        assertEquals(5, Chunker.cut(data, 0, 5));
+        assertEquals(Chunker.MIN, Chunker.cut(data, 0, Chunker.MIN));
+    }
+
+    /**
+     * Every chunk but the last is longer than MIN and none is longer
+     * than MAX, on random data and on data with no variation at all.
+     * The random chunks average close to AVERAGE.
+     */
+    @Test
+    public void chunksStayWithinBounds() {
+        byte[] data = random(SIZE, 2);
+        ArrayList<Integer> sizes = chunks(data, 0, data.length);
+        assertTrue(sizes.size() > 1);
+        double mean = (double) SIZE / sizes.size();
+        assertTrue(mean > Chunker.AVERAGE / 2 && mean < Chunker.AVERAGE * 2);
+        chunks(new byte[SIZE], 0, SIZE);
+    }
+
+    /** Boundaries depend on the data, not on where it lies in a buffer. */
+    @Test
+    public void boundariesIgnoreOffset() {
+        byte[] data = random(SIZE, 3);
+        byte[] shifted = new byte[SIZE + SHIFT];
+        System.arraycopy(data, 0, shifted, SHIFT, SIZE);
+        assertEquals(chunks(data, 0, SIZE), chunks(shifted, SHIFT, SIZE));
+    }
+
+    /** Inserting bytes near the start changes only the chunks around it. */
+    @Test
+    public void insertionChangesFewChunks() {
+        byte[] data = random(SIZE, 4);
+        byte[] edited = new byte[SIZE + SHIFT];
+        System.arraycopy(data, 0, edited, 0, Chunker.MIN);
+        System.arraycopy(data, Chunker.MIN, edited, Chunker.MIN + SHIFT,
+                         SIZE - Chunker.MIN);
+        HashSet<ObjectId> before = ids(data);
+        HashSet<ObjectId> after = ids(edited);
+        after.removeAll(before);
+        assertTrue(after.size() <= 2);
+    }
+
+    /**
+     * Splits LEN bytes of DATA at OFF into chunks, checking the size of
+     * each.
+     * @param data The data to split.
+     * @param off Where the data starts.
+     * @param len The number of bytes to split.
+     * @return The size of each chunk in order.
+     */
+    private static ArrayList<Integer> chunks(byte[] data, int off, int len) {
+        ArrayList<Integer> result = new ArrayList<>();
+        int pos = 0;
+        while (pos < len) {
+            int left = len - pos;
+            int size = Chunker.cut(data, off + pos, left);
+            if (left <= Chunker.MIN) {
+                assertEquals(left, size);
+            } else {
+                assertTrue(size > Chunker.MIN);
+                assertTrue(size <= Math.min(left, Chunker.MAX));
+            }
+            result.add(size);
+            pos += size;
+        }
+        assertEquals(len, pos);
+        return result;
+    }
+
+    /**
+     * Returns the IDs of the chunks of DATA.
+     * @param data The data to split.
+     * @return The ID of each distinct chunk.
+     */
+    private static HashSet<ObjectId> ids(byte[] data) {
+        HashSet<ObjectId> result = new HashSet<>();
+        int pos = 0;
+        for (int size : chunks(data, 0, data.length)) {
+            result.add(ObjectId.hash(data, pos, size));
+            pos += size;
+        }
+        return result;
+    }
+
+    /**
+     * Returns LEN pseudo-random bytes.
+     * @param len The number of bytes.
+     * @param seed The seed that fixes them.
+     * @return The bytes.
+     */
+    private static byte[] random(int len, long seed) {
+        byte[] result = new byte[len];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Size of the data split by the tests: about 64 average chunks. */
+    private static final int SIZE = 1 << 22;
+
+    /** Number of bytes data is moved or grown by. */
+    private static final int SHIFT = 1000;
+}
@@ -1,8 +1,16 @@
 package gitlet;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Date;
 import java.util.ArrayList;
 import java.text.SimpleDateFormat;
@@ -14,53 +22,77 @@ import java.text.SimpleDateFormat;
 public class Commit implements Serializable {
 
     /**
-     * The HashMap of files mapped to Hash IDs.
+     * Pinned so that commits written before this class grew new
+     * methods can still be read.
      */
-    private HashMap<String, String> fileNameToHash = new HashMap<>();
+    private static final long serialVersionUID = 2711918607199258730L;
 
     /**
-     * The instance variable of a commit's msg.
+     * The fields of commits stored with Java serialization, before
+     * CommitCodec: every ID is a hex String. Such commits can still be
+     * read, and migrate rewrites them. Their babiesBranch and branch
+     * are ignored, since neither is recorded any more.
      */
-    private String msg;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("fileNameToHash", HashMap.class),
+        new ObjectStreamField("msg", String.class),
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("parents", ArrayList.class),
+        new ObjectStreamField("babiesBranch", ArrayList.class),
+        new ObjectStreamField("myDate", String.class),
+        new ObjectStreamField("branch", String.class),
+    };
 
     /**
-     * The instance variable of a commit's id.
+     * The table of files mapped to Hash IDs, or null until it is
+     * first needed for a commit read with a tree.
      */
-    private String id;
+    private FileTable fileNameToHash = FileTable.EMPTY;
 
     /**
-     * An ArrayList of Strings showing the parents
-     * of a commit.
+     * The ID of the root Tree of the commit's files, or null until it
+     * is first needed for a commit built from a HashMap.
      */
-    private ArrayList<String> parents = new ArrayList<>();
+    private ObjectId tree;
 
     /**
-     * An ArrayList of Strings showing the branch of
-     * a commit's babies branches.
+     * The .gitlet directory the commit was read from, where its trees
+     * are, or null for the one in the current directory.
      */
-    private ArrayList<String> babiesBranch = new ArrayList<>();
+    private transient File store;
 
     /**
-     * The instance variable for a commit's date.
+     * The instance variable of a commit's msg.
      */
-    private String myDate;
+    private String msg;
 
     /**
-     * The instance variable for a commit's branch.
+     * The instance variable of a commit's id.
      */
-    private String branch;
+    private ObjectId id;
+
+    /**
+     * An ArrayList of the IDs of the parents of a commit. The
+     * initial commit has a single null parent.
+     */
+    private ArrayList<ObjectId> parents = new ArrayList<>();
+
+    /**
+     * The instance variable for a commit's date.
+     */
+    private String myDate;
 
     /**
      * Constructor for commit class.
-     * @param parent The parent(s) of the commit in an ArrayList<String>.
      * @param message The String message to be included in the msg
      *                instance variable.
+     * @param parentIDs The parent(s) of the commit; none for the
+     *                  initial commit.
      */
-    Commit(String parent, String message) {
+    Commit(String message, ObjectId... parentIDs) {
 
-        setID();
         msg = message;
-        if (parent == null) {
+        if (parentIDs.length == 0) {
             parents.add(null);
             myDate = "Wed Dec 31 17:00:00 1969 -0700";
             return;
@@ -69,65 +101,143 @@ public class Commit implements Serializable {
         SimpleDateFormat f = new SimpleDateFormat("E MMM d hh:mm:ss yyyy Z");
         myDate = f.format(d);
 
+        parents.addAll(Arrays.asList(parentIDs));
+    }
 
-        String[] parentArr = parent.split(" ");
-        parents.addAll(Arrays.asList(parentArr));
+    /**
+     * Constructor for a commit read back from storage.
+     * @param message The commit message.
+     * @param date The date of the commit, as shown by log.
+     * @param parentIDs The parents, or a single null for the initial
+     *                  commit.
+     * @param files The tracked files mapped to their blob IDs.
+     */
+    Commit(String message, String date, ArrayList<ObjectId> parentIDs,
+           HashMap<String, ObjectId> files) {
+        msg = message;
+        myDate = date;
+        parents = parentIDs;
+        fileNameToHash = FileTable.of(files);
+    }
+
+    /**
+     * Constructor for a commit read back from storage with a tree.
+     * @param message The commit message.
+     * @param date The date of the commit, as shown by log.
+     * @param parentIDs The parents, or a single null for the initial
+     *                  commit.
+     * @param root The ID of the root tree of the commit's files.
+     */
+    Commit(String message, String date, ArrayList<ObjectId> parentIDs,
+           ObjectId root) {
+        msg = message;
+        myDate = date;
+        parents = parentIDs;
+        fileNameToHash = null;
+        tree = root;
     }
 
     /**
      * The getter method for id instance var.
-     * @return The String id.
+     * @return The ObjectId id.
      */
-    public String getID() {
+    public ObjectId getID() {
         return id;
     }
 
     /**
-     * The getter method for the fileNameToHash var.
-     * @return HashMap of Strings mapped to strings.
+     * The getter method for the fileNameToHash var, which is read from
+     * the commit's trees the first time. If the first parent is in the
+     * commit cache with its files listed, only the trees that differ
+     * from the parent's are read, and the table shares the rest of the
+     * parent's.
+     * @return Table of file names mapped to blob IDs.
      */
-    public HashMap<String, String> getFileNameToHash() {
+    public FileTable getFileNameToHash() {
+        if (fileNameToHash == null) {
+            Commit parent = parents.get(0) == null || cache == null ? null
+                    : cache.get(parents.get(0));
+            if (parent != null && parent.fileNameToHash != null
+                    && parent.tree != null
+                    && parent.repo().equals(repo())) {
+                HashMap<String, ObjectId> changes = new HashMap<>();
+                for (Map.Entry<String, ObjectId[]> change
+                         : Tree.diff(repo(), parent.tree, tree).entrySet()) {
+                    changes.put(change.getKey(), change.getValue()[1]);
+                }
+                fileNameToHash = parent.fileNameToHash.with(changes);
+            } else {
+                fileNameToHash = FileTable.of(Tree.flatten(repo(), tree));
+            }
+        }
         return fileNameToHash;
     }
 
     /**
-     * The getter method for the stored date var.
-     * @return String of myDate.
+     * Returns the ID of the blob of one file of the commit, reading
+     * only the trees on its path if the files have not been listed.
+     * @param fileName The path of the file.
+     * @return The ID of its blob, or null if the commit lacks it.
      */
-    public String getMyDate() {
-        return myDate;
+    public ObjectId fileID(String fileName) {
+        if (fileNameToHash == null) {
+            return Tree.lookup(repo(), tree, fileName);
+        }
+        return fileNameToHash.get(fileName);
     }
 
     /**
-     * Getter method for the parents ArrayList.
-     * @return The ArrayList of parents.
+     * Returns the ID of the root tree of the commit's files, storing
+     * the trees first if the commit was built from a table.
+     * @return The ID of the root tree.
      */
-    public ArrayList<String> getParents() {
-        return parents;
+    public ObjectId getTree() {
+        if (tree == null) {
+            tree = Tree.write(repo(), fileNameToHash);
+        }
+        return tree;
+    }
+
+    /**
+     * Reports whether the commit's files are held in stored trees,
+     * rather than only in a table, as in commits made before trees.
+     * @return True if the commit has a root tree.
+     */
+    public boolean hasTree() {
+        return tree != null;
     }
 
     /**
-     * The getter method of the babiesBranch instance var.
-     * @return ArrayList containing babies branches.
+     * Sets the files of the commit to those under a stored tree.
+     * @param root The ID of the root tree.
      */
-    public ArrayList<String> getBabiesBranch() {
-        return babiesBranch;
+    public void setTree(ObjectId root) {
+        tree = root;
+        fileNameToHash = null;
     }
 
     /**
-     * Getter method for the branch instance var.
-     * @return String of the commit's branch.
+     * Returns the .gitlet directory holding this commit's trees.
+     * @return The repository it was read from, or the current one.
      */
-    public String getBranch() {
-        return branch;
+    private File repo() {
+        return store == null ? new File(".gitlet") : store;
+    }
+
+    /**
+     * The getter method for the stored date var.
+     * @return String of myDate.
+     */
+    public String getMyDate() {
+        return myDate;
     }
 
     /**
-     * Setter method of the branch instance var.
-     * @param branchName The name for the branch to be set to.
+     * Getter method for the parents ArrayList.
+     * @return The ArrayList of parents.
      */
-    public void setBranch(String branchName) {
-        branch = branchName;
+    public ArrayList<ObjectId> getParents() {
+        return parents;
     }
 
     /**
@@ -139,37 +249,13 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Grabs a blob from storage.
+     * Grabs a blob from storage, looking in the packs before the
+     * loose blob files.
      * @param id The id of the blob.
      * @return The byte[] form of a blob.
      */
-    public static byte[] retrieveBlob(String id) {
-        File blobStorage = new File(".gitlet/blobby/" + id);
-        return Utils.readContents(blobStorage);
-    }
-
-    /**
-     * Adds all parent/tracked files to the commit
-     * which are not staged for removal.
-     * @param newCommit The new commit being created.
-     * @param parent The parent commit to bring tracked files from.
-     */
-    public static void addParentFilesToCommit(Commit newCommit, Commit parent) {
-        File removeStage = new File(".gitlet/removeStage");
-        String[] removeLst = removeStage.list();
-        ArrayList<String> checker = new ArrayList<>(Arrays.asList(removeLst));
-
-        for (String str : parent.fileNameToHash.keySet()) {
-            if (checker.contains(str)) {
-                File del = new File(removeStage.getPath() + "/" + str);
-                del.delete();
-                continue;
-            }
-            if (!newCommit.fileNameToHash.containsKey(str)) {
-                String hash = parent.fileNameToHash.get(str);
-                newCommit.fileNameToHash.put(str, hash);
-            }
-        }
+    public static byte[] retrieveBlob(ObjectId id) {
+        return ObjectStore.read(new File(".gitlet"), id);
     }
 
     /**
@@ -183,39 +269,11 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Adds all files from the staging area to the commit.
-     * @param newCommit The commit that is being created.
-     */
-    public static void addStagingFilesToCommit(Commit newCommit) {
-        File addStage = new File(".gitlet/addStage");
-        File blobStorage = new File(".gitlet/blobby");
-        String[] added = addStage.list();
-
-        for (String str : added) {
-
-            File curObjLocation = new File(addStage.getPath() + "/" + str);
-
-            byte[] curObj = Utils.readContents(curObjLocation);
-
-            String hashBlob = Utils.sha1((Object) curObj);
-
-            File serialized = new File(blobStorage.getPath() + "/" + hashBlob);
-
-            Utils.writeContents(serialized, (Object) curObj);
-
-            newCommit.fileNameToHash.put(str, hashBlob);
-
-            curObjLocation.delete();
-        }
-    }
-
-    /**
-     * Sets the ID of a commit.
+     * Sets the ID of a commit to the hash of its contents; see
+     * CommitCodec.
      */
     public void setID() {
-        byte[] commitByte = Utils.serialize(this);
-        String hashID = Utils.sha1((Object) commitByte);
-        this.id = hashID;
+        this.id = CommitCodec.id(this);
     }
 
     /**
@@ -229,14 +287,9 @@ public class Commit implements Serializable {
      * @return A boolean of whether said blob should be added or not.
      */
     public static boolean doNotAdd(String filePath, Commit curCommit,
-                                   String addFileHash) {
-        if (curCommit.fileNameToHash.containsKey(filePath)) {
-            String compare = curCommit.fileNameToHash.get(filePath);
-            if (compare.equals(addFileHash)) {
-                return true;
-            }
-        }
-        return false;
+                                   ObjectId addFileHash) {
+        ObjectId compare = curCommit.fileID(filePath);
+        return compare != null && compare.equals(addFileHash);
     }
 
     /**
@@ -244,128 +297,241 @@ public class Commit implements Serializable {
      * @param id The ID of the commit to be written.
      * @param newCommit The object commit to be written.
      */
-    public static void writeCommit(String id, Commit newCommit) {
-        File commitStorage = new File(".gitlet/commits");
-        File writeCommitLocation = new File(commitStorage.getPath() + "/" + id);
-        Utils.writeObject(writeCommitLocation, newCommit);
+    public static void writeCommit(ObjectId id, Commit newCommit) {
+        writeCommit(new File(".gitlet"), id, newCommit);
     }
 
     /**
-     * Update a pointer in the pointer Map.
-     * @param branchName The branch that is being updated.
-     * @param hashCommit The ID to be inserted.
+     * Writes a commit to the storage of a repository in the form given
+     * by CommitCodec, compressed if that repository has compression
+     * turned on, and records it in the commit index and the message
+     * index. A stored commit never changes, so nothing is written if the
+     * repository already has it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the commit to be written.
+     * @param newCommit The object commit to be written.
      */
-    public static void updatePointers(String branchName, String hashCommit) {
-        File headPointers = new File(".gitlet/headPointers");
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-
-        pointerMap.put(branchName, hashCommit);
-
-        Utils.writeObject(headPointers, pointerMap);
+    public static void writeCommit(File repo, ObjectId id,
+                                   Commit newCommit) {
+        File writeCommitLocation = new File(new File(repo, "commits"),
+                id.toString());
+        if (writeCommitLocation.exists()) {
+            return;
+        }
+        byte[] stored = Compression.compress(repo,
+                CommitCodec.encode(newCommit));
+        Utils.writeContents(writeCommitLocation, (Object) stored);
+        CommitIndex.add(repo, id);
+        MessageIndex.add(repo, newCommit);
     }
 
     /**
-     * Grabs the name of the current branch.
-     * @return Name of the current branch.
+     * Reads a commit from the storage of a repository, decoding it as it
+     * is read. Commits stored by older Gitlets with Java serialization
+     * are read too.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The full ID of the commit.
+     * @return The commit whose hash is ID.
      */
-    public static String grabCurrentBranch() {
-        File headPointers = new File(".gitlet/headPointers");
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-        String curBranch = pointerMap.get("current");
-        return curBranch;
+    public static Commit read(File repo, ObjectId id) {
+        File storedCommit = new File(new File(repo, "commits"),
+                id.toString());
+        try (BufferedInputStream in = new BufferedInputStream(
+                Files.newInputStream(storedCommit.toPath()))) {
+            in.mark(ObjectStore.HEADER);
+            byte[] head = in.readNBytes(ObjectStore.HEADER);
+            BufferedInputStream body = in;
+            if (ObjectStore.typeOf(head) == ObjectStore.ZLIB) {
+                body = new BufferedInputStream(
+                        Compression.inflating(repo, in));
+            } else {
+                in.reset();
+            }
+            Commit result;
+            if (CommitCodec.isEncoded(body)) {
+                result = CommitCodec.decode(body);
+            } else {
+                result = (Commit) new ObjectInputStream(body).readObject();
+            }
+            result.id = id;
+            result.store = repo;
+            return result;
+        } catch (IOException | ClassNotFoundException | ClassCastException
+                 excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /**
-     * Grabs an ArrayList<String> of all branches.
-     * @return Returns the list of all branches.
+     * Grabs a commit from storage by an ID typed by the user, which
+     * may be abbreviated to any unique prefix. Prefixes are looked up
+     * in the commit index.
+     * @param id The ID hash of the commit to retrieve, or a prefix of it.
+     * @return Returns the commit whose hash is ID, or null.
      */
-    public static ArrayList<String> grabAllBranches() {
-        File headPointers = new File(".gitlet/headPointers");
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-        ArrayList<String> result = new ArrayList<>();
-        String current = pointerMap.get("current");
-        result.add(current);
-        for (String key : pointerMap.keySet()) {
-            if (!key.equals(current) && !key.equals("current")) {
-                result.add(key);
-            }
+    public static Commit retrieve(String id) {
+        if (ObjectId.isId(id)) {
+            return retrieve(ObjectId.parse(id));
         }
-        return result;
+        ArrayList<ObjectId> found =
+                CommitIndex.open(new File(".gitlet")).find(id, 2);
+        if (found.size() > 1) {
+            System.out.println("More than one commit has that id prefix.");
+            return null;
+        }
+        if (found.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        return retrieve(found.get(0));
     }
 
     /**
-     * Clears the entire stage, both add and remove.
+     * Grabs a commit from storage, or from the commit cache if it has
+     * been read before by this process. A commit never changes once
+     * made, so cached commits never go stale.
+     * @param id The ID hash of the commit to retrieve.
+     * @return Returns the commit whose hash is ID, or null.
      */
-    public static void clearStage() {
-        File addStage = new File(".gitlet/addStage");
-        File removeStage = new File(".gitlet/removeStage");
-        for (String file : addStage.list()) {
-            File deleteAdd = new File(addStage.getPath() + "/" + file);
-            deleteAdd.delete();
+    public static Commit retrieve(ObjectId id) {
+        Commit cached = cache().get(id);
+        if (cached != null) {
+            hits += 1;
+            return cached;
         }
-        for (String file : removeStage.list()) {
-            File deleteRemove = new File(removeStage.getPath() + "/" + file);
-            deleteRemove.delete();
+        File storedCommit = new File(".gitlet/commits/" + id);
+        if (!storedCommit.exists()) {
+            System.out.println("No commit with that id exists.");
+            return null;
         }
+        misses += 1;
+        Commit result = read(new File(".gitlet"), id);
+        cache().put(id, result);
+        return result;
     }
 
     /**
-     * Grabs the latest commit on the current branch.
-     * @return Returns the commit on the current branch.
+     * Empties the commit cache and sets how many commits it holds,
+     * in place of the commit.cache setting.
+     * @param size The most commits to keep; 0 turns the cache off.
      */
-    public static Commit grabCurrentCommit() {
-        File headPointers = new File(".gitlet/headPointers");
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-        String curBranch = pointerMap.get("current");
-        String id = pointerMap.get(curBranch);
-        Commit currentCommit = retrieve(id);
-        return currentCommit;
+    static void setCacheSize(int size) {
+        cacheSize = size;
+        cache = null;
+        hits = 0;
+        misses = 0;
     }
 
     /**
-     * Grabs the latest commit on the given branch.
-     * @param branch The branch that the commit is on.
-     * @return The latest commit of the specified branch.
+     * Returns how many retrieves the commit cache has answered.
+     * @return The number of hits.
      */
-    public static Commit grabBranchCommit(String branch) {
-        File headPointers = new File(".gitlet/headPointers");
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-        if (pointerMap.containsKey(branch)) {
-            String branchID = pointerMap.get(branch);
-            return retrieve(branchID);
-        }
-
-        System.out.println("A branch with that name does not exist.");
-        return null;
+    static long cacheHits() {
+        return hits;
+    }
 
+    /**
+     * Returns how many retrieves had to read a commit from storage.
+     * @return The number of misses.
+     */
+    static long cacheMisses() {
+        return misses;
     }
 
     /**
-     * Grabs a commit from storage.
-     * @param id The ID hash of the commit to retrieve.
-     * @return Returns the commit whose hash is ID.
+     * Returns the commit cache, creating it on first use with room for
+     * commit.cache commits, DEFAULT_CACHE_SIZE by default. The least
+     * recently used commit is dropped when it is full.
+     * @return The cache.
      */
-    public static Commit retrieve(String id) {
-        final int idSize = 40;
-        if (id.length() < idSize) {
-            File commitStorage = new File(".gitlet/commits");
-            for (String commitID : commitStorage.list()) {
-                if (commitID.contains(id)) {
-                    File storedCommit = new File(".gitlet/commits/" + commitID);
-                    Commit c = Utils.readObject(storedCommit, Commit.class);
-                    return c;
-                }
+    private static LinkedHashMap<ObjectId, Commit> cache() {
+        if (cache == null) {
+            if (cacheSize < 0) {
+                cacheSize = Math.max(0, Config.getInt(new File(".gitlet"),
+                        "commit.cache", DEFAULT_CACHE_SIZE));
             }
-            System.out.println("No commit with that id exists.");
-            return null;
+            final int limit = cacheSize;
+            cache = new LinkedHashMap<>(MIN_CAPACITY, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<ObjectId, Commit> eldest) {
+                    return size() > limit;
+                }
+            };
         }
+        return cache;
+    }
 
-        File storedCommit = new File(".gitlet/commits/" + id);
-        if (!storedCommit.exists()) {
-            System.out.println("No commit with that id exists.");
-            return null;
+    /** Commits kept by the commit cache unless commit.cache says. */
+    static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /** Initial capacity of the commit cache. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** Load factor of the commit cache. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Most recently used commits by ID, or null until first used. */
+    private static LinkedHashMap<ObjectId, Commit> cache;
+
+    /** Most commits in the cache, or -1 until read from the config. */
+    private static int cacheSize = -1;
+
+    /** Retrieves answered by the cache. */
+    private static long hits;
+
+    /** Retrieves that read a commit from storage. */
+    private static long misses;
+
+    /**
+     * Writes this commit in its stored form, with every ID as hex.
+     * @param out The stream being written.
+     * @throws IOException If OUT fails.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        for (String name : getFileNameToHash().keySet()) {
+            files.put(name, getFileNameToHash().get(name).toString());
+        }
+        ArrayList<String> parentIDs = new ArrayList<>();
+        for (ObjectId parent : parents) {
+            parentIDs.add(parent == null ? null : parent.toString());
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("fileNameToHash", files);
+        fields.put("msg", msg);
+        fields.put("id", id == null ? null : id.toString());
+        fields.put("parents", parentIDs);
+        fields.put("babiesBranch", new ArrayList<String>());
+        fields.put("myDate", myDate);
+        fields.put("branch", null);
+        out.writeFields();
+    }
+
+    /**
+     * Reads a commit in its stored form, parsing its IDs.
+     * @param in The stream being read.
+     * @throws IOException If IN fails.
+     * @throws ClassNotFoundException If IN holds an unknown class.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        HashMap<String, String> files =
+            (HashMap<String, String>) fields.get("fileNameToHash", null);
+        HashMap<String, ObjectId> parsed = new HashMap<>();
+        for (String name : files.keySet()) {
+            parsed.put(name, ObjectId.parse(files.get(name)));
+        }
+        fileNameToHash = FileTable.of(parsed);
+        msg = (String) fields.get("msg", null);
+        id = ObjectId.parseOrNull((String) fields.get("id", null));
+        parents = new ArrayList<>();
+        for (String parent
+                 : (ArrayList<String>) fields.get("parents", null)) {
+            parents.add(ObjectId.parseOrNull(parent));
         }
-        Commit c = Utils.readObject(storedCommit, Commit.class);
-        return c;
+        myDate = (String) fields.get("myDate", null);
     }
 }
@@ -0,0 +1,290 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The binary form in which commits are stored, in place of Java
+ * serialization. A stored commit is the magic "GLCM" and a version
+ * byte, followed by
+ *   the number of parents as a byte, and their 20-byte IDs;
+ *   the date and the message;
+ *   the 20-byte ID of the root Tree of its files;
+ * and a commit's ID is the SHA-1 of all of it.
+ * Strings are a varint byte count plus one, or 0 for null, followed by
+ * their UTF-8 bytes; counts are varints. Version 1 held, after the
+ * message, the branch the commit was made on and then the files
+ * themselves in place of the tree: their number, and each file's name
+ * and 20-byte blob ID, sorted by name. Its ID covered those, and a
+ * trailer after them held the names of its child branches. Such
+ * commits can still be read.
+ * @author Andrew Tom
+ */
+class CommitCodec {
+
+    /** Magic number at the start of an encoded commit. */
+    static final int MAGIC = 0x474c434d;
+
+    /** Current version of the format. */
+    static final int VERSION = 2;
+
+    /** The version of the format with a file table instead of a tree. */
+    static final int FLAT_VERSION = 1;
+
+    /**
+     * Encodes a commit in its stored form.
+     * @param c The commit.
+     * @return The encoded commit.
+     */
+    static byte[] encode(Commit c) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(bytes))) {
+            writeBody(out, c);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Computes the ID of a commit: the SHA-1 of its encoding.
+     * @param c The commit.
+     * @return Its ID.
+     */
+    static ObjectId id(Commit c) {
+        return ObjectId.hash(encode(c));
+    }
+
+    /**
+     * Reports whether a stream holds an encoded commit, without
+     * consuming anything.
+     * @param in The stream, which must support mark.
+     * @return True if IN starts with MAGIC.
+     * @throws IOException If IN fails.
+     */
+    static boolean isEncoded(BufferedInputStream in) throws IOException {
+        in.mark(Integer.BYTES);
+        byte[] head = in.readNBytes(Integer.BYTES);
+        in.reset();
+        return head.length == Integer.BYTES
+                && ByteBuffer.wrap(head).getInt() == MAGIC;
+    }
+
+    /**
+     * Decodes a commit, reading only as much of IN as it needs.
+     * @param input The encoded commit.
+     * @return The commit, without its ID set.
+     * @throws IOException If IN fails or ends early.
+     */
+    static Commit decode(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw Utils.error("Not an encoded commit.");
+        }
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw Utils.error("Commit is in version %d of the format; "
+                    + "this Gitlet reads up to %d.", version, VERSION);
+        }
+        ArrayList<ObjectId> parents = new ArrayList<>();
+        int parentCount = in.readUnsignedByte();
+        byte[] raw = new byte[ObjectId.BYTES];
+        for (int i = 0; i < parentCount; i += 1) {
+            in.readFully(raw);
+            parents.add(ObjectId.fromBytes(raw, 0));
+        }
+        if (parentCount == 0) {
+            parents.add(null);
+        }
+        String date = readString(in);
+        String message = readString(in);
+        Commit result;
+        if (version == FLAT_VERSION) {
+            readString(in);
+            int fileCount = readCount(in);
+            HashMap<String, ObjectId> files = new HashMap<>(2 * fileCount);
+            for (int i = 0; i < fileCount; i += 1) {
+                String name = readString(in);
+                in.readFully(raw);
+                files.put(name, ObjectId.fromBytes(raw, 0));
+            }
+            result = new Commit(message, date, parents, files);
+        } else {
+            in.readFully(raw);
+            result = new Commit(message, date, parents,
+                    ObjectId.fromBytes(raw, 0));
+        }
+        return result;
+    }
+
+    /**
+     * Rewrites every commit of a repository in the current format, under
+     * its new ID, parents before children so that parent IDs can be
+     * updated too. The old files are left in place.
+     * @param repo The .gitlet directory of the repository.
+     * @return The new ID of each commit by its old ID.
+     */
+    static HashMap<ObjectId, ObjectId> migrate(File repo) {
+        HashMap<ObjectId, Commit> commits = new HashMap<>();
+        File dir = new File(repo, "commits");
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            ObjectId old = ObjectId.parse(name);
+            commits.put(old, Commit.read(repo, old));
+        }
+        HashMap<ObjectId, ObjectId> renamed = new HashMap<>();
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+        for (ObjectId start : commits.keySet()) {
+            pending.push(start);
+            while (!pending.isEmpty()) {
+                ObjectId top = pending.peek();
+                if (renamed.containsKey(top)) {
+                    pending.pop();
+                    continue;
+                }
+                Commit c = commits.get(top);
+                boolean ready = true;
+                for (ObjectId parent : c.getParents()) {
+                    if (parent != null && commits.containsKey(parent)
+                            && !renamed.containsKey(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                }
+                if (!ready) {
+                    continue;
+                }
+                pending.pop();
+                ArrayList<ObjectId> parents = c.getParents();
+                for (int i = 0; i < parents.size(); i += 1) {
+                    ObjectId parent = parents.get(i);
+                    if (parent != null) {
+                        parents.set(i, renamed.getOrDefault(parent, parent));
+                    }
+                }
+                c.setID();
+                Commit.writeCommit(repo, c.getID(), c);
+                renamed.put(top, c.getID());
+            }
+        }
+        return renamed;
+    }
+
+    /**
+     * Writes a commit in its stored form. Its tree is stored first if
+     * it has none yet.
+     * @param out Where to write.
+     * @param c The commit.
+     * @throws IOException If OUT fails.
+     */
+    private static void writeBody(DataOutputStream out, Commit c)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        ArrayList<ObjectId> parents = new ArrayList<>();
+        for (ObjectId parent : c.getParents()) {
+            if (parent != null) {
+                parents.add(parent);
+            }
+        }
+        out.writeByte(parents.size());
+        for (ObjectId parent : parents) {
+            out.write(parent.toBytes());
+        }
+        writeString(out, c.getMyDate());
+        writeString(out, c.getMsg());
+        out.write(c.getTree().toBytes());
+    }
+
+    /**
+     * Writes a count as a varint: seven bits per byte, low bits first,
+     * with the top bit set on every byte but the last.
+     * @param out Where to write.
+     * @param n The count, which must not be negative.
+     * @throws IOException If OUT fails.
+     */
+    private static void writeCount(DataOutputStream out, int n)
+        throws IOException {
+        while ((n & ~LOW_BITS) != 0) {
+            out.writeByte((n & LOW_BITS) | MORE);
+            n >>>= SEVEN;
+        }
+        out.writeByte(n);
+    }
+
+    /**
+     * Reads a count written by writeCount.
+     * @param in Where to read.
+     * @return The count.
+     * @throws IOException If IN fails or the count is malformed.
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += SEVEN) {
+            int b = in.readUnsignedByte();
+            result |= (b & LOW_BITS) << shift;
+            if ((b & MORE) == 0) {
+                if (result < 0) {
+                    break;
+                }
+                return result;
+            }
+        }
+        throw new IOException("malformed count in commit");
+    }
+
+    /**
+     * Writes a String as its UTF-8 byte count plus one, or 0 if it is
+     * null, followed by the bytes.
+     * @param out Where to write.
+     * @param s The String, or null.
+     * @throws IOException If OUT fails.
+     */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            writeCount(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeCount(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString.
+     * @param in Where to read.
+     * @return The String, or null.
+     * @throws IOException If IN fails or ends early.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int n = readCount(in);
+        if (n == 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(n - 1);
+        if (bytes.length < n - 1) {
+            throw new IOException("truncated commit");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Bits of a count held in each byte of a varint. */
+    private static final int SEVEN = 7;
+
+    /** Mask for the count bits of a varint byte. */
+    private static final int LOW_BITS = 0x7f;
+
+    /** Flag on a varint byte that is not the last. */
+    private static final int MORE = 0x80;
+}
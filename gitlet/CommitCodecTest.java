@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the stored form of commits.
+ *  @author Andrew Tom
+ */
+public class CommitCodecTest {
+
+    /** A commit's ID is the hash of every byte stored for it. */
+    @Test
+    public void idCoversWholeEncoding() {
+        Commit c = commit("message", A);
+        byte[] stored = CommitCodec.encode(c);
+        assertEquals(ObjectId.hash(stored), CommitCodec.id(c));
+        assertNotEquals(CommitCodec.id(c),
+                CommitCodec.id(commit("message", B)));
+    }
+
+    /** A commit in the flat version 1 layout still reads. */
+    @Test
+    public void readsFlatVersion() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CommitCodec.MAGIC);
+        out.writeByte(CommitCodec.FLAT_VERSION);
+        out.writeByte(1);
+        out.write(A.toBytes());
+        for (String s : new String[] {DATE, "message", "master"}) {
+            out.writeByte(s.length() + 1);
+            out.writeBytes(s);
+        }
+        out.writeByte(1);
+        out.writeByte("f.txt".length() + 1);
+        out.writeBytes("f.txt");
+        out.write(B.toBytes());
+        out.writeByte(1);
+        out.writeByte("other".length() + 1);
+        out.writeBytes("other");
+        Commit read = CommitCodec.decode(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("message", read.getMsg());
+        assertEquals(DATE, read.getMyDate());
+        assertEquals(List.of(A), read.getParents());
+        assertEquals(B, read.getFileNameToHash().get("f.txt"));
+        assertEquals(1, read.getFileNameToHash().size());
+    }
+
+    /**
+     * Makes a commit of TREE made at DATE.
+     * @param msg Its message.
+     * @param parent Its parent.
+     * @return The commit.
+     */
+    private static Commit commit(String msg, ObjectId parent) {
+        ArrayList<ObjectId> parents = new ArrayList<>();
+        parents.add(parent);
+        return new Commit(msg, DATE, parents, TREE);
+    }
+
+    /** The date of every commit. */
+    private static final String DATE = "Thu Jan 01 00:00:00 1970 -0800";
+
+    /** The root tree of every commit. */
+    private static final ObjectId TREE = Utils.sha1Id("tree");
+
+    /** Parent IDs. */
+    private static final ObjectId A = Utils.sha1Id("a"), B = Utils.sha1Id("b");
+}
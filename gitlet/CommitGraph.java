@@ -0,0 +1,557 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * The shape of a repository's history, kept apart from the commits
+ * themselves so that it can be walked without reading any of them.
+ * Each commit is a fixed-width record, numbered in the order it was
+ * added, so a commit's parents can be stored as record numbers:
+ *   the 20-byte commit ID;
+ *   the record numbers of its first and second parents, or -1;
+ *   its generation number, one more than its highest parent's, or 1
+ *   for the initial commit;
+ *   its commit time, in seconds since the epoch.
+ * The file (.gitlet/commitGraph) is the magic "GLCG" and a version int
+ * followed by the records. Parents always come before their children,
+ * so the file only ever grows at the end; it is memory-mapped when
+ * opened, and commits missing from it are added from their stored
+ * form the first time they are looked up. It may therefore be deleted
+ * at any time, and is, whenever commits are rewritten or collected.
+ *
+ * New records are written while holding a lock on the whole file, at
+ * the end of the records found there under the lock. If another
+ * command has added records since the file was opened, they are read
+ * in first and the new records numbered after them, so two commands
+ * never write the same record number.
+ * @author Andrew Tom
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x474c4347;
+
+    /** Current version of the file. */
+    static final int VERSION = 1;
+
+    /** Record number standing for no commit. */
+    static final int NONE = -1;
+
+    /** Number of parents a record holds. */
+    static final int MAX_PARENTS = 2;
+
+    /**
+     * Opens the commit graph of a repository, which is created when
+     * it is first added to.
+     * @param repo The .gitlet directory of the repository.
+     * @return Its commit graph.
+     */
+    static CommitGraph open(File repo) {
+        return new CommitGraph(repo);
+    }
+
+    /**
+     * Deletes the commit graph of a repository, to be rebuilt as it
+     * is used.
+     * @param repo The .gitlet directory of the repository.
+     */
+    static void discard(File repo) {
+        new File(repo, "commitGraph").delete();
+    }
+
+    /**
+     * The commit graph of a repository.
+     * @param repo The .gitlet directory of the repository.
+     */
+    private CommitGraph(File repo) {
+        _repo = repo;
+        _file = new File(repo, "commitGraph");
+        _mapped = ByteBuffer.allocate(0);
+        if (!_file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            long length = in.length();
+            if (length < HEADER) {
+                return;
+            }
+            ByteBuffer mapped = in.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, length);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                return;
+            }
+            _mapped = mapped;
+            _mappedCount = (int) ((length - HEADER) / RECORD);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of commits in the graph.
+     * @return The number of records.
+     */
+    int size() {
+        return _mappedCount + _addedCount;
+    }
+
+    /**
+     * Returns the record number of a commit, without adding it.
+     * @param id The ID of the commit.
+     * @return Its record number, or NONE if it is not in the graph.
+     */
+    int find(ObjectId id) {
+        if (_numbers == null) {
+            _numbers = new HashMap<>(2 * size());
+            for (int k = 0; k < size(); k += 1) {
+                _numbers.put(id(k), k);
+            }
+        }
+        return _numbers.getOrDefault(id, NONE);
+    }
+
+    /**
+     * Returns the record number of a commit, first adding it and any
+     * of its ancestors missing from the graph by reading them from the
+     * repository.
+     * @param id The ID of a stored commit.
+     * @return Its record number.
+     */
+    int index(ObjectId id) {
+        int result = find(id);
+        if (result != NONE) {
+            return result;
+        }
+        HashMap<ObjectId, Commit> read = new HashMap<>();
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            ObjectId top = pending.peek();
+            if (find(top) != NONE) {
+                pending.pop();
+                continue;
+            }
+            Commit c = read.get(top);
+            if (c == null) {
+                c = Commit.read(_repo, top);
+                read.put(top, c);
+            }
+            boolean ready = true;
+            for (ObjectId parent : c.getParents()) {
+                if (parent != null && find(parent) == NONE) {
+                    pending.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                append(c);
+                read.remove(top);
+            }
+        }
+        flush();
+        return find(id);
+    }
+
+    /**
+     * Adds a new commit to the graph and writes it out, adding its
+     * ancestors first if need be.
+     * @param c The commit, with its ID set.
+     * @return Its record number.
+     */
+    int add(Commit c) {
+        int result = find(c.getID());
+        if (result != NONE) {
+            return result;
+        }
+        for (ObjectId parent : c.getParents()) {
+            if (parent != null) {
+                index(parent);
+            }
+        }
+        append(c);
+        flush();
+        return find(c.getID());
+    }
+
+    /**
+     * Returns the ID of a commit.
+     * @param k Its record number.
+     * @return Its ID.
+     */
+    ObjectId id(int k) {
+        byte[] raw = new byte[ObjectId.BYTES];
+        if (k < _mappedCount) {
+            _mapped.get(offset(k), raw);
+        } else {
+            _added.get((k - _mappedCount) * RECORD, raw);
+        }
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Returns a parent of a commit.
+     * @param k The record number of the commit.
+     * @param which 0 for the first parent, 1 for the second.
+     * @return The record number of the parent, or NONE.
+     */
+    int parent(int k, int which) {
+        return getInt(k, PARENTS + which * Integer.BYTES);
+    }
+
+    /**
+     * Returns the generation number of a commit: the number of commits
+     * on the longest path from it back to the initial commit.
+     * @param k The record number of the commit.
+     * @return Its generation, at least 1.
+     */
+    int generation(int k) {
+        return getInt(k, GENERATION);
+    }
+
+    /**
+     * Returns the time at which a commit was made.
+     * @param k The record number of the commit.
+     * @return The time, in seconds since the epoch.
+     */
+    long time(int k) {
+        if (k < _mappedCount) {
+            return _mapped.getLong(offset(k) + TIME);
+        }
+        return _added.getLong((k - _mappedCount) * RECORD + TIME);
+    }
+
+    /**
+     * Reports whether one commit is an ancestor of another, or the same
+     * commit. Commits of a generation lower than the ancestor's are
+     * never followed, since no path from them can lead back up to it.
+     * @param ancestor The record number of the possible ancestor.
+     * @param k The record number of the descendant.
+     * @return True if ANCESTOR is reachable from K through parents.
+     */
+    boolean isAncestor(int ancestor, int k) {
+        int floor = generation(ancestor);
+        boolean[] seen = new boolean[size()];
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        pending.push(k);
+        while (!pending.isEmpty()) {
+            int next = pending.pop();
+            if (next == ancestor) {
+                return true;
+            }
+            for (int which = 0; which < MAX_PARENTS; which += 1) {
+                int p = parent(next, which);
+                if (p != NONE && !seen[p] && generation(p) >= floor) {
+                    seen[p] = true;
+                    pending.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the latest common ancestor of two commits: the one
+     * reached first when their ancestors are visited from the highest
+     * generation down. A commit is only visited once every commit that
+     * might lead to it has been, so by then it is known whether each of
+     * A and B reaches it.
+     * @param a The record number of one commit.
+     * @param b The record number of the other.
+     * @return The record number of their merge base, or NONE if they
+     *         share no history.
+     */
+    int mergeBase(int a, int b) {
+        byte[] reachedBy = new byte[size()];
+        PriorityQueue<Integer> pending = new PriorityQueue<>((x, y) -> {
+            int result = Integer.compare(generation(y), generation(x));
+            return result != 0 ? result : Long.compare(time(y), time(x));
+        });
+        reachedBy[a] |= FROM_A;
+        reachedBy[b] |= FROM_B;
+        pending.add(a);
+        pending.add(b);
+        while (!pending.isEmpty()) {
+            int next = pending.poll();
+            if (reachedBy[next] == (FROM_A | FROM_B)) {
+                return next;
+            }
+            for (int which = 0; which < MAX_PARENTS; which += 1) {
+                int p = parent(next, which);
+                if (p != NONE
+                        && (reachedBy[p] | reachedBy[next]) != reachedBy[p]) {
+                    reachedBy[p] |= reachedBy[next];
+                    pending.add(p);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Appends a record for a commit whose parents are all in the graph
+     * already. It is not written out until the next flush.
+     * @param c The commit.
+     */
+    private void append(Commit c) {
+        ArrayList<ObjectId> ids = c.getParents();
+        ObjectId[] parents = new ObjectId[MAX_PARENTS];
+        for (int which = 0; which < ids.size() && which < MAX_PARENTS;
+             which += 1) {
+            parents[which] = ids.get(which);
+        }
+        append(c.getID(), parents, seconds(c.getMyDate()));
+    }
+
+    /**
+     * Appends a record for a commit whose parents are all in the graph
+     * already. It is not written out until the next flush.
+     * @param id The ID of the commit.
+     * @param parentIds The IDs of its first and second parents, either
+     *                  null for none.
+     * @param time Its commit time, in seconds since the epoch.
+     */
+    private void append(ObjectId id, ObjectId[] parentIds, long time) {
+        int[] parents = {NONE, NONE};
+        int generation = 1;
+        for (int which = 0; which < MAX_PARENTS; which += 1) {
+            if (parentIds[which] != null) {
+                parents[which] = find(parentIds[which]);
+                generation = Math.max(generation,
+                        generation(parents[which]) + 1);
+            }
+        }
+        if (_added.remaining() < RECORD) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(2 * _added.capacity(), RECORD * INITIAL));
+            _added.flip();
+            bigger.put(_added);
+            _added = bigger;
+        }
+        byte[] raw = new byte[ObjectId.BYTES];
+        id.copyTo(raw, 0);
+        _added.put(raw);
+        _added.putInt(parents[0]);
+        _added.putInt(parents[1]);
+        _added.putInt(generation);
+        _added.putLong(time);
+        _numbers.put(id, size());
+        _addedCount += 1;
+    }
+
+    /**
+     * Writes out every record appended since the last flush, holding a
+     * lock on the file. The records are written after the last whole
+     * record in the file as it is under the lock; if that is not where
+     * this graph left off, the file is read in again first and the
+     * records not yet written are renumbered to follow it. The file is
+     * only emptied when it holds no valid record.
+     */
+    private void flush() {
+        if (_writtenCount == _addedCount) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            int known = _mappedCount + _writtenCount;
+            if (count(channel) != known || known > 0
+                    && !id(known - 1).equals(idAt(channel, known - 1))) {
+                reload(channel);
+            }
+            if (_mappedCount == 0 && _writtenCount == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+            }
+            ByteBuffer records = _added.duplicate();
+            records.limit(_addedCount * RECORD);
+            records.position(_writtenCount * RECORD);
+            long position = offset(_mappedCount + _writtenCount);
+            while (records.hasRemaining()) {
+                position += channel.write(records, position);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _writtenCount = _addedCount;
+    }
+
+    /**
+     * Replaces what this graph holds with the records now in its file,
+     * then appends again every commit it held that the file lacks, in
+     * the same order, so parents still come first. Called with the
+     * file locked.
+     * @param channel The file.
+     * @throws IOException If the file cannot be read.
+     */
+    private void reload(FileChannel channel) throws IOException {
+        int held = size();
+        ObjectId[] ids = new ObjectId[held];
+        ObjectId[][] parents = new ObjectId[held][MAX_PARENTS];
+        long[] times = new long[held];
+        for (int k = 0; k < held; k += 1) {
+            ids[k] = id(k);
+            for (int which = 0; which < MAX_PARENTS; which += 1) {
+                int p = parent(k, which);
+                parents[k][which] = p == NONE ? null : id(p);
+            }
+            times[k] = time(k);
+        }
+        int count = count(channel);
+        _mapped = count == 0 ? ByteBuffer.allocate(0)
+            : channel.map(FileChannel.MapMode.READ_ONLY, 0, offset(count));
+        _mappedCount = count;
+        _added = ByteBuffer.allocate(0);
+        _addedCount = 0;
+        _writtenCount = 0;
+        _numbers = null;
+        for (int k = 0; k < held; k += 1) {
+            if (find(ids[k]) == NONE) {
+                append(ids[k], parents[k], times[k]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of whole records in the graph file, or 0 if
+     * it does not start with the right header.
+     * @param channel The file.
+     * @return The number of records.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int count(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length < HEADER) {
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (header.hasRemaining()
+                && channel.read(header, header.position()) >= 0) {
+            continue;
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return 0;
+        }
+        return (int) ((length - HEADER) / RECORD);
+    }
+
+    /**
+     * Reads the ID of a record from the graph file.
+     * @param channel The file.
+     * @param k The record number, which must be in the file.
+     * @return The ID.
+     * @throws IOException If the file cannot be read.
+     */
+    private static ObjectId idAt(FileChannel channel, int k)
+        throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(ObjectId.BYTES);
+        while (raw.hasRemaining()
+                && channel.read(raw, offset(k) + raw.position()) >= 0) {
+            continue;
+        }
+        return ObjectId.fromBytes(raw.array(), 0);
+    }
+
+    /**
+     * Returns an int field of a record.
+     * @param k The record number.
+     * @param field The offset of the field within the record.
+     * @return The field.
+     */
+    private int getInt(int k, int field) {
+        if (k < _mappedCount) {
+            return _mapped.getInt(offset(k) + field);
+        }
+        return _added.getInt((k - _mappedCount) * RECORD + field);
+    }
+
+    /**
+     * Returns where a record starts in the file.
+     * @param k The record number.
+     * @return Its offset.
+     */
+    private static int offset(int k) {
+        return HEADER + k * RECORD;
+    }
+
+    /**
+     * Converts the date of a commit, as shown by log, to a time.
+     * @param date The date of the commit.
+     * @return Seconds since the epoch, or 0 if DATE cannot be parsed.
+     */
+    private static long seconds(String date) {
+        try {
+            return new SimpleDateFormat("E MMM d hh:mm:ss yyyy Z")
+                    .parse(date).getTime() / MILLIS;
+        } catch (ParseException | NullPointerException excp) {
+            return 0;
+        }
+    }
+
+    /** Size of the header: magic and version. */
+    private static final int HEADER = 8;
+
+    /** Offset of the parent record numbers within a record. */
+    private static final int PARENTS = ObjectId.BYTES;
+
+    /** Offset of the generation number within a record. */
+    private static final int GENERATION = PARENTS
+            + MAX_PARENTS * Integer.BYTES;
+
+    /** Offset of the commit time within a record. */
+    private static final int TIME = GENERATION + Integer.BYTES;
+
+    /** Size of a record. */
+    private static final int RECORD = TIME + Long.BYTES;
+
+    /** Records first allocated for appending. */
+    private static final int INITIAL = 16;
+
+    /** Milliseconds in a second. */
+    private static final int MILLIS = 1000;
+
+    /** Flag for commits reached from the first commit of a merge base. */
+    private static final byte FROM_A = 1;
+
+    /** Flag for commits reached from the second commit of a merge base. */
+    private static final byte FROM_B = 2;
+
+    /** The .gitlet directory of the repository. */
+    private final File _repo;
+
+    /** The file holding the graph. */
+    private final File _file;
+
+    /** The file as it was when opened. */
+    private ByteBuffer _mapped;
+
+    /** Number of records in _mapped. */
+    private int _mappedCount;
+
+    /** Records appended since the file was opened. */
+    private ByteBuffer _added = ByteBuffer.allocate(0);
+
+    /** Number of records in _added. */
+    private int _addedCount;
+
+    /** Number of records in _added written out to the file. */
+    private int _writtenCount;
+
+    /** Record numbers by commit ID, filled in on first use. */
+    private HashMap<ObjectId, Integer> _numbers;
+}
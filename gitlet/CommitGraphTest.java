@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commit graph.
+ *  @author Andrew Tom
+ */
+public class CommitGraphTest {
+
+    /** Makes a repository holding an initial commit. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        _root = commit("root");
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /**
+     * Two graphs opened on the same file before either adds a commit
+     * both keep their commit, with the right parents.
+     */
+    @Test
+    public void concurrentAddsKeepBoth() {
+        CommitGraph first = CommitGraph.open(_repo);
+        CommitGraph second = CommitGraph.open(_repo);
+        Commit a = commit("a", _root.getID());
+        Commit b = commit("b", _root.getID());
+        first.add(a);
+        int kb = second.add(b);
+        assertEquals(b.getID(), second.id(kb));
+        assertEquals(_root.getID(), second.id(second.parent(kb, 0)));
+
+        CommitGraph graph = CommitGraph.open(_repo);
+        assertEquals(3, graph.size());
+        int ka = graph.find(a.getID());
+        kb = graph.find(b.getID());
+        assertNotEquals(CommitGraph.NONE, ka);
+        assertNotEquals(CommitGraph.NONE, kb);
+        assertEquals(graph.find(_root.getID()), graph.mergeBase(ka, kb));
+        assertEquals(2, graph.generation(kb));
+    }
+
+    /**
+     * Stores a commit with no files.
+     * @param msg Its message.
+     * @param parents Its parents.
+     * @return The commit.
+     */
+    private Commit commit(String msg, ObjectId... parents) {
+        Commit c = new Commit(msg, parents);
+        c.setTree(Tree.write(_repo, Map.of()));
+        c.setID();
+        Commit.writeCommit(_repo, c.getID(), c);
+        return c;
+    }
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+
+    /** The initial commit. */
+    private Commit _root;
+}
@@ -0,0 +1,368 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The IDs of every commit in a repository, sorted so that a commit can
+ * be found from a prefix of its ID by binary search rather than by
+ * listing the commit directory.
+ *
+ * The index file (.gitlet/commitIndex) is laid out like a pack index:
+ * the magic "GLCX", a version int, the ID count, 256 cumulative fan-out
+ * counts by first ID byte, and the sorted 20-byte IDs. It is
+ * memory-mapped. Commits made since it was written are appended to a
+ * journal (.gitlet/commitIndex.journal) of raw IDs, which is searched
+ * in full and folded into the index once it grows past JOURNAL_LIMIT.
+ * Appending to the journal, and rebuilding or folding the index, are
+ * done holding a lock on the journal, which a fold empties rather
+ * than deletes, so no ID appended while an index is being written is
+ * lost. Readers take no lock: they read the journal before the index,
+ * so an ID folded in while they read is seen in one or the other.
+ * Either file may be deleted at any time: a missing index is rebuilt
+ * from the commit directory.
+ * @author Andrew Tom
+ */
+class CommitIndex {
+
+    /** Magic number at the start of the index. */
+    static final int MAGIC = 0x474c4358;
+
+    /** Current version of the index. */
+    static final int VERSION = 1;
+
+    /** Number of journal entries at which the journal is folded in. */
+    static final int JOURNAL_LIMIT = 1024;
+
+    /**
+     * Opens the commit index of a repository, building it from the
+     * commit directory if there is none, and folding in the journal if
+     * it has grown too long.
+     * @param repo The .gitlet directory of the repository.
+     * @return The index.
+     */
+    static CommitIndex open(File repo) {
+        File index = new File(repo, "commitIndex");
+        File journal = new File(repo, "commitIndex.journal");
+        if (!index.isFile() || journal.length() >= JOURNAL_BYTES) {
+            try (FileChannel channel = lockable(journal);
+                 FileLock lock = channel.lock()) {
+                if (!index.isFile()) {
+                    ArrayList<ObjectId> ids = new ArrayList<>();
+                    List<String> names =
+                        Utils.plainFilenamesIn(new File(repo, "commits"));
+                    if (names != null) {
+                        for (String name : names) {
+                            if (ObjectId.isId(name)) {
+                                ids.add(ObjectId.parse(name));
+                            }
+                        }
+                    }
+                    replace(repo, channel, ids);
+                } else if (channel.size() >= JOURNAL_BYTES) {
+                    byte[] raw = new byte[(int) channel.size()];
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                raw.length).get(raw);
+                    CommitIndex old = new CommitIndex(index, raw);
+                    ArrayList<ObjectId> ids = new ArrayList<>(old.size());
+                    for (int k = 0; k < old._count; k += 1) {
+                        ids.add(old.idAt(k));
+                    }
+                    ids.addAll(old._journal);
+                    replace(repo, channel, ids);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        byte[] raw = journal.isFile() ? Utils.readContents(journal)
+                : new byte[0];
+        return new CommitIndex(index, raw);
+    }
+
+    /**
+     * Records a newly stored commit. Nothing is recorded if the
+     * repository has no index yet, since building one will find it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the commit.
+     */
+    static void add(File repo, ObjectId id) {
+        if (!new File(repo, "commitIndex").isFile()) {
+            return;
+        }
+        File journal = new File(repo, "commitIndex.journal");
+        try (FileChannel channel = lockable(journal);
+             FileLock lock = channel.lock()) {
+            if (new File(repo, "commitIndex").isFile()) {
+                ByteBuffer raw = ByteBuffer.wrap(id.toBytes());
+                long end = channel.size();
+                while (raw.hasRemaining()) {
+                    end += channel.write(raw, end);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the index of a repository, to be rebuilt when it is next
+     * opened. Used whenever commits are deleted.
+     * @param repo The .gitlet directory of the repository.
+     */
+    static void discard(File repo) {
+        new File(repo, "commitIndex").delete();
+        new File(repo, "commitIndex.journal").delete();
+    }
+
+    /**
+     * Writes a new index holding IDS and empties the journal.
+     * @param repo The .gitlet directory of the repository.
+     * @param ids The IDs to index, in any order and possibly repeated;
+     *            sorted in place.
+     */
+    static void write(File repo, ArrayList<ObjectId> ids) {
+        File journal = new File(repo, "commitIndex.journal");
+        try (FileChannel channel = lockable(journal);
+             FileLock lock = channel.lock()) {
+            replace(repo, channel, ids);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens the journal FILE for reading and appending, creating it if
+     * need be, so that it can be locked.
+     * @param file The journal.
+     * @return The open journal.
+     * @throws IOException If it cannot be opened.
+     */
+    private static FileChannel lockable(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes a new index holding IDS, then empties the journal. Called
+     * with the journal locked.
+     * @param repo The .gitlet directory of the repository.
+     * @param journal The locked journal.
+     * @param ids The IDs to index, in any order and possibly repeated;
+     *            sorted in place.
+     * @throws IOException If the journal cannot be emptied.
+     */
+    private static void replace(File repo, FileChannel journal,
+                                ArrayList<ObjectId> ids) throws IOException {
+        Collections.sort(ids);
+        File index = new File(repo, "commitIndex");
+        File tmp = new File(repo, "commitIndex.tmp");
+        int count = 0;
+        int[] fanout = new int[PackFile.FANOUT];
+        for (int k = 0; k < ids.size(); k += 1) {
+            if (k == 0 || !ids.get(k).equals(ids.get(k - 1))) {
+                fanout[ids.get(k).firstByte()] += 1;
+                count += 1;
+            }
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                int total = 0;
+                for (int n : fanout) {
+                    total += n;
+                    out.writeInt(total);
+                }
+                byte[] raw = new byte[ObjectId.BYTES];
+                for (int k = 0; k < ids.size(); k += 1) {
+                    if (k == 0 || !ids.get(k).equals(ids.get(k - 1))) {
+                        ids.get(k).copyTo(raw, 0);
+                        out.write(raw);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), index.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal.truncate(0);
+    }
+
+    /**
+     * Opens an existing index and the journal read before it.
+     * @param index The index file.
+     * @param journal The contents of the journal; a record cut short
+     *                by a write still under way is ignored.
+     */
+    private CommitIndex(File index, byte[] journal) {
+        for (int off = 0; off + ObjectId.BYTES <= journal.length;
+             off += ObjectId.BYTES) {
+            _journal.add(ObjectId.fromBytes(journal, off));
+        }
+        try (RandomAccessFile in = new RandomAccessFile(index, "r")) {
+            _index = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, in.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != MAGIC || _index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt commit index.");
+        }
+        _count = _index.getInt(8);
+    }
+
+    /**
+     * Returns the number of IDs in the index and its journal.
+     * @return The number of IDs, counting any repeated in both once per
+     *         appearance.
+     */
+    int size() {
+        return _count + _journal.size();
+    }
+
+    /**
+     * Finds the commits whose IDs start with PREFIX.
+     * @param prefix Up to 40 hex digits, in either case.
+     * @param limit The most IDs to return; 2 is enough to tell whether
+     *              a prefix is ambiguous.
+     * @return The IDs found, at most LIMIT of them.
+     */
+    ArrayList<ObjectId> find(String prefix, int limit) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        String hex = prefix.toLowerCase(Locale.ROOT);
+        if (hex.length() > Utils.UID_LENGTH || !isHex(hex)) {
+            return result;
+        }
+        byte[] key = ObjectId.parse(hex + ZEROS.substring(hex.length()))
+                .toBytes();
+        int first = key[0] & BYTE_MASK;
+        int last = hex.length() >= 2 ? first
+                : hex.isEmpty() ? PackFile.FANOUT - 1 : first | LOW_NIBBLE;
+        int lo = fanout(first - 1);
+        int hi = fanout(last);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < _count && result.size() < limit; k += 1) {
+            ObjectId id = idAt(k);
+            if (!id.startsWith(hex)) {
+                break;
+            }
+            result.add(id);
+        }
+        for (ObjectId id : _journal) {
+            if (result.size() < limit && id.startsWith(hex)
+                    && !result.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Kth ID of the index in sorted order.
+     * @param k The position of the ID.
+     * @return The ID.
+     */
+    private ObjectId idAt(int k) {
+        byte[] raw = new byte[ObjectId.BYTES];
+        _index.get(ID_START + k * ObjectId.BYTES, raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Returns the number of IDs whose first byte is at most B.
+     * @param b A first byte, or -1.
+     * @return The cumulative count.
+     */
+    private int fanout(int b) {
+        return b < 0 ? 0 : _index.getInt(HEADER + b * Integer.BYTES);
+    }
+
+    /**
+     * Compares the Kth ID of the index with KEY as unsigned bytes.
+     * @param k The position of an ID in the index.
+     * @param key A 20-byte ID.
+     * @return Negative, zero or positive as the Kth ID is less than,
+     *         equal to or greater than KEY.
+     */
+    private int compareAt(int k, byte[] key) {
+        int base = ID_START + k * ObjectId.BYTES;
+        for (int i = 0; i < ObjectId.BYTES; i += 1) {
+            int cmp = (_index.get(base + i) & BYTE_MASK)
+                    - (key[i] & BYTE_MASK);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reports whether every character of S is a lower-case hex digit.
+     * @param s The String to check.
+     * @return True if S is hex.
+     */
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Size of the header: magic, version and count. */
+    private static final int HEADER = 12;
+
+    /** Where the sorted IDs start. */
+    private static final int ID_START =
+            HEADER + PackFile.FANOUT * Integer.BYTES;
+
+    /** Mask for turning a byte into an unsigned int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Mask for the low hex digit of a byte. */
+    private static final int LOW_NIBBLE = 0xf;
+
+    /** Size of the journal at which it is folded in. */
+    private static final long JOURNAL_BYTES =
+            (long) JOURNAL_LIMIT * ObjectId.BYTES;
+
+    /** Enough zeros to pad any prefix to a full ID. */
+    private static final String ZEROS = "0".repeat(Utils.UID_LENGTH);
+
+    /** The mapped index file. */
+    private final ByteBuffer _index;
+
+    /** Number of IDs in the index file. */
+    private final int _count;
+
+    /** IDs in the journal, in the order they were added. */
+    private final ArrayList<ObjectId> _journal = new ArrayList<>();
+}
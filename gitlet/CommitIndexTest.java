@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of finding commits by a prefix of their IDs.
+ *  @author Andrew Tom
+ */
+public class CommitIndexTest {
+
+    /** Makes a repository whose index holds the IDs in IDS. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        for (String id : IDS) {
+            ids.add(id(id));
+        }
+        CommitIndex.write(_repo, ids);
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** A prefix two commits share finds both; a longer one finds one. */
+    @Test
+    public void findsAmbiguousPrefixes() {
+        CommitIndex index = CommitIndex.open(_repo);
+        assertEquals(List.of(id("abc1"), id("abc2")), index.find("abc", 2));
+        assertEquals(List.of(id("abc1")), index.find("abc", 1));
+        assertEquals(List.of(id("abc1")), index.find("abc1", 2));
+        assertEquals(List.of(id("abc1")),
+                     index.find(id("abc1").toString(), 2));
+        assertTrue(index.find("abc3", 2).isEmpty());
+    }
+
+    /** Prefixes may be given in upper case. */
+    @Test
+    public void ignoresCase() {
+        CommitIndex index = CommitIndex.open(_repo);
+        assertEquals(List.of(id("abc1"), id("abc2")), index.find("ABC", 2));
+        assertEquals(List.of(id("abc2")), index.find("aBc2", 2));
+    }
+
+    /**
+     * A prefix of an odd number of digits covers every first byte it
+     * could start, and no others.
+     */
+    @Test
+    public void findsOddLengthPrefixes() {
+        CommitIndex index = CommitIndex.open(_repo);
+        assertEquals(List.of(id("a0"), id("abc1"), id("abc2"), id("af")),
+                     index.find("a", IDS.length));
+        assertEquals(List.of(id("9f")), index.find("9", IDS.length));
+        assertEquals(List.of(id("00"), id("0f")),
+                     index.find("0", IDS.length));
+        assertEquals(List.of(id("ff")), index.find("f", IDS.length));
+        assertEquals(IDS.length, index.find("", IDS.length).size());
+    }
+
+    /** Anything that cannot start an ID finds nothing. */
+    @Test
+    public void rejectsNonHex() {
+        CommitIndex index = CommitIndex.open(_repo);
+        assertTrue(index.find("abg", 2).isEmpty());
+        assertTrue(index.find(id("abc1") + "0", 2).isEmpty());
+    }
+
+    /**
+     * Commits added since the index was written are found in the
+     * journal, which is folded in once it reaches JOURNAL_LIMIT.
+     */
+    @Test
+    public void foldsJournal() {
+        File journal = new File(_repo, "commitIndex.journal");
+        ArrayList<ObjectId> added = new ArrayList<>();
+        for (int i = 0; i < CommitIndex.JOURNAL_LIMIT; i += 1) {
+            added.add(Utils.sha1Id("commit " + i));
+            CommitIndex.add(_repo, added.get(i));
+            if (i == 0) {
+                ObjectId first = added.get(0);
+                assertEquals(List.of(first), CommitIndex.open(_repo)
+                             .find(first.toString().substring(0, 6), 2));
+            }
+        }
+        assertEquals(CommitIndex.JOURNAL_LIMIT * ObjectId.BYTES,
+                     journal.length());
+        CommitIndex index = CommitIndex.open(_repo);
+        assertEquals(0, journal.length());
+        assertEquals(IDS.length + CommitIndex.JOURNAL_LIMIT, index.size());
+        for (ObjectId id : added) {
+            assertEquals(List.of(id), index.find(id.toString(), 2));
+        }
+    }
+
+    /**
+     * Commits added by another process while the journal is being
+     * folded are kept.
+     */
+    @Test
+    public void keepsCommitsAddedDuringFold() throws Exception {
+        int count = 3 * CommitIndex.JOURNAL_LIMIT;
+        Process adder = Scratch.start(_dir, Adder.class,
+                                      Integer.toString(count));
+        while (adder.isAlive()) {
+            CommitIndex.open(_repo);
+        }
+        assertEquals(0, adder.waitFor());
+        CommitIndex index = CommitIndex.open(_repo);
+        HashSet<ObjectId> found = new HashSet<>();
+        for (int i = 0; i < count; i += 1) {
+            found.addAll(index.find(Utils.sha1("commit " + i), 2));
+        }
+        assertEquals(count, found.size());
+    }
+
+    /** A missing index is rebuilt from the commit directory. */
+    @Test
+    public void rebuildsFromCommits() {
+        CommitIndex.discard(_repo);
+        ObjectId id = Utils.sha1Id("stored");
+        Utils.writeContents(new File(_repo, "commits/" + id), "");
+        CommitIndex index = CommitIndex.open(_repo);
+        assertEquals(1, index.size());
+        assertEquals(List.of(id), index.find(id.toString().substring(0, 4),
+                                             2));
+    }
+
+    /** Adds commits to the index of the repository it is run in. */
+    static class Adder {
+        /**
+         * Adds the IDs of "commit 0", "commit 1" and so on.
+         * @param args The number of IDs to add.
+         */
+        public static void main(String... args) {
+            File repo = new File(".gitlet");
+            for (int i = 0; i < Integer.parseInt(args[0]); i += 1) {
+                CommitIndex.add(repo, Utils.sha1Id("commit " + i));
+            }
+        }
+    }
+
+    /**
+     * Returns the ID made of PREFIX padded with zeros.
+     * @param prefix Hex digits.
+     * @return The ID.
+     */
+    private static ObjectId id(String prefix) {
+        return ObjectId.parse(prefix
+                + "0".repeat(Utils.UID_LENGTH - prefix.length()));
+    }
+
+    /** Prefixes of the IDs in the index, in sorted order. */
+    private static final String[] IDS = {
+        "00", "0f", "9f", "a0", "abc1", "abc2", "af", "b0", "ff",
+    };
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
@@ -0,0 +1,391 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional deflate compression of stored blobs and commits. A
+ * compressed object is MAGIC, the type byte ObjectStore.ZLIB, the
+ * Adler-32 checksum of the preset dictionary it was compressed with
+ * (0 for none), and a raw deflate stream of the uncompressed object.
+ * Compression is used when the repository setting "compression" is
+ * on; the dictionary is the one named by "compression.dictionary",
+ * kept in .gitlet/dicts under its checksum so that objects written
+ * with older dictionaries stay readable.
+ * @author Andrew Tom
+ */
+class Compression {
+
+    /** Size of the header of a compressed object. */
+    static final int HEADER = ObjectStore.HEADER + 4;
+
+    /** Largest dictionary that train will build. */
+    static final int MAX_DICTIONARY = 1 << 15;
+
+    /** Length of the substrings counted while training. */
+    private static final int GRAM = 8;
+
+    /** Length of the segments a trained dictionary is made of. */
+    private static final int SEGMENT = 64;
+
+    /** Most objects sampled while training. */
+    private static final int MAX_SAMPLES = 2000;
+
+    /** Objects at most this large are used as training samples. */
+    private static final int MAX_SAMPLE_SIZE = 1 << 16;
+
+    /** Size of the buffers used to run the deflater and inflater. */
+    private static final int BUFFER = 1 << 13;
+
+    /**
+     * Compresses an object for storage in a repository, if that
+     * repository has compression turned on and compressing helps.
+     * @param repo The .gitlet directory of the repository.
+     * @param data The object as it would be stored uncompressed.
+     * @return The bytes to store.
+     */
+    static byte[] compress(File repo, byte[] data) {
+        if (!Config.isOn(repo, "compression")) {
+            return data;
+        }
+        byte[] dict = dictionary(repo,
+                Config.get(repo, "compression.dictionary", null));
+        byte[] result = deflate(data, dict);
+        return result.length < data.length ? result : data;
+    }
+
+    /**
+     * Undoes compress, leaving objects that are not compressed alone.
+     * @param repo The .gitlet directory holding the object.
+     * @param stored The stored bytes of an object.
+     * @return The uncompressed object.
+     */
+    static byte[] decompress(File repo, byte[] stored) {
+        if (ObjectStore.typeOf(stored) != ObjectStore.ZLIB) {
+            return stored;
+        }
+        int check = ByteBuffer.wrap(stored, ObjectStore.HEADER, 4).getInt();
+        Inflater inflater = new Inflater(true);
+        try {
+            if (check != 0) {
+                inflater.setDictionary(dictionary(repo, hex(check)));
+            }
+            inflater.setInput(stored, HEADER, stored.length - HEADER);
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(stored.length * 3);
+            byte[] buf = new byte[BUFFER];
+            boolean padded = false;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                out.write(buf, 0, n);
+                if (n == 0 && inflater.needsInput()) {
+                    if (padded) {
+                        throw Utils.error("Truncated compressed object.");
+                    }
+                    inflater.setInput(new byte[1]);
+                    padded = true;
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt compressed object.");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns a stream that compresses what is written to it into OUT,
+     * for objects too large to compress in memory. The header is
+     * written to OUT straight away. If REPO does not have compression
+     * turned on, OUT itself is returned.
+     * @param repo The .gitlet directory of the repository.
+     * @param out The stream the stored object is written to.
+     * @return The stream to write the uncompressed object to.
+     * @throws IOException If OUT fails.
+     */
+    static OutputStream deflating(File repo, OutputStream out)
+        throws IOException {
+        if (!Config.isOn(repo, "compression")) {
+            return out;
+        }
+        byte[] dict = dictionary(repo,
+                Config.get(repo, "compression.dictionary", null));
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        int check = 0;
+        if (dict != null) {
+            deflater.setDictionary(dict);
+            Adler32 adler = new Adler32();
+            adler.update(dict);
+            check = (int) adler.getValue();
+        }
+        out.write(ObjectStore.MAGIC);
+        out.write(ObjectStore.ZLIB);
+        out.write(ByteBuffer.allocate(4).putInt(check).array());
+        return new DeflaterOutputStream(out, deflater, BUFFER) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a stream of the uncompressed contents of a compressed
+     * object, for objects too large to decompress in memory.
+     * @param repo The .gitlet directory holding the object.
+     * @param in The stored object, positioned just past MAGIC and the
+     *           type byte.
+     * @return The uncompressed object.
+     * @throws IOException If IN fails.
+     */
+    static InputStream inflating(File repo, InputStream in)
+        throws IOException {
+        byte[] header = in.readNBytes(4);
+        if (header.length < 4) {
+            throw Utils.error("Truncated compressed object.");
+        }
+        int check = ByteBuffer.wrap(header).getInt();
+        Inflater inflater = new Inflater(true);
+        if (check != 0) {
+            inflater.setDictionary(dictionary(repo, hex(check)));
+        }
+        return new InflaterInputStream(in, inflater, BUFFER) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Makes sure a repository has the dictionary a compressed object
+     * needs, copying it from the repository the object came from.
+     * @param from The .gitlet directory the object comes from.
+     * @param to The .gitlet directory the object is copied to.
+     * @param stored The stored bytes of the object, or at least its
+     *               first HEADER bytes.
+     */
+    static void copyDictionary(File from, File to, byte[] stored) {
+        if (ObjectStore.typeOf(stored) != ObjectStore.ZLIB) {
+            return;
+        }
+        int check = ByteBuffer.wrap(stored, ObjectStore.HEADER, 4).getInt();
+        if (check == 0) {
+            return;
+        }
+        File target = new File(new File(to, "dicts"), hex(check));
+        if (!target.exists()) {
+            target.getParentFile().mkdir();
+            Utils.writeContents(target,
+                    (Object) dictionary(from, hex(check)));
+        }
+    }
+
+    /**
+     * Trains a preset dictionary from a sample of the objects in a
+     * repository, stores it, and makes it the current dictionary.
+     * The dictionary is built from the SEGMENT-byte stretches of the
+     * samples whose GRAM-byte substrings occur in the most objects,
+     * with the most useful stretches last, where deflate finds them
+     * soonest.
+     * @param repo The .gitlet directory of the repository.
+     * @param samples The uncompressed objects to learn from.
+     * @return The dictionary, or null if SAMPLES have nothing in common.
+     */
+    static byte[] train(File repo, ArrayList<byte[]> samples) {
+        if (samples.isEmpty()) {
+            return null;
+        }
+        HashMap<Long, Integer> grams = new HashMap<>();
+        for (byte[] sample : samples) {
+            HashSet<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM <= sample.length; i += 1) {
+                seen.add(gram(sample, i));
+            }
+            for (Long g : seen) {
+                grams.merge(g, 1, Integer::sum);
+            }
+        }
+        ArrayList<long[]> segments = new ArrayList<>();
+        for (int s = 0; s < samples.size(); s += 1) {
+            byte[] sample = samples.get(s);
+            for (int i = 0; i + SEGMENT <= sample.length; i += SEGMENT) {
+                long score = 0;
+                for (int k = i; k + GRAM <= i + SEGMENT; k += 1) {
+                    score += grams.get(gram(sample, k)) - 1;
+                }
+                if (score > 0) {
+                    segments.add(new long[] {score, s, i});
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(b[0], a[0]));
+        ArrayList<byte[]> chosen = new ArrayList<>();
+        HashSet<ByteBuffer> used = new HashSet<>();
+        int size = 0;
+        for (long[] seg : segments) {
+            if (size + SEGMENT > MAX_DICTIONARY) {
+                break;
+            }
+            int start = (int) seg[2];
+            byte[] piece = Arrays.copyOfRange(samples.get((int) seg[1]),
+                    start, start + SEGMENT);
+            if (used.add(ByteBuffer.wrap(piece))) {
+                chosen.add(piece);
+                size += SEGMENT;
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        byte[] dict = new byte[size];
+        int pos = size;
+        for (byte[] piece : chosen) {
+            pos -= SEGMENT;
+            System.arraycopy(piece, 0, dict, pos, SEGMENT);
+        }
+        Adler32 check = new Adler32();
+        check.update(dict);
+        String name = hex((int) check.getValue());
+        File dir = new File(repo, "dicts");
+        dir.mkdir();
+        Utils.writeContents(new File(dir, name), (Object) dict);
+        Config.set(repo, "compression.dictionary", name);
+        return dict;
+    }
+
+    /**
+     * Returns an even sample of the stored blobs and commits of a
+     * repository, uncompressed, of at most MAX_SAMPLES objects, leaving
+     * out any too small or too large to train on.
+     * @param repo The .gitlet directory of the repository.
+     * @return The sampled objects.
+     */
+    static ArrayList<byte[]> samples(File repo) {
+        ArrayList<ObjectId> blobs = ObjectStore.ids(repo);
+        File commitDir = new File(repo, "commits");
+        String[] commits = commitDir.list();
+        int total = blobs.size() + commits.length;
+        ArrayList<byte[]> result = new ArrayList<>();
+        int step = Math.max(1, total / MAX_SAMPLES);
+        for (int k = 0; k < total; k += step) {
+            byte[] object;
+            if (k < blobs.size()) {
+                object = ObjectStore.read(repo, blobs.get(k));
+            } else {
+                File c = new File(commitDir, commits[k - blobs.size()]);
+                object = decompress(repo, Utils.readContents(c));
+            }
+            if (object.length >= GRAM && object.length <= MAX_SAMPLE_SIZE) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compresses DATA with the preset dictionary DICT.
+     * @param data The bytes to compress.
+     * @param dict The preset dictionary, or null.
+     * @return The compressed object, with its header.
+     */
+    static byte[] deflate(byte[] data, byte[] dict) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            int check = 0;
+            if (dict != null) {
+                deflater.setDictionary(dict);
+                Adler32 adler = new Adler32();
+                adler.update(dict);
+                check = (int) adler.getValue();
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(data.length / 2 + HEADER);
+            out.write(ObjectStore.MAGIC, 0, ObjectStore.MAGIC.length);
+            out.write(ObjectStore.ZLIB);
+            out.write(ByteBuffer.allocate(4).putInt(check).array(), 0, 4);
+            byte[] buf = new byte[BUFFER];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns a stored dictionary of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The checksum of the dictionary in hex, or null.
+     * @return The dictionary, or null if NAME is null.
+     */
+    static byte[] dictionary(File repo, String name) {
+        if (name == null) {
+            return null;
+        }
+        File file = new File(new File(repo, "dicts"), name);
+        String key = file.getAbsolutePath();
+        byte[] result = DICTIONARIES.get(key);
+        if (result == null) {
+            if (!file.isFile()) {
+                throw Utils.error("Missing compression dictionary %s.", name);
+            }
+            result = Utils.readContents(file);
+            DICTIONARIES.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the eight-digit hex form of a dictionary checksum.
+     * @param check The checksum.
+     * @return CHECK in hex.
+     */
+    private static String hex(int check) {
+        return String.format("%08x", check);
+    }
+
+    /**
+     * Returns the GRAM bytes of DATA at I packed into a long.
+     * @param data The bytes of a sample.
+     * @param i The start of the substring.
+     * @return The substring as a number.
+     */
+    private static long gram(byte[] data, int i) {
+        long result = 0;
+        for (int k = 0; k < GRAM; k += 1) {
+            result = (result << Byte.SIZE) | (data[i + k] & 0xff);
+        }
+        return result;
+    }
+
+    /** Dictionaries read so far in this process, by file name. */
+    private static final HashMap<String, byte[]> DICTIONARIES =
+            new HashMap<>();
+}
@@ -0,0 +1,88 @@
+package gitlet;
+import java.io.File;
+import java.util.HashMap;
+
+/**
+ * Per-repository settings, kept as a serialized FatMap in
+ * .gitlet/config and read at most once per process.
+ * @author Andrew Tom
+ */
+class Config {
+
+    /**
+     * Returns a setting of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param key The name of the setting.
+     * @param otherwise The value to use if KEY is not set.
+     * @return The value of KEY, or OTHERWISE.
+     */
+    static String get(File repo, String key, String otherwise) {
+        String result = load(repo).get(key);
+        return result == null ? otherwise : result;
+    }
+
+    /**
+     * Returns a numeric setting of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param key The name of the setting.
+     * @param otherwise The value to use if KEY is not set or not a number.
+     * @return The value of KEY, or OTHERWISE.
+     */
+    static int getInt(File repo, String key, int otherwise) {
+        try {
+            return Integer.parseInt(get(repo, key, ""));
+        } catch (NumberFormatException excp) {
+            return otherwise;
+        }
+    }
+
+    /**
+     * Reports whether a yes/no setting of a repository is on.
+     * @param repo The .gitlet directory of the repository.
+     * @param key The name of the setting.
+     * @return True if KEY is set to "true" or "on".
+     */
+    static boolean isOn(File repo, String key) {
+        String value = get(repo, key, "");
+        return value.equals("true") || value.equals("on");
+    }
+
+    /**
+     * Changes a setting of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param key The name of the setting.
+     * @param value Its new value, or null to remove it.
+     */
+    static void set(File repo, String key, String value) {
+        FatMap settings = load(repo);
+        if (value == null) {
+            settings.remove(key);
+        } else {
+            settings.put(key, value);
+        }
+        Utils.writeObject(new File(repo, "config"), settings);
+    }
+
+    /**
+     * Returns the settings of a repository, reading them on first use.
+     * @param repo The .gitlet directory of the repository.
+     * @return The settings of REPO.
+     */
+    private static FatMap load(File repo) {
+        File key = repo.getAbsoluteFile();
+        FatMap result = LOADED.get(key);
+        if (result == null) {
+            File stored = new File(repo, "config");
+            if (stored.isFile()) {
+                result = Utils.readObject(stored, FatMap.class);
+            } else {
+                result = new FatMap();
+            }
+            LOADED.put(key, result);
+        }
+        return result;
+    }
+
+    /** The settings read so far in this process, by repository. */
+    private static final HashMap<File, FatMap> LOADED = new HashMap<>();
+}
@@ -0,0 +1,173 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Binary deltas between two versions of a file. A delta is the length
+ * of the result followed by a list of instructions, each either a copy
+ * of a range of the base or a run of literal bytes. An instruction
+ * byte with its high bit set is a copy and is followed by an int
+ * offset and an int length; otherwise the byte is the number of
+ * literal bytes that follow it.
+ * @author Andrew Tom
+ */
+class Delta {
+
+    /** Size of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+
+    /** Flag bit marking a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Longest run of literal bytes in a single instruction. */
+    private static final int MAX_INSERT = 0x7f;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /**
+     * Computes a delta that rebuilds TARGET from BASE.
+     * @param base The version the delta is taken against.
+     * @param target The version the delta produces.
+     * @return The encoded delta.
+     */
+    static byte[] compute(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(target.length);
+            int top = 1;
+            for (int k = 1; k < BLOCK; k += 1) {
+                top *= PRIME;
+            }
+            int literal = 0;
+            int i = 0;
+            int h = target.length >= BLOCK ? hash(target, 0) : 0;
+            while (i + BLOCK <= target.length) {
+                Integer match = blocks.get(h);
+                if (match != null && same(base, match, target, i, BLOCK)) {
+                    int from = match;
+                    int len = BLOCK;
+                    while (from + len < base.length
+                            && i + len < target.length
+                            && base[from + len] == target[i + len]) {
+                        len += 1;
+                    }
+                    while (from > 0 && i > literal
+                            && base[from - 1] == target[i - 1]) {
+                        from -= 1;
+                        i -= 1;
+                        len += 1;
+                    }
+                    writeLiteral(out, target, literal, i);
+                    out.writeByte(COPY);
+                    out.writeInt(from);
+                    out.writeInt(len);
+                    i += len;
+                    literal = i;
+                    if (i + BLOCK <= target.length) {
+                        h = hash(target, i);
+                    }
+                } else {
+                    if (i + BLOCK < target.length) {
+                        h = (h - target[i] * top) * PRIME + target[i + BLOCK];
+                    }
+                    i += 1;
+                }
+            }
+            writeLiteral(out, target, literal, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error computing delta.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rebuilds a version of a file from its base and a delta.
+     * @param base The version the delta was taken against.
+     * @param delta A delta produced by compute.
+     * @return The rebuilt file contents.
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(delta));
+            byte[] result = new byte[in.readInt()];
+            int pos = 0;
+            while (pos < result.length) {
+                int op = in.readUnsignedByte();
+                if ((op & COPY) != 0) {
+                    int from = in.readInt();
+                    int len = in.readInt();
+                    System.arraycopy(base, from, result, pos, len);
+                    pos += len;
+                } else {
+                    in.readFully(result, pos, op);
+                    pos += op;
+                }
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /**
+     * Writes the bytes of TARGET from START up to END as literal runs.
+     * @param out The delta being written.
+     * @param target The version the delta produces.
+     * @param start The first literal byte.
+     * @param end One past the last literal byte.
+     * @throws IOException If OUT fails.
+     */
+    private static void writeLiteral(DataOutputStream out, byte[] target,
+                                     int start, int end) throws IOException {
+        while (start < end) {
+            int len = Math.min(MAX_INSERT, end - start);
+            out.writeByte(len);
+            out.write(target, start, len);
+            start += len;
+        }
+    }
+
+    /**
+     * Returns the rolling hash of the BLOCK bytes of DATA at START.
+     * @param data The bytes to hash.
+     * @param start The first byte of the block.
+     * @return The hash of the block.
+     */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[start + k];
+        }
+        return h;
+    }
+
+    /**
+     * Reports whether LEN bytes of A at I equal those of B at J.
+     * @param a The first array.
+     * @param i The start in A.
+     * @param b The second array.
+     * @param j The start in B.
+     * @param len The number of bytes to compare.
+     * @return True if the ranges are equal.
+     */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
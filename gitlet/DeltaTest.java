@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of binary deltas and of storing blobs as deltas.
+ *  @author Andrew Tom
+ */
+public class DeltaTest {
+
+    /** Makes an empty object store. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+    }
+
+    /** Deletes it. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** New bytes become a literal and the matched base a single copy. */
+    @Test
+    public void encodesLiteralThenCopy() {
+        byte[] base = new byte[2 * Delta.BLOCK];
+        for (int i = 0; i < base.length; i += 1) {
+            base[i] = (byte) ('A' + i);
+        }
+        byte[] target = new byte[base.length + 2];
+        target[0] = 'x';
+        target[1] = 'y';
+        System.arraycopy(base, 0, target, 2, base.length);
+        ByteBuffer expected = ByteBuffer.allocate(16);
+        expected.putInt(target.length);
+        expected.put((byte) 2).put((byte) 'x').put((byte) 'y');
+        expected.put((byte) 0x80).putInt(0).putInt(base.length);
+        byte[] delta = Delta.compute(base, target);
+        assertArrayEquals(expected.array(), delta);
+        assertArrayEquals(target, Delta.apply(base, delta));
+    }
+
+    /** A long run of new bytes is split into runs of at most 127. */
+    @Test
+    public void splitsLongLiterals() {
+        byte[] target = random(300, 1);
+        byte[] delta = Delta.compute(new byte[0], target);
+        assertEquals(4 + 300 + 3, delta.length);
+        assertEquals(127, delta[4]);
+        assertEquals(127, delta[4 + 128]);
+        assertEquals(46, delta[4 + 256]);
+        assertArrayEquals(target, Delta.apply(new byte[0], delta));
+    }
+
+    /** Edits of every kind rebuild exactly. */
+    @Test
+    public void roundTrips() {
+        Random rand = new Random(2);
+        byte[] base = random(5000, 3);
+        for (int round = 0; round < ROUNDS; round += 1) {
+            byte[] target = edit(base, rand);
+            assertArrayEquals(target,
+                    Delta.apply(base, Delta.compute(base, target)));
+            base = target;
+        }
+        assertArrayEquals(new byte[0],
+                Delta.apply(base, Delta.compute(base, new byte[0])));
+    }
+
+    /**
+     * A blob is stored as a delta only while the delta, header and
+     * all, is at most half its size.
+     */
+    @Test
+    public void keepsDeltasAtMostHalfSize() {
+        byte[] base = random(1000, 4);
+        ObjectId baseId = ObjectId.hash(base);
+        ObjectStore.write(_repo, baseId, base);
+        int extra = 0;
+        while (fits(base, appended(base, extra + 1))) {
+            extra += 1;
+        }
+        assertTrue(extra > 0);
+        byte[] fits = appended(base, extra);
+        byte[] over = appended(base, extra + 1);
+        assertEquals(ObjectStore.DELTA, store(fits, baseId));
+        assertEquals(0, store(over, baseId));
+        assertArrayEquals(fits, ObjectStore.read(_repo, ObjectId.hash(fits)));
+        assertArrayEquals(over, ObjectStore.read(_repo, ObjectId.hash(over)));
+    }
+
+    /**
+     * A chain of versions is stored as deltas down to MAX_DEPTH, after
+     * which the next version is stored whole and starts a new chain.
+     */
+    @Test
+    public void cutsChainsAtMaxDepth() {
+        byte[][] versions = new byte[ObjectStore.MAX_DEPTH + 3][];
+        versions[0] = random(4000, 5);
+        ObjectStore.write(_repo, ObjectId.hash(versions[0]), versions[0]);
+        for (int k = 1; k < versions.length; k += 1) {
+            versions[k] = versions[k - 1].clone();
+            versions[k][k * 100] ^= 1;
+            store(versions[k], ObjectId.hash(versions[k - 1]));
+        }
+        for (int k = 1; k < versions.length; k += 1) {
+            byte[] stored =
+                ObjectStore.readStored(_repo, ObjectId.hash(versions[k]));
+            int depth = k % (ObjectStore.MAX_DEPTH + 1);
+            if (depth == 0) {
+                assertEquals(0, ObjectStore.typeOf(stored));
+            } else {
+                assertEquals(ObjectStore.DELTA, ObjectStore.typeOf(stored));
+                assertEquals(depth, stored[ObjectStore.HEADER]);
+                assertEquals(ObjectId.hash(versions[k - 1]),
+                             ObjectStore.baseOf(stored));
+            }
+        }
+        for (byte[] version : versions) {
+            assertArrayEquals(version,
+                    ObjectStore.read(_repo, ObjectId.hash(version)));
+        }
+    }
+
+    /**
+     * Stores CONTENTS against BASE and returns how it was encoded.
+     * @param contents The blob to store.
+     * @param base The ID of the version it is taken against.
+     * @return The type byte of the stored blob, 0 if plain.
+     */
+    private byte store(byte[] contents, ObjectId base) {
+        ObjectId id = ObjectId.hash(contents);
+        ObjectStore.write(_repo, id, contents, base);
+        return ObjectStore.typeOf(ObjectStore.readStored(_repo, id));
+    }
+
+    /**
+     * Reports whether a delta from BASE to TARGET is small enough to be
+     * stored.
+     * @param base The earlier version.
+     * @param target The new version.
+     * @return True if the delta with its header is at most half TARGET.
+     */
+    private static boolean fits(byte[] base, byte[] target) {
+        int size = Delta.compute(base, target).length;
+        return ObjectStore.DELTA_HEADER + size <= target.length / 2;
+    }
+
+    /**
+     * Returns BASE followed by EXTRA bytes that appear nowhere in it.
+     * @param base The bytes to start with.
+     * @param extra The number of bytes to add.
+     * @return The longer copy.
+     */
+    private static byte[] appended(byte[] base, int extra) {
+        byte[] result = Arrays.copyOf(base, base.length + extra);
+        System.arraycopy(random(extra, 6), 0, result, base.length, extra);
+        return result;
+    }
+
+    /**
+     * Returns a copy of DATA with a random range replaced, removed or
+     * added to.
+     * @param data The bytes to edit.
+     * @param rand The source of the edit.
+     * @return The edited copy.
+     */
+    private static byte[] edit(byte[] data, Random rand) {
+        int at = rand.nextInt(data.length + 1);
+        int cut = Math.min(rand.nextInt(200), data.length - at);
+        byte[] added = random(rand.nextInt(200), rand.nextLong());
+        byte[] result = new byte[data.length - cut + added.length];
+        System.arraycopy(data, 0, result, 0, at);
+        System.arraycopy(added, 0, result, at, added.length);
+        System.arraycopy(data, at + cut, result, at + added.length,
+                         data.length - at - cut);
+        return result;
+    }
+
+    /**
+     * Returns LEN pseudo-random bytes.
+     * @param len The number of bytes.
+     * @param seed The seed that fixes them.
+     * @return The bytes.
+     */
+    private static byte[] random(int len, long seed) {
+        byte[] result = new byte[len];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Number of successive edits made by roundTrips. */
+    private static final int ROUNDS = 50;
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
@@ -0,0 +1,373 @@
+package gitlet;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The files of a commit: an immutable map from path to blob ID, held
+ * as a hash array mapped trie keyed by the paths' PathTable numbers.
+ * Each node has a 32-bit bitmap of the slots in use and an array of
+ * just those slots, each a file or a node one level down, which is
+ * indexed by the next five bits of the number. A changed table is made
+ * by copying only the nodes on the paths to the changed files, so a
+ * commit's table shares every other node with its parent's, and the
+ * path Strings are shared by every table through the PathTable.
+ * @author Andrew Tom
+ */
+class FileTable extends AbstractMap<String, ObjectId> {
+
+    /** The table with no files. */
+    static final FileTable EMPTY = new FileTable(null, 0);
+
+    /**
+     * Returns a table holding a set of files.
+     * @param files The ID of the blob of each file, by path.
+     * @return The table.
+     */
+    static FileTable of(Map<String, ObjectId> files) {
+        return EMPTY.with(files);
+    }
+
+    /**
+     * Returns this table with some files changed.
+     * @param changes The new ID of each changed file by path, or null
+     *                for files removed.
+     * @return The changed table, sharing all unchanged nodes with this.
+     */
+    FileTable with(Map<String, ObjectId> changes) {
+        Node root = _root;
+        int size = _size;
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                int key = PathTable.find(change.getKey());
+                if (key >= 0 && get(root, key, 0) != null) {
+                    root = remove(root, key, 0);
+                    size -= 1;
+                }
+            } else {
+                int key = PathTable.intern(change.getKey());
+                if (get(root, key, 0) == null) {
+                    size += 1;
+                }
+                root = put(root, new Leaf(key, change.getValue()), 0);
+            }
+        }
+        return root == _root ? this : new FileTable(root, size);
+    }
+
+    @Override
+    public ObjectId get(Object path) {
+        if (!(path instanceof String)) {
+            return null;
+        }
+        int key = PathTable.find((String) path);
+        return key < 0 ? null : get(_root, key, 0);
+    }
+
+    @Override
+    public boolean containsKey(Object path) {
+        return get(path) != null;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, ObjectId>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, ObjectId>> iterator() {
+                return new Entries(_root);
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of levels of the trie, for tests of how it
+     * splits and collapses.
+     * @return The depth of the deepest node, 0 if there are no files.
+     */
+    int depth() {
+        return depth(_root);
+    }
+
+    /** One file. */
+    private static final class Leaf {
+
+        /**
+         * A file.
+         * @param key The PathTable number of its path.
+         * @param id The ID of its blob.
+         */
+        Leaf(int key, ObjectId id) {
+            _key = key;
+            _id = id;
+        }
+
+        /** The PathTable number of the path. */
+        private final int _key;
+
+        /** The ID of the blob. */
+        private final ObjectId _id;
+    }
+
+    /** A level of the trie. */
+    private static final class Node {
+
+        /**
+         * A node.
+         * @param bitmap Which of the 32 slots are in use.
+         * @param slots The Leaf or Node in each slot in use, in order.
+         */
+        Node(int bitmap, Object[] slots) {
+            _bitmap = bitmap;
+            _slots = slots;
+        }
+
+        /**
+         * Returns the position in _slots of a slot.
+         * @param bit The bit of the slot in the bitmap.
+         * @return Its position.
+         */
+        int index(int bit) {
+            return Integer.bitCount(_bitmap & (bit - 1));
+        }
+
+        /** Which of the 32 slots are in use. */
+        private final int _bitmap;
+
+        /** The Leaf or Node in each slot in use, in order. */
+        private final Object[] _slots;
+    }
+
+    /** Iterates over the files of a trie, depth first. */
+    private static final class Entries
+        implements Iterator<Map.Entry<String, ObjectId>> {
+
+        /**
+         * An iterator.
+         * @param root The root of the trie, or null.
+         */
+        Entries(Node root) {
+            if (root != null) {
+                _nodes[0] = root;
+                _depth = 1;
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next != null;
+        }
+
+        @Override
+        public Map.Entry<String, ObjectId> next() {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = _next;
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<>(
+                    PathTable.path(leaf._key), leaf._id);
+        }
+
+        /** Moves _next to the next file, or to null after the last. */
+        private void advance() {
+            _next = null;
+            while (_depth > 0) {
+                Node node = _nodes[_depth - 1];
+                int at = _positions[_depth - 1];
+                if (at == node._slots.length) {
+                    _depth -= 1;
+                    continue;
+                }
+                _positions[_depth - 1] = at + 1;
+                Object slot = node._slots[at];
+                if (slot instanceof Leaf) {
+                    _next = (Leaf) slot;
+                    return;
+                }
+                _nodes[_depth] = (Node) slot;
+                _positions[_depth] = 0;
+                _depth += 1;
+            }
+        }
+
+        /** The nodes from the root down to the one being iterated. */
+        private final Node[] _nodes = new Node[MAX_DEPTH];
+
+        /** The next slot to visit in each of _nodes. */
+        private final int[] _positions = new int[MAX_DEPTH];
+
+        /** How many of _nodes are in use. */
+        private int _depth;
+
+        /** The file next returns, or null. */
+        private Leaf _next;
+    }
+
+    /**
+     * A table.
+     * @param root The root of its trie, or null if it is empty.
+     * @param size The number of files.
+     */
+    private FileTable(Node root, int size) {
+        _root = root;
+        _size = size;
+    }
+
+    /**
+     * Returns the bit of the slot KEY goes in at one level.
+     * @param key A PathTable number.
+     * @param shift Five times the level.
+     * @return The bit of the slot.
+     */
+    private static int bit(int key, int shift) {
+        return 1 << ((key >>> shift) & SLOT_MASK);
+    }
+
+    /**
+     * Finds a file under a node.
+     * @param node The node, or null.
+     * @param key The PathTable number of the file's path.
+     * @param shift Five times the level of NODE.
+     * @return The ID of the file's blob, or null if there is none.
+     */
+    private static ObjectId get(Node node, int key, int shift) {
+        while (node != null) {
+            int bit = bit(key, shift);
+            if ((node._bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node._slots[node.index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf._key == key ? leaf._id : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /**
+     * Adds or replaces a file under a node.
+     * @param node The node, or null.
+     * @param leaf The file.
+     * @param shift Five times the level of NODE.
+     * @return The new node, or NODE itself if nothing changed.
+     */
+    private static Node put(Node node, Leaf leaf, int shift) {
+        int bit = bit(leaf._key, shift);
+        if (node == null) {
+            return new Node(bit, new Object[] {leaf});
+        }
+        int at = node.index(bit);
+        if ((node._bitmap & bit) == 0) {
+            Object[] slots = new Object[node._slots.length + 1];
+            System.arraycopy(node._slots, 0, slots, 0, at);
+            slots[at] = leaf;
+            System.arraycopy(node._slots, at, slots, at + 1,
+                    node._slots.length - at);
+            return new Node(node._bitmap | bit, slots);
+        }
+        Object slot = node._slots[at];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, leaf, shift + BITS);
+        } else if (((Leaf) slot)._key != leaf._key) {
+            replacement = put(put(null, (Leaf) slot, shift + BITS), leaf,
+                    shift + BITS);
+        } else if (((Leaf) slot)._id.equals(leaf._id)) {
+            replacement = slot;
+        } else {
+            replacement = leaf;
+        }
+        if (replacement == slot) {
+            return node;
+        }
+        Object[] slots = node._slots.clone();
+        slots[at] = replacement;
+        return new Node(node._bitmap, slots);
+    }
+
+    /**
+     * Removes a file from under a node.
+     * @param node The node, which holds the file.
+     * @param key The PathTable number of the file's path.
+     * @param shift Five times the level of NODE.
+     * @return The new node, or null if it would be empty.
+     */
+    private static Node remove(Node node, int key, int shift) {
+        int bit = bit(key, shift);
+        int at = node.index(bit);
+        Object slot = node._slots[at];
+        Object replacement = null;
+        if (slot instanceof Node) {
+            Node sub = remove((Node) slot, key, shift + BITS);
+            if (sub != null && sub._slots.length == 1
+                    && sub._slots[0] instanceof Leaf) {
+                replacement = sub._slots[0];
+            } else {
+                replacement = sub;
+            }
+        }
+        if (replacement != null) {
+            Object[] slots = node._slots.clone();
+            slots[at] = replacement;
+            return new Node(node._bitmap, slots);
+        }
+        if (node._slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node._slots.length - 1];
+        System.arraycopy(node._slots, 0, slots, 0, at);
+        System.arraycopy(node._slots, at + 1, slots, at,
+                slots.length - at);
+        return new Node(node._bitmap & ~bit, slots);
+    }
+
+    /**
+     * Returns the number of levels under a node.
+     * @param node The node, or null.
+     * @return The depth of the deepest node under NODE, counting it.
+     */
+    private static int depth(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        int deepest = 0;
+        for (Object slot : node._slots) {
+            if (slot instanceof Node) {
+                deepest = Math.max(deepest, depth((Node) slot));
+            }
+        }
+        return deepest + 1;
+    }
+
+    /** Bits of a PathTable number used at each level. */
+    private static final int BITS = 5;
+
+    /** Mask for the bits used at each level. */
+    private static final int SLOT_MASK = (1 << BITS) - 1;
+
+    /** Most levels a trie can have: enough for 32-bit keys. */
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS;
+
+    /** The root of the trie, or null if there are no files. */
+    private final Node _root;
+
+    /** The number of files. */
+    private final int _size;
+}
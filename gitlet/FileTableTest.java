@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the persistent file tables of commits.
+ *  @author Andrew Tom
+ */
+public class FileTableTest {
+
+    /**
+     * Files whose path numbers share a slot at the top level are split
+     * into a node one level down, and each is still found.
+     */
+    @Test
+    public void splitsSharedSlots() {
+        String[] paths = paths(SLOTS + 1);
+        FileTable table = FileTable.of(Map.of(paths[0], A));
+        assertEquals(1, table.depth());
+        table = table.with(Map.of(paths[SLOTS], B));
+        assertEquals(2, table.depth());
+        assertEquals(A, table.get(paths[0]));
+        assertEquals(B, table.get(paths[SLOTS]));
+        assertNull(table.get(paths[1]));
+        assertEquals(Map.of(paths[0], A, paths[SLOTS], B), table);
+        table = table.with(Map.of(paths[0], C));
+        assertEquals(Map.of(paths[0], C, paths[SLOTS], B), table);
+    }
+
+    /**
+     * Path numbers alike in their low fifteen bits are split only at the
+     * fourth level, and one alike in ten only at the third.
+     */
+    @Test
+    public void splitsDeepLevels() {
+        int far = SLOTS * SLOTS * SLOTS;
+        String[] paths = paths(far + 1);
+        FileTable table = FileTable.of(Map.of(paths[0], A, paths[far], B));
+        assertEquals(4, table.depth());
+        table = table.with(Map.of(paths[SLOTS * SLOTS], C));
+        assertEquals(4, table.depth());
+        assertEquals(Map.of(paths[0], A, paths[far], B,
+                            paths[SLOTS * SLOTS], C), table);
+        assertNull(table.get(paths[SLOTS]));
+    }
+
+    /**
+     * Removing a file leaves its neighbour in the highest node it alone
+     * occupies, and removing every file leaves no nodes.
+     */
+    @Test
+    public void removalCollapsesNodes() {
+        int far = SLOTS * SLOTS * SLOTS;
+        String[] paths = paths(far + 1);
+        FileTable table = FileTable.of(Map.of(paths[0], A, paths[far], B,
+                                              paths[1], C));
+        assertEquals(4, table.depth());
+        HashMap<String, ObjectId> removal = new HashMap<>();
+        removal.put(paths[far], null);
+        FileTable smaller = table.with(removal);
+        assertEquals(1, smaller.depth());
+        assertEquals(Map.of(paths[0], A, paths[1], C), smaller);
+        removal.put(paths[0], null);
+        removal.put(paths[1], null);
+        FileTable empty = table.with(removal);
+        assertEquals(0, empty.depth());
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.entrySet().iterator().hasNext());
+    }
+
+    /** A table made from another leaves the other as it was. */
+    @Test
+    public void parentUnchangedByChild() {
+        String[] paths = paths(FILES);
+        HashMap<String, ObjectId> files = new HashMap<>();
+        for (int i = 0; i < FILES; i += 1) {
+            files.put(paths[i], i % 2 == 0 ? A : B);
+        }
+        FileTable parent = FileTable.of(files);
+        HashMap<String, ObjectId> changes = new HashMap<>();
+        changes.put(paths[0], C);
+        changes.put(paths[1], null);
+        changes.put("new/file", C);
+        FileTable child = parent.with(changes);
+        assertEquals(files, parent);
+        assertEquals(FILES, parent.size());
+        HashMap<String, ObjectId> expected = new HashMap<>(files);
+        expected.put(paths[0], C);
+        expected.remove(paths[1]);
+        expected.put("new/file", C);
+        assertEquals(expected, child);
+        assertEquals(FILES, child.size());
+        HashMap<String, ObjectId> same = new HashMap<>();
+        same.put(paths[2], A);
+        same.put("never/stored", null);
+        assertSame(parent, parent.with(same));
+    }
+
+    /**
+     * Every version made by random changes matches a HashMap given the
+     * same changes, and still does after later versions are made.
+     */
+    @Test
+    public void matchesHashMap() {
+        Random rand = new Random(1);
+        String[] paths = paths(FILES);
+        ArrayList<FileTable> versions = new ArrayList<>();
+        ArrayList<HashMap<String, ObjectId>> models = new ArrayList<>();
+        FileTable table = FileTable.EMPTY;
+        HashMap<String, ObjectId> model = new HashMap<>();
+        ObjectId[] ids = {A, B, C};
+        for (int round = 0; round < ROUNDS; round += 1) {
+            HashMap<String, ObjectId> changes = new HashMap<>();
+            for (int k = 0; k < FILES / 4; k += 1) {
+                String path = paths[rand.nextInt(FILES)];
+                ObjectId id = rand.nextInt(3) == 0 ? null
+                    : ids[rand.nextInt(ids.length)];
+                changes.put(path, id);
+            }
+            table = table.with(changes);
+            for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    model.remove(change.getKey());
+                } else {
+                    model.put(change.getKey(), change.getValue());
+                }
+            }
+            versions.add(table);
+            models.add(new HashMap<>(model));
+        }
+        for (int round = 0; round < ROUNDS; round += 1) {
+            assertEquals(models.get(round), versions.get(round));
+            assertEquals(models.get(round).size(),
+                         versions.get(round).size());
+        }
+    }
+
+    /**
+     * Returns N paths with consecutive PathTable numbers, so that the
+     * numbers of paths K apart differ by K.
+     * @param n The number of paths.
+     * @return The paths.
+     */
+    private static String[] paths(int n) {
+        String[] result = new String[n];
+        _batch += 1;
+        for (int i = 0; i < n; i += 1) {
+            result[i] = "table" + _batch + "/" + i;
+            assertEquals(PathTable.size(), PathTable.intern(result[i]));
+        }
+        return result;
+    }
+
+    /** Slots in a node. */
+    private static final int SLOTS = 32;
+
+    /** Number of paths in the larger tables. */
+    private static final int FILES = 1000;
+
+    /** Number of versions made by matchesHashMap. */
+    private static final int ROUNDS = 20;
+
+    /** Blob IDs. */
+    private static final ObjectId
+        A = Utils.sha1Id("a"), B = Utils.sha1Id("b"), C = Utils.sha1Id("c");
+
+    /** Number of sets of paths made so far, to keep each set new. */
+    private static int _batch;
+}
@@ -0,0 +1,304 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Mark-and-sweep collection of the objects of a repository. Every
+ * commit reachable from a branch or from a record of a Reflog, and
+ * every tree and blob reachable from those commits or from the staging
+ * area, is marked, following delta bases
+ * and chunk lists down to the blobs they are built from. Everything
+ * else is deleted, loose or packed, unless it was written within the
+ * grace period: a command running at the same time may have just
+ * stored an object that nothing points to yet. Storing a blob that
+ * already exists marks it as just written for the same reason: a pack
+ * is touched, and a loose blob, whose time may be a hard-linked
+ * working file's, is noted in a log that gc reads and trims. Reflog
+ * records are expired first, after a period of their own, much longer
+ * than the grace period; the rest keep the commits they name, so no
+ * log is left naming a collected commit.
+ * @author Andrew Tom
+ */
+class GarbageCollector {
+
+    /**
+     * A collector for a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param grace Objects written less than this many milliseconds ago
+     *              are kept whether or not they are reachable.
+     * @param expire Reflog records made more than this many milliseconds
+     *               ago are dropped.
+     */
+    GarbageCollector(File repo, long grace, long expire) {
+        _repo = repo;
+        long now = System.currentTimeMillis();
+        _cutoff = now - grace;
+        _expiry = now - expire;
+    }
+
+    /**
+     * Expires old reflog records, then marks every reachable commit and
+     * blob.
+     */
+    void mark() {
+        long start = System.nanoTime();
+        Refs.expireLogs(_repo, _expiry);
+        ArrayDeque<ObjectId> commits = new ArrayDeque<>();
+        for (ObjectId id : Refs.all(_repo).values()) {
+            commits.push(id);
+        }
+        for (String name : Reflog.names(_repo)) {
+            Reflog log = Reflog.open(_repo, name);
+            for (int k = 0; k < log.size(); k += 1) {
+                for (ObjectId id : new ObjectId[] {log.oldId(k),
+                                                   log.newId(k)}) {
+                    if (id != null) {
+                        commits.push(id);
+                    }
+                }
+            }
+        }
+        markCommits(commits);
+        for (ObjectId id : Index.staged(_repo)) {
+            markBlob(id);
+        }
+        markRecent();
+        _markTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Deletes every unmarked commit and blob older than the grace
+     * period, rewriting packs that hold any. The commit graph and
+     * the commit and message indexes are dropped if any commit goes,
+     * and rebuilt as they are next used.
+     */
+    void sweep() {
+        long start = System.nanoTime();
+        File commitDir = new File(_repo, "commits");
+        for (String name : Utils.plainFilenamesIn(commitDir)) {
+            File stored = new File(commitDir, name);
+            boolean live = ObjectId.isId(name)
+                    && _commits.contains(ObjectId.parse(name));
+            if (!live && isOld(stored)) {
+                _bytes += stored.length();
+                _deadCommits += 1;
+                stored.delete();
+            }
+        }
+        if (_deadCommits > 0) {
+            CommitGraph.discard(_repo);
+            CommitIndex.discard(_repo);
+            MessageIndex.discard(_repo);
+        }
+        File loose = ObjectStore.looseDir(_repo);
+        List<String> names = Utils.plainFilenamesIn(loose);
+        if (names != null) {
+            for (String name : names) {
+                File stored = new File(loose, name);
+                boolean blob = ObjectId.isId(name);
+                if (isOld(stored)
+                        && (blob ? !_blobs.contains(ObjectId.parse(name))
+                            : name.endsWith(".tmp"))) {
+                    _bytes += stored.length();
+                    _deadBlobs += blob ? 1 : 0;
+                    stored.delete();
+                }
+            }
+        }
+        for (PackFile pack : new ArrayList<>(ObjectStore.packs(_repo))) {
+            if (!isOld(pack.getPackFile())) {
+                continue;
+            }
+            ArrayList<ObjectId> keep = new ArrayList<>();
+            for (int k = 0; k < pack.size(); k += 1) {
+                ObjectId id = pack.idAt(k);
+                if (_blobs.contains(id)) {
+                    keep.add(id);
+                }
+            }
+            if (keep.size() < pack.size()) {
+                _deadBlobs += pack.size() - keep.size();
+                _bytes += pack.bytes();
+                PackFile fresh = ObjectStore.rewritePack(_repo, pack, keep);
+                if (fresh != null) {
+                    _bytes -= fresh.bytes();
+                }
+            }
+        }
+        _sweepTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the number of bytes freed by the sweep.
+     * @return The total size of the deleted files, less new packs.
+     */
+    long reclaimed() {
+        return _bytes;
+    }
+
+    /**
+     * Returns the number of commits deleted by the sweep.
+     * @return The number of deleted commits.
+     */
+    int deadCommits() {
+        return _deadCommits;
+    }
+
+    /**
+     * Returns the number of blobs deleted by the sweep.
+     * @return The number of deleted blobs, loose or packed.
+     */
+    int deadBlobs() {
+        return _deadBlobs;
+    }
+
+    /**
+     * Returns how long the mark phase took.
+     * @return The time in nanoseconds.
+     */
+    long markTime() {
+        return _markTime;
+    }
+
+    /**
+     * Returns how long the sweep phase took.
+     * @return The time in nanoseconds.
+     */
+    long sweepTime() {
+        return _sweepTime;
+    }
+
+    /**
+     * Marks everything written or stored again within the grace period,
+     * along with what it refers to. Those objects are kept anyway, and
+     * must stay readable.
+     */
+    private void markRecent() {
+        File commitDir = new File(_repo, "commits");
+        ArrayDeque<ObjectId> commits = new ArrayDeque<>();
+        for (String name : Utils.plainFilenamesIn(commitDir)) {
+            if (ObjectId.isId(name) && !isOld(new File(commitDir, name))) {
+                commits.push(ObjectId.parse(name));
+            }
+        }
+        markCommits(commits);
+        File loose = ObjectStore.looseDir(_repo);
+        List<String> names = Utils.plainFilenamesIn(loose);
+        if (names != null) {
+            for (String name : names) {
+                if (ObjectId.isId(name) && !isOld(new File(loose, name))) {
+                    markBlob(ObjectId.parse(name));
+                }
+            }
+        }
+        for (PackFile pack : ObjectStore.packs(_repo)) {
+            if (!isOld(pack.getPackFile())) {
+                for (int k = 0; k < pack.size(); k += 1) {
+                    markBlob(pack.idAt(k));
+                }
+            }
+        }
+        for (ObjectId id : ObjectStore.freshSince(_repo, _cutoff)) {
+            markBlob(id);
+        }
+    }
+
+    /**
+     * Marks the commits in PENDING, their ancestors, and their trees
+     * and blobs.
+     * @param pending The IDs of the commits to start from; emptied.
+     */
+    private void markCommits(ArrayDeque<ObjectId> pending) {
+        File commitDir = new File(_repo, "commits");
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (!new File(commitDir, id.toString()).isFile()
+                    || !_commits.add(id)) {
+                continue;
+            }
+            Commit c = Commit.read(_repo, id);
+            for (ObjectId parent : c.getParents()) {
+                if (parent != null) {
+                    pending.push(parent);
+                }
+            }
+            if (!c.hasTree()) {
+                for (ObjectId blob : c.getFileNameToHash().values()) {
+                    markBlob(blob);
+                }
+                continue;
+            }
+            HashSet<ObjectId> blobs = new HashSet<>();
+            Tree.walk(_repo, c.getTree(), _trees, blobs);
+            for (ObjectId blob : blobs) {
+                markBlob(blob);
+            }
+        }
+        for (ObjectId tree : _trees) {
+            markBlob(tree);
+        }
+    }
+
+    /**
+     * Marks a blob and every blob it is built from.
+     * @param id The ID of the blob.
+     */
+    private void markBlob(ObjectId id) {
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            ObjectId next = pending.pop();
+            if (_blobs.add(next) && ObjectStore.contains(_repo, next)) {
+                pending.addAll(ObjectStore.references(_repo, next));
+            }
+        }
+    }
+
+    /**
+     * Reports whether a file was last written before the grace period.
+     * @param f The file to check.
+     * @return True if F may be deleted when unreachable.
+     */
+    private boolean isOld(File f) {
+        return f.lastModified() < _cutoff;
+    }
+
+    /** The .gitlet directory being collected. */
+    private final File _repo;
+
+    /** Objects last written after this time, in milliseconds, are kept. */
+    private final long _cutoff;
+
+    /** Reflog records made before this time, in milliseconds, go. */
+    private final long _expiry;
+
+    /** IDs of the reachable commits. */
+    private final HashSet<ObjectId> _commits = new HashSet<>();
+
+    /**
+     * IDs of the reachable trees. Walking stops at any tree already
+     * here, so a directory shared by many commits is read once.
+     */
+    private final HashSet<ObjectId> _trees = new HashSet<>();
+
+    /** IDs of the reachable blobs. */
+    private final HashSet<ObjectId> _blobs = new HashSet<>();
+
+    /** Bytes freed so far. */
+    private long _bytes;
+
+    /** Commits deleted so far. */
+    private int _deadCommits;
+
+    /** Blobs deleted so far. */
+    private int _deadBlobs;
+
+    /** Duration of the mark phase in nanoseconds. */
+    private long _markTime;
+
+    /** Duration of the sweep phase in nanoseconds. */
+    private long _sweepTime;
+}
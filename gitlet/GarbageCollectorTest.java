@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of what gc keeps.
+ *  @author Andrew Tom
+ */
+public class GarbageCollectorTest {
+
+    /**
+     * Makes a repository whose master branch was committed to twice,
+     * then reset to its first commit, all long enough ago that gc
+     * would collect the second commit if nothing reached it.
+     */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        _first = commit("first", "a");
+        Refs.init(_repo, "master", _first);
+        _second = commit("second", "b", _first);
+        Refs.update(_repo, "master", _first, _second, "commit: second");
+        Refs.update(_repo, "master", _second, _first, "reset");
+        long old = System.currentTimeMillis() - DAY;
+        for (String dir : new String[] {"commits", "blobby"}) {
+            for (File f : new File(_repo, dir).listFiles()) {
+                f.setLastModified(old);
+            }
+        }
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** A commit only the reflog names survives gc and can be restored. */
+    @Test
+    public void keepsCommitsInReflog() {
+        GarbageCollector gc = new GarbageCollector(_repo, DAY / 2, DAY);
+        gc.mark();
+        gc.sweep();
+        assertEquals(0, gc.deadCommits());
+        Reflog log = Reflog.open(_repo, "master");
+        ObjectId lost = log.oldId(log.size() - 1);
+        assertEquals(_second, lost);
+        Refs.update(_repo, "master", _first, lost, "reset");
+        Commit restored = Commit.read(_repo, Refs.get(_repo, "master"));
+        assertEquals("second", restored.getMsg());
+        assertArrayEquals("b".getBytes(), ObjectStore.read(_repo,
+                restored.fileID("f.txt")));
+    }
+
+    /** With no grace period, as with --now, the reflog still holds. */
+    @Test
+    public void keepsReflogWithoutGrace() throws InterruptedException {
+        Thread.sleep(STEP);
+        GarbageCollector gc = new GarbageCollector(_repo, 0, DAY);
+        gc.mark();
+        gc.sweep();
+        assertEquals(0, gc.deadCommits());
+        assertEquals(3, Reflog.open(_repo, "master").size());
+    }
+
+    /** Once the reflog has expired, the commit only it named goes. */
+    @Test
+    public void expiresReflog() throws InterruptedException {
+        Thread.sleep(STEP);
+        GarbageCollector gc = new GarbageCollector(_repo, 0, 0);
+        gc.mark();
+        gc.sweep();
+        assertEquals(1, gc.deadCommits());
+        assertEquals(0, Reflog.open(_repo, "master").size());
+        assertEquals(_first, Refs.get(_repo, "master"));
+    }
+
+    /**
+     * Stores a commit of one file, f.txt.
+     * @param msg Its message.
+     * @param contents The contents of f.txt.
+     * @param parents Its parents.
+     * @return Its ID.
+     */
+    private ObjectId commit(String msg, String contents,
+                            ObjectId... parents) {
+        ObjectId blob = Utils.sha1Id(contents);
+        ObjectStore.write(_repo, blob, contents.getBytes());
+        Commit c = new Commit(msg, parents);
+        c.setTree(Tree.write(_repo, Map.of("f.txt", blob)));
+        c.setID();
+        Commit.writeCommit(_repo, c.getID(), c);
+        return c.getID();
+    }
+
+    /** Milliseconds in a day. */
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    /** Milliseconds to wait for the clock to move on. */
+    private static final long STEP = 20;
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+
+    /** The commits. */
+    private ObjectId _first, _second;
+}
@@ -0,0 +1,262 @@
+package gitlet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+/**
+ * The patterns of a .gitletignore file, compiled into one matcher.
+ *
+ * Each line is a pattern, except blank lines and those starting with
+ * '#'. A pattern ending in '/' matches only directories. A pattern
+ * with no other '/' matches a file or directory of that name at any
+ * depth; otherwise it matches a path from the top of the working
+ * tree, with or without a leading '/'. '*' and '?' match within one
+ * name, "**" across directories, and [...] one of a set of characters.
+ * Everything under an ignored directory is ignored. Lines starting
+ * with '!' are skipped: an ignored directory is never looked in, so
+ * nothing under it can be brought back.
+ *
+ * Patterns without wildcards, which are most of them, are looked up
+ * directly: names in a hash set, and paths in a trie of their
+ * components, so that matching a path follows one branch. The rest
+ * are joined into one regular expression for each of the four kinds
+ * (name or path, and any entry or directories only), so each entry is
+ * run through at most four automata however many patterns there are.
+ * @author Andrew Tom
+ */
+class IgnoreRules {
+
+    /**
+     * Compiles the patterns of an ignore file.
+     * @param text The contents of the file.
+     */
+    IgnoreRules(String text) {
+        ArrayList<ArrayList<String>> globs = new ArrayList<>();
+        for (int k = 0; k < KINDS; k += 1) {
+            globs.add(new ArrayList<>());
+        }
+        for (String line : text.split("\n")) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")
+                    || pattern.startsWith("!")) {
+                continue;
+            }
+            boolean dirOnly = pattern.endsWith("/");
+            if (dirOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (isLiteral(pattern)) {
+                if (anchored) {
+                    _paths.add(pattern, dirOnly);
+                } else {
+                    (dirOnly ? _dirNames : _names).add(pattern);
+                }
+            } else {
+                globs.get(kind(anchored, dirOnly)).add(regex(pattern));
+            }
+        }
+        for (int k = 0; k < KINDS; k += 1) {
+            if (!globs.get(k).isEmpty()) {
+                _globs[k] = Pattern.compile(
+                        "(?:" + String.join(")|(?:", globs.get(k)) + ")");
+            }
+        }
+    }
+
+    /**
+     * Reports whether an entry is ignored by a pattern of its own,
+     * leaving aside the directories above it.
+     * @param path The path of the entry from the top of the tree.
+     * @param dir True if it is a directory.
+     * @return True if it is ignored.
+     */
+    boolean matches(String path, boolean dir) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (_names.contains(name) || dir && _dirNames.contains(name)) {
+            return true;
+        }
+        if (_paths.matches(path, dir)) {
+            return true;
+        }
+        return matches(kind(false, false), name)
+            || matches(kind(true, false), path)
+            || dir && (matches(kind(false, true), name)
+                       || matches(kind(true, true), path));
+    }
+
+    /**
+     * Reports whether a path is ignored, by its own patterns or those of
+     * a directory above it.
+     * @param path The path from the top of the tree.
+     * @param dir True if it is a directory.
+     * @return True if it is ignored.
+     */
+    boolean ignored(String path, boolean dir) {
+        for (int end = path.indexOf('/'); end >= 0;
+             end = path.indexOf('/', end + 1)) {
+            if (matches(path.substring(0, end), true)) {
+                return true;
+            }
+        }
+        return matches(path, dir);
+    }
+
+    /**
+     * Runs one of the joined patterns.
+     * @param kind Which of them.
+     * @param text The name or path to match.
+     * @return True if there is such a pattern and it matches TEXT.
+     */
+    private boolean matches(int kind, String text) {
+        return _globs[kind] != null && _globs[kind].matcher(text).matches();
+    }
+
+    /**
+     * Returns which joined pattern a glob goes in.
+     * @param anchored True if it matches paths rather than names.
+     * @param dirOnly True if it matches only directories.
+     * @return The index in _globs.
+     */
+    private static int kind(boolean anchored, boolean dirOnly) {
+        return (anchored ? 2 : 0) + (dirOnly ? 1 : 0);
+    }
+
+    /**
+     * Reports whether a pattern matches only itself.
+     * @param pattern The pattern.
+     * @return True if it has no wildcards.
+     */
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i += 1) {
+            if (WILDCARDS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translates a glob into a regular expression.
+     * @param glob The glob.
+     * @return An expression matching what GLOB does.
+     */
+    private static String regex(String glob) {
+        StringBuilder result = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < n && glob.charAt(i + 1) == '*') {
+                i += 1;
+                if (i + 1 < n && glob.charAt(i + 1) == '/') {
+                    i += 1;
+                    result.append("(?:.*/)?");
+                } else {
+                    result.append(".*");
+                }
+            } else if (c == '*') {
+                result.append("[^/]*");
+            } else if (c == '?') {
+                result.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                int close = glob.indexOf(']', i + 2);
+                String set = glob.substring(i + 1, close);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                result.append('[').append(set.replace("\\", "\\\\")
+                        .replace("[", "\\[")).append(']');
+                i = close;
+            } else if (Character.isLetterOrDigit(c)) {
+                result.append(c);
+            } else {
+                result.append('\\').append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** A trie of paths, one component per level. */
+    private static final class PathTrie {
+
+        /**
+         * Adds a path.
+         * @param path The path, its components separated by '/'.
+         * @param dirOnly True if it matches only a directory.
+         */
+        void add(String path, boolean dirOnly) {
+            PathTrie node = this;
+            for (String part : path.split("/")) {
+                if (node._children == null) {
+                    node._children = new HashMap<>();
+                }
+                node = node._children.computeIfAbsent(part,
+                        k -> new PathTrie());
+            }
+            node._end = dirOnly && node._end != ANY ? DIR : ANY;
+        }
+
+        /**
+         * Reports whether a path was added.
+         * @param path The path.
+         * @param dir True if it is a directory.
+         * @return True if it is in the trie, allowing for DIR.
+         */
+        boolean matches(String path, boolean dir) {
+            PathTrie node = this;
+            int start = 0;
+            while (node != null && start <= path.length()) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+                node = node._children == null ? null
+                    : node._children.get(path.substring(start, end));
+                start = end + 1;
+            }
+            return node != null && (node._end == ANY
+                                    || node._end == DIR && dir);
+        }
+
+        /** Value of _end for a path no pattern ends at. */
+        private static final int NONE = 0;
+
+        /** Value of _end for a pattern matching a directory only. */
+        private static final int DIR = 1;
+
+        /** Value of _end for a pattern matching anything. */
+        private static final int ANY = 2;
+
+        /** The next components, or null for none. */
+        private HashMap<String, PathTrie> _children;
+
+        /** Whether a pattern ends here: NONE, DIR or ANY. */
+        private int _end = NONE;
+    }
+
+    /** Number of joined patterns. */
+    private static final int KINDS = 4;
+
+    /** Characters that make a pattern a glob. */
+    private static final String WILDCARDS = "*?[";
+
+    /** Names ignored wherever they are. */
+    private final HashSet<String> _names = new HashSet<>();
+
+    /** Names of directories ignored wherever they are. */
+    private final HashSet<String> _dirNames = new HashSet<>();
+
+    /** Paths ignored from the top of the tree. */
+    private final PathTrie _paths = new PathTrie();
+
+    /** The joined glob patterns, by kind, or null where there are
+     *  none. */
+    private final Pattern[] _globs = new Pattern[KINDS];
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of compiled .gitletignore patterns.
+ *  @author Andrew Tom
+ */
+public class IgnoreRulesTest {
+
+    /** Rules used by most of the tests. */
+    private static final IgnoreRules RULES = new IgnoreRules(
+            "# build output\n"
+            + "\n"
+            + "node_modules\n"
+            + "target/\n"
+            + "*.class\n"
+            + "/out\n"
+            + "docs/draft.txt\n"
+            + "logs/*.log\n"
+            + "**/tmp/\n"
+            + "data/**/cache\n"
+            + "file[0-9].bin\n"
+            + "!keep.class\n");
+
+    /** A plain name matches at any depth, file or directory. */
+    @Test
+    public void namesMatchAnywhere() {
+        assertTrue(RULES.matches("node_modules", true));
+        assertTrue(RULES.matches("web/node_modules", true));
+        assertTrue(RULES.matches("web/node_modules", false));
+        assertFalse(RULES.matches("node_modules2", true));
+    }
+
+    /** A trailing slash matches only directories. */
+    @Test
+    public void directoryOnly() {
+        assertTrue(RULES.matches("target", true));
+        assertTrue(RULES.matches("a/b/target", true));
+        assertFalse(RULES.matches("target", false));
+        assertTrue(RULES.matches("x/tmp", true));
+        assertFalse(RULES.matches("x/tmp", false));
+    }
+
+    /** A pattern with a slash matches from the top only. */
+    @Test
+    public void anchoredPaths() {
+        assertTrue(RULES.matches("out", false));
+        assertFalse(RULES.matches("src/out", false));
+        assertTrue(RULES.matches("docs/draft.txt", false));
+        assertFalse(RULES.matches("x/docs/draft.txt", false));
+        assertTrue(RULES.matches("logs/a.log", false));
+        assertFalse(RULES.matches("logs/old/a.log", false));
+        assertTrue(RULES.matches("data/cache", true));
+        assertTrue(RULES.matches("data/x/y/cache", false));
+    }
+
+    /** Wildcards and sets stay within one name. */
+    @Test
+    public void wildcards() {
+        assertTrue(RULES.matches("A.class", false));
+        assertTrue(RULES.matches("src/p/A.class", false));
+        assertFalse(RULES.matches("A.classes", false));
+        assertTrue(RULES.matches("file3.bin", false));
+        assertFalse(RULES.matches("fileX.bin", false));
+        assertTrue(RULES.matches("keep.class", false));
+    }
+
+    /** A path is ignored if a directory above it is. */
+    @Test
+    public void ignoredUnderDirectory() {
+        assertTrue(RULES.ignored("target/classes/A.txt", false));
+        assertTrue(RULES.ignored("web/node_modules/x/y.js", false));
+        assertFalse(RULES.matches("target/classes/A.txt", false));
+        assertFalse(RULES.ignored("src/Main.java", false));
+    }
+
+    /** No rules ignore nothing. */
+    @Test
+    public void emptyIgnoresNothing() {
+        IgnoreRules none = new IgnoreRules("");
+        assertFalse(none.ignored("a/b/c", false));
+        assertFalse(none.matches("a", true));
+    }
+}
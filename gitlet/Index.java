@@ -0,0 +1,455 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The staging area, and what is known about the files of the working
+ * directory, in one file (.gitlet/index) in place of the addStage and
+ * removeStage directories.
+ *
+ * The index holds one entry per path: whether the path is staged for
+ * addition, staged for removal or neither, the ID of the blob of the
+ * file's contents, and the size, modification time, change time and
+ * inode the file had when that ID was found. A file whose stat data
+ * still match its entry has not changed, so its ID is used without
+ * reading it. A file changed within the same clock tick as the index
+ * was written could keep all of its stat data, so entries modified no
+ * earlier than the index itself are "racy" and always rehashed. Since
+ * a later index is written after that tick, each write also clears the
+ * stat data of every entry modified no earlier than the write began,
+ * so a racy entry is never trusted again until its file is hashed
+ * anew.
+ *
+ * The file is the magic "GLIX", a version int and the entry count,
+ * then each entry sorted by path: the path as writeUTF, a stage byte,
+ * the 20-byte blob ID, and four longs: size, modification and change
+ * times in nanoseconds, and inode. It is replaced whole, through a
+ * temporary file, whenever it changes. Repositories made before the
+ * index have their stage directories read in, and removed once the
+ * index is written.
+ * @author Andrew Tom
+ */
+class Index {
+
+    /** Magic number at the start of the index. */
+    static final int MAGIC = 0x474c4958;
+
+    /** Current version of the index. */
+    static final int VERSION = 1;
+
+    /** Stage of an entry that only caches a file's ID. */
+    static final byte CLEAN = 0;
+
+    /** Stage of an entry staged for addition. */
+    static final byte ADDED = 1;
+
+    /** Stage of an entry staged for removal. */
+    static final byte REMOVED = 2;
+
+    /**
+     * Reads the index of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @return The index, empty if there is none.
+     */
+    static Index read(File repo) {
+        Index result = new Index(repo);
+        File index = new File(repo, INDEX);
+        if (!index.isFile()) {
+            result.readLegacy();
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        Files.newInputStream(index.toPath())))) {
+            result._written = Files.getLastModifiedTime(index.toPath())
+                .to(TimeUnit.NANOSECONDS);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt index.");
+            }
+            byte[] raw = new byte[ObjectId.BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                Entry entry = new Entry(in.readByte());
+                in.readFully(raw);
+                entry._id = ObjectId.fromBytes(raw, 0);
+                for (int i = 0; i < Entry.STAT; i += 1) {
+                    entry._stat[i] = in.readLong();
+                }
+                result._entries.put(path, entry);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the files staged for addition.
+     * @return The ID of the blob staged for each, by path.
+     */
+    TreeMap<String, ObjectId> added() {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            if (entry.getValue()._stage == ADDED) {
+                result.put(entry.getKey(), entry.getValue()._id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the files staged for removal.
+     * @return Their paths, sorted.
+     */
+    TreeSet<String> removed() {
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            if (entry.getValue()._stage == REMOVED) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stages a file for addition, recording the stat data of the
+     * working file, which must hold the blob's contents.
+     * @param path The path of the file.
+     * @param id The ID of its blob.
+     */
+    void add(String path, ObjectId id) {
+        Entry entry = new Entry(ADDED);
+        entry._id = id;
+        stat(path, entry._stat);
+        _entries.put(path, entry);
+        _changed = true;
+    }
+
+    /**
+     * Stages a file for removal.
+     * @param path The path of the file.
+     */
+    void remove(String path) {
+        Entry entry = new Entry(REMOVED);
+        entry._id = NONE;
+        _entries.put(path, entry);
+        _changed = true;
+    }
+
+    /**
+     * Unstages a file, keeping what is known of its working copy.
+     * @param path The path of the file.
+     */
+    void unstage(String path) {
+        Entry entry = _entries.get(path);
+        if (entry == null || entry._stage == CLEAN) {
+            return;
+        }
+        if (entry._stage == REMOVED) {
+            _entries.remove(path);
+        } else {
+            entry._stage = CLEAN;
+        }
+        _changed = true;
+    }
+
+    /**
+     * Unstages every file.
+     */
+    void clearStage() {
+        for (String path : added().keySet()) {
+            unstage(path);
+        }
+        for (String path : removed()) {
+            unstage(path);
+        }
+    }
+
+    /**
+     * Records the ID of a working file that has just been written or
+     * hashed, along with its stat data. Nothing is recorded for a file
+     * staged for removal, or for one staged for addition with other
+     * contents, since the entry's ID is what is staged.
+     * @param path The path of the file.
+     * @param id The ID of its contents.
+     */
+    void record(String path, ObjectId id) {
+        Entry entry = _entries.get(path);
+        if (entry == null) {
+            entry = new Entry(CLEAN);
+            _entries.put(path, entry);
+        } else if (entry._stage == REMOVED
+                   || entry._stage == ADDED && !entry._id.equals(id)) {
+            return;
+        }
+        entry._id = id;
+        stat(path, entry._stat);
+        _changed = true;
+    }
+
+    /**
+     * Returns the ID of the contents of a working file, from its entry
+     * if its stat data are unchanged and not racy, and otherwise by
+     * hashing it and recording the result.
+     * @param path The path of the file, which must exist.
+     * @return The ID of its contents.
+     */
+    ObjectId hash(String path) {
+        ObjectId id = cached(path);
+        if (id == null) {
+            id = Utils.sha1FileId(new File(_work, path));
+            record(path, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of the contents of a working file if its entry
+     * can be trusted, without reading the file.
+     * @param path The path of the file.
+     * @return The ID, or null if the file must be hashed.
+     */
+    ObjectId cached(String path) {
+        Entry entry = _entries.get(path);
+        if (entry == null || entry._stage == REMOVED) {
+            return null;
+        }
+        long[] stat = new long[Entry.STAT];
+        stat(path, stat);
+        if (!Arrays.equals(stat, entry._stat)) {
+            return null;
+        }
+        if (entry._stat[Entry.MTIME] >= _written) {
+            _changed = true;
+            return null;
+        }
+        return entry._id;
+    }
+
+    /**
+     * Writes the index out if it has changed since it was read, and
+     * removes the stage directories of older Gitlets. Entries racy as
+     * of the write have their stat data cleared first.
+     * @return True if anything was written.
+     */
+    boolean write() {
+        if (!_changed) {
+            return false;
+        }
+        File index = new File(_repo, INDEX);
+        File tmp = new File(_repo, INDEX + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                long start = Files.getLastModifiedTime(tmp.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+                for (Entry entry : _entries.values()) {
+                    if (entry._stat[Entry.MTIME] >= start) {
+                        Arrays.fill(entry._stat, 0);
+                    }
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_entries.size());
+                byte[] raw = new byte[ObjectId.BYTES];
+                for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeByte(entry._stage);
+                    entry._id.copyTo(raw, 0);
+                    out.write(raw);
+                    for (long field : entry._stat) {
+                        out.writeLong(field);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), index.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            _written = Files.getLastModifiedTime(index.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String dir : LEGACY) {
+            File stage = new File(_repo, dir);
+            File[] files = stage.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+                stage.delete();
+            }
+        }
+        _changed = false;
+        return true;
+    }
+
+    /**
+     * Returns the IDs of every blob staged for addition in a
+     * repository, for gc.
+     * @param repo The .gitlet directory of the repository.
+     * @return The IDs.
+     */
+    static List<ObjectId> staged(File repo) {
+        return List.copyOf(read(repo).added().values());
+    }
+
+    /**
+     * An index.
+     * @param repo The .gitlet directory of the repository.
+     */
+    private Index(File repo) {
+        _repo = repo;
+        _work = repo.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * Reads the addStage and removeStage directories of an older
+     * Gitlet. An addStage entry holds the ID of the staged blob, or
+     * in the oldest Gitlets a full copy of the file, which is stored.
+     */
+    private void readLegacy() {
+        File addStage = new File(_repo, LEGACY[0]);
+        List<String> added = Utils.plainFilenamesIn(addStage);
+        if (added != null) {
+            for (String name : added) {
+                File staged = new File(addStage, name);
+                Entry entry = new Entry(ADDED);
+                entry._id = staged.length() == Utils.UID_LENGTH
+                        && ObjectId.isId(Utils.readContentsAsString(staged))
+                        ? ObjectId.parse(Utils.readContentsAsString(staged))
+                        : ObjectStore.writeFile(_repo, staged, null);
+                _entries.put(name, entry);
+                _changed = true;
+            }
+        }
+        List<String> removed =
+                Utils.plainFilenamesIn(new File(_repo, LEGACY[1]));
+        if (removed != null) {
+            for (String name : removed) {
+                remove(name);
+            }
+        }
+        if (new File(_repo, LEGACY[0]).isDirectory()) {
+            _changed = true;
+        }
+    }
+
+    /**
+     * Reads the stat data of a working file.
+     * @param path The path of the file.
+     * @param stat Receives its size, modification time, change time and
+     *             inode, or all zeros if it does not exist.
+     */
+    private void stat(String path, long[] stat) {
+        Path file = new File(_work, path).toPath();
+        try {
+            Map<String, Object> attrs;
+            try {
+                attrs = Files.readAttributes(file, UNIX_STAT,
+                        LinkOption.NOFOLLOW_LINKS);
+                stat[Entry.CTIME] = ((FileTime) attrs.get("ctime"))
+                    .to(TimeUnit.NANOSECONDS);
+                stat[Entry.INODE] = ((Number) attrs.get("ino")).longValue();
+                stat[Entry.SIZE] = (Long) attrs.get("size");
+                stat[Entry.MTIME] = ((FileTime) attrs.get("lastModifiedTime"))
+                    .to(TimeUnit.NANOSECONDS);
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes basic = Files.readAttributes(file,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                stat[Entry.CTIME] =
+                    basic.creationTime().to(TimeUnit.NANOSECONDS);
+                stat[Entry.INODE] = basic.fileKey() == null ? 0
+                        : basic.fileKey().hashCode();
+                stat[Entry.SIZE] = basic.size();
+                stat[Entry.MTIME] =
+                    basic.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException excp) {
+            Arrays.fill(stat, 0);
+        }
+    }
+
+    /** One path of the index. */
+    private static final class Entry {
+
+        /** Index in _stat of the size. */
+        static final int SIZE = 0;
+
+        /** Index in _stat of the modification time. */
+        static final int MTIME = 1;
+
+        /** Index in _stat of the change time. */
+        static final int CTIME = 2;
+
+        /** Index in _stat of the inode. */
+        static final int INODE = 3;
+
+        /** Length of _stat. */
+        static final int STAT = 4;
+
+        /**
+         * An entry.
+         * @param stage CLEAN, ADDED or REMOVED.
+         */
+        Entry(byte stage) {
+            _stage = stage;
+        }
+
+        /** CLEAN, ADDED or REMOVED. */
+        private byte _stage;
+
+        /** The ID of the file's contents when _stat was taken. */
+        private ObjectId _id;
+
+        /** The file's size, times and inode, or zeros if unknown. */
+        private final long[] _stat = new long[STAT];
+    }
+
+    /** Name of the index file. */
+    private static final String INDEX = "index";
+
+    /** Names of the stage directories of older Gitlets. */
+    private static final String[] LEGACY = {"addStage", "removeStage"};
+
+    /** Attributes read from the unix view for an entry. */
+    private static final String UNIX_STAT =
+        "unix:size,lastModifiedTime,ctime,ino";
+
+    /** ID recorded for files staged for removal. */
+    private static final ObjectId NONE =
+        ObjectId.fromBytes(new byte[ObjectId.BYTES], 0);
+
+    /** The .gitlet directory of the repository. */
+    private final File _repo;
+
+    /** The working directory of the repository. */
+    private final File _work;
+
+    /** The entries, by path. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+
+    /** When the index file was last written, in nanoseconds. */
+    private long _written = Long.MIN_VALUE;
+
+    /** True if the entries differ from the index file. */
+    private boolean _changed;
+}
@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the stat cache of the index.
+ *  @author Andrew Tom
+ */
+public class IndexTest {
+
+    /** Makes an empty repository. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** A file unchanged since it was recorded is not read again. */
+    @Test
+    public void trustsUnchangedFile() {
+        File f = new File(_dir, "f.txt");
+        Utils.writeContents(f, "one");
+        f.setLastModified(f.lastModified() - AGO);
+        Index index = Index.read(_repo);
+        index.record("f.txt", Utils.sha1Id("one"));
+        index.write();
+        assertEquals(Utils.sha1Id("one"),
+                     Index.read(_repo).cached("f.txt"));
+    }
+
+    /**
+     * A file recorded within the tick the index is written in, which
+     * could still be edited in that tick without its stat data
+     * changing, stays distrusted after the index is written again for
+     * another file, even once the clock has passed that tick.
+     */
+    @Test
+    public void racyEntryStaysDistrustedAcrossWrites() {
+        File f = new File(_dir, "f.txt");
+        Utils.writeContents(f, "one");
+        long tick = f.lastModified() + AGO;
+        f.setLastModified(tick);
+        Index index = Index.read(_repo);
+        index.record("f.txt", Utils.sha1Id("one"));
+        index.write();
+
+        Utils.writeContents(new File(_dir, "g.txt"), "g");
+        Index next = Index.read(_repo);
+        next.record("g.txt", Utils.sha1Id("g"));
+        next.write();
+        new File(_repo, "index").setLastModified(tick + AGO);
+
+        Index last = Index.read(_repo);
+        assertNull(last.cached("f.txt"));
+        assertEquals(Utils.sha1Id("one"), last.hash("f.txt"));
+    }
+
+    /** Milliseconds by which a time is moved clear of the clock. */
+    private static final long AGO = 60000;
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
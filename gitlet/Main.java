@@ -1,13 +1,20 @@
 package gitlet;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.List;
+import java.util.TreeMap;
+import java.util.Map;
 import java.util.HashSet;
+import java.util.TreeSet;
 import java.util.Arrays;
-import java.util.Collections;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Andrew Tom
@@ -29,13 +36,28 @@ public class Main {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
+        repository = new Repository(gitlet);
+        try {
+            switchPart1(args);
+            repository.flush();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /**
+     * First part of Switch statement.
+     * @param args The args passed into main.
+     * @throws IOException
+     */
+    static void switchPart1(String... args) throws IOException {
         switch (args[0]) {
         case "add":
-            if (args.length > 2) {
+            if (args.length < 2) {
                 System.out.println("Incorrect operands.");
                 return;
             }
-            add(args[1]);
+            add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "rm":
             if (args.length > 2) {
@@ -57,11 +79,15 @@ public class Main {
             getFullLogs();
             break;
         case "find":
-            if (args.length > 2) {
+            if (args.length == 3 && args[1].equals("--contains")) {
+                finder(args[2], true);
+                break;
+            }
+            if (args.length != 2) {
                 System.out.println("Incorrect operands.");
                 return;
             }
-            finder(args[1]);
+            finder(args[1], false);
             break;
         case "status":
             myStatus();
@@ -114,7 +140,7 @@ public class Main {
             resetter(args[1]);
             break;
         case "merge":
-            merge(args[1], null);
+            merge(args[1]);
             break;
         case "add-remote":
             addRm(args[1], args[2]);
@@ -131,11 +157,44 @@ public class Main {
         case "pull":
             puller(args[1], args[2]);
             break;
+        case "repack":
+            repacker();
+            break;
+        case "config":
+            configurer(args);
+            break;
+        case "train-dict":
+            dictTrainer();
+            break;
+        case "gc":
+            collector(args);
+            break;
+        case "migrate":
+            migrator();
+            break;
+        case "pack-refs":
+            Refs.pack(gitlet);
+            break;
+        case "reflog":
+            reflogger(args);
+            break;
+        case "watch":
+            watcher(args);
+            break;
         default:
             System.out.println("No command with that name exists.");
         }
     }
 
+    /**
+     * Returns the session of the last command run, so a test can count
+     * the files it read and wrote.
+     * @return The session, or null if no command has run.
+     */
+    static Repository session() {
+        return repository;
+    }
+
     /**
      * File var for CWD.
      */
@@ -144,14 +203,6 @@ public class Main {
      * File var for the .gitlet dir.
      */
     private static File gitlet = new File(".gitlet");
-    /**
-     * File var for the add Stage.
-     */
-    private static File addStage = new File(".gitlet/addStage");
-    /**
-     * File var for the remove Stage.
-     */
-    private static File removeStage = new File(".gitlet/removeStage");
     /**
      * File var for the storing area for blobs.
      */
@@ -161,9 +212,10 @@ public class Main {
      */
     private static File commitStorage = new File(".gitlet/commits");
     /**
-     * File var for the storing area of pointers.
+     * The session through which the command reads and changes the
+     * branches and the staging area, written out when it finishes.
      */
-    private static File headPointers = new File(".gitlet/headPointers");
+    private static Repository repository;
     /**
      * File var for the storing area of remote repo info.
      */
@@ -186,20 +238,13 @@ public class Main {
             gitlet.mkdir();
             blobStorage.mkdir();
             commitStorage.mkdir();
-            addStage.mkdir();
-            removeStage.mkdir();
             fetchedCommits.mkdir();
 
-            FatMap branchPointers = new FatMap();
-
-            Commit firstCommit = new Commit(null, "initial commit");
+            Commit firstCommit = new Commit("initial commit");
 
             firstCommit.setID();
 
-            branchPointers.put("current", "master");
-            branchPointers.put("master", firstCommit.getID());
-
-            Utils.writeObject(headPointers, branchPointers);
+            Refs.init(gitlet, "master", firstCommit.getID());
 
             Commit.writeCommit(firstCommit.getID(), firstCommit);
 
@@ -215,50 +260,44 @@ public class Main {
     }
 
     /**
-     * First thing that happens is that the filePath is
-     * converted into a file. Then, if the file
-     * exists, it is converted into bytes. These bytes are
-     * then stored using its SHA-1 hash inside the
-     * .gitlet/blobby folder.
-     * @param filePath The filePath for the file to be added.
+     * Stages files for addition. Each operand is a file, a directory
+     * standing for every file under it, or a glob pattern, and nothing
+     * is staged unless each names some file. The files the index does
+     * not vouch for are hashed together in parallel, and only those
+     * whose blobs are not already stored are read again to store them.
+     * A file that matches the current commit is unstaged instead.
+     * @param operands The files to be added.
      */
-    public static void add(String filePath) {
-        Commit curCommit = Commit.grabCurrentCommit();
-
-        File addFile = new File(filePath);
-        if (addFile.exists()) {
-
-            byte[] savedFile = Utils.readContents(addFile);
-            String hash = Utils.sha1((Object) savedFile);
-
-            List<String> removeStageList = Utils.plainFilenamesIn(removeStage);
-
-
-            if (Commit.doNotAdd(filePath, curCommit, hash)) {
-
-                List<String> addStageList = Utils.plainFilenamesIn(addStage);
-
-                if (addStageList.contains(filePath)) {
-                    File f = new File(addStage.getPath() + "/" + filePath);
-                    f.delete();
-                }
-                if (removeStageList.contains(filePath)) {
-                    File f = new File(removeStage.getPath() + "/" + filePath);
-                    f.delete();
-                }
-                return;
+    public static void add(String... operands) {
+        TreeSet<String> paths = new WorkTree(cwd).expand(operands);
+        Commit curCommit = repository.head();
+        Index index = repository.index();
+        HashMap<String, ObjectId> hashes = new HashMap<>();
+        ArrayList<String> unknown = new ArrayList<>();
+        for (String path : paths) {
+            ObjectId hash = index.cached(path);
+            if (hash == null) {
+                unknown.add(path);
+            } else {
+                hashes.put(path, hash);
             }
-
-            if (removeStageList.contains(filePath)) {
-                File f = new File(removeStage.getPath() + "/" + filePath);
-                f.delete();
+        }
+        ObjectId[] found = Status.hash(cwd, unknown, Status.threads(gitlet));
+        for (int i = 0; i < found.length; i += 1) {
+            hashes.put(unknown.get(i), found[i]);
+        }
+        for (String path : paths) {
+            ObjectId hash = hashes.get(path);
+            if (!ObjectStore.contains(gitlet, hash)) {
+                hash = ObjectStore.writeFile(gitlet, new File(cwd, path),
+                        curCommit.fileID(path));
+            }
+            repository.unstage(path);
+            if (Commit.doNotAdd(path, curCommit, hash)) {
+                repository.written(path, hash);
+            } else {
+                repository.stage(path, hash);
             }
-
-            Utils.writeContents(new File(addStage.getPath()
-                    + "/" + filePath), (Object) savedFile);
-
-        } else {
-            System.out.println("File does not exist.");
         }
     }
 
@@ -273,37 +312,32 @@ public class Main {
      * @param filePath The file that is trying to be removed.
      */
     public static void remove(String filePath) throws IOException {
-        File checkStage = new File(addStage.getPath() + "/" + filePath);
-        if (checkStage.exists()) {
-            checkStage.delete();
+        if (repository.added().containsKey(filePath)) {
+            repository.unstage(filePath);
             return;
         }
 
-        Commit curCommit = Commit.grabCurrentCommit();
-        if (curCommit.getFileNameToHash().containsKey(filePath)) {
+        Commit curCommit = repository.head();
+        if (curCommit.fileID(filePath) != null) {
             File deleteCWDFile = new File(cwd.getPath() + "/" + filePath);
             if (deleteCWDFile.exists()) {
                 deleteCWDFile.delete();
             }
 
-            File f = new File(removeStage.getPath() + "/" + filePath);
-            f.createNewFile();
+            repository.stageRemoval(filePath);
         } else {
             System.out.println("No reason to remove the file.");
         }
     }
 
     /**
-     * First, all files in the staging area are listed. Then,
-     * each file in the staging area is added to the commit
-     * HashMap and written into the blobStorage folder. Then, we
-     * iterate through the tracked files in the current
-     * commit. If any of said files have NOT been placed into this
-     * new commit already (essentially being overridden),
-     * then these new files will be added to the new commit. After
-     * all this is done, the entire staging area is cleared.
-     * Then, the current branches pointer is updated in the HashMap,
-     * and it is rewritten for updating.
+     * First, the staging area is emptied into a list of changed
+     * files. Then, those changes are applied to the current commit's
+     * tree: only the directories on their paths are rebuilt and
+     * stored, and every other directory keeps its tree, so the cost
+     * does not depend on how many files are tracked.
+     * Then, the commit is stored and the current branch is moved to
+     * it, provided no other command has moved it meanwhile.
      * @param message The message to go with this new commit.
      */
     public static void makeCommit(String message) {
@@ -311,31 +345,24 @@ public class Main {
             System.out.println("Please enter a commit message.");
         }
 
-        if (addStage.list().length == 0 && removeStage.list().length == 0) {
+        if (!repository.hasStagedChanges()) {
             System.out.println("No changes added to the commit.");
             return;
         }
 
-        Commit parent = Commit.grabCurrentCommit();
+        Commit parent = repository.head();
         Commit newCommit;
 
-        newCommit = new Commit(parent.getID(), message);
-
-        Commit.addStagingFilesToCommit(newCommit);
+        newCommit = new Commit(message, parent.getID());
 
-        Commit.addParentFilesToCommit(newCommit, parent);
+        newCommit.setTree(Tree.update(gitlet, parent.getTree(),
+                repository.takeStagedChanges()));
 
         newCommit.setID();
 
-        String branchName = Commit.grabCurrentBranch();
-        Commit.updatePointers(branchName, newCommit.getID());
-
-        newCommit.setBranch(branchName);
-
-        parent.getBabiesBranch().add(newCommit.getBranch());
-        Commit.writeCommit(parent.getID(), parent);
-
         Commit.writeCommit(newCommit.getID(), newCommit);
+        CommitGraph.open(gitlet).add(newCommit);
+        repository.moveBranch(newCommit.getID(), "commit: " + message);
     }
 
     /**
@@ -343,42 +370,38 @@ public class Main {
      * @param message The message to go with this new commit.
      * @param otherParent The second parent to be tracked.
      */
-    public static void makeCommit(String message, String otherParent) {
-        Commit parent = Commit.grabCurrentCommit();
-        Commit other = Commit.retrieve(otherParent);
+    public static void makeCommit(String message, ObjectId otherParent) {
+        Commit parent = repository.head();
         Commit newCommit;
 
-        newCommit = new Commit(parent.getID() + " " + otherParent, message);
+        newCommit = new Commit(message, parent.getID(), otherParent);
 
-        Commit.addStagingFilesToCommit(newCommit);
-        Commit.addParentFilesToCommit(newCommit, parent);
+        newCommit.setTree(Tree.update(gitlet, parent.getTree(),
+                repository.takeStagedChanges()));
 
         newCommit.setID();
 
-        String branchName = Commit.grabCurrentBranch();
-        Commit.updatePointers(branchName, newCommit.getID());
-
-        newCommit.setBranch(branchName);
-
-        parent.getBabiesBranch().add(newCommit.getBranch());
-        other.getBabiesBranch().add(newCommit.getBranch());
-        Commit.writeCommit(parent.getID(), parent);
-        Commit.writeCommit(other.getID(), other);
-
         Commit.writeCommit(newCommit.getID(), newCommit);
+        CommitGraph.open(gitlet).add(newCommit);
+        repository.moveBranch(newCommit.getID(),
+                "commit (merge): " + message);
     }
 
     /**
-     * The method for printing out the log of commits.
+     * The method for printing out the log of commits. The first-parent
+     * chain is followed through the commit graph, so each commit is
+     * read only for its date and message.
      */
     public static void getLog() {
-        for (Commit cur = Commit.grabCurrentCommit();;
-             cur = Commit.grabFirstParent(cur)) {
+        CommitGraph graph = CommitGraph.open(gitlet);
+        int k = graph.index(repository.headId());
+        for (;; k = graph.parent(k, 0)) {
+            Commit cur = Commit.retrieve(graph.id(k));
             System.out.println("===");
             System.out.println("commit " + cur.getID());
             System.out.println("Date: " + cur.getMyDate());
             System.out.println(cur.getMsg());
-            if (cur.getParents().get(0) == null) {
+            if (graph.parent(k, 0) == CommitGraph.NONE) {
                 break;
             }
             System.out.println();
@@ -386,35 +409,35 @@ public class Main {
     }
 
     /**
-     * The method for printing global logs.
+     * The method for printing global logs, from the message index
+     * rather than from the commits themselves.
      */
     public static void getFullLogs() {
-        String[] commits = commitStorage.list();
-        for (String id : commits) {
-            Commit cur = Commit.retrieve(id);
+        MessageIndex index = MessageIndex.open(gitlet);
+        for (int r = index.first(); r < index.end(); r = index.next(r)) {
             System.out.println("===");
-            System.out.println("commit " + id);
-            System.out.println("Date: " + cur.getMyDate());
-            System.out.println(cur.getMsg());
+            System.out.println("commit " + index.id(r));
+            System.out.println("Date: " + index.date(r));
+            System.out.println(index.message(r));
             System.out.println();
         }
     }
 
     /**
-     * The method for finding a commit with a specific msg.
+     * The method for finding a commit with a specific msg, or with
+     * a msg containing some text, through the message index.
      * @param message The message to be searched for.
+     * @param contains True to find messages containing MESSAGE rather
+     *                 than equal to it.
      */
-    public static void finder(String message) {
-        String[] commits = commitStorage.list();
-        boolean foundOne = false;
-        for (String id : commits) {
-            Commit cur = Commit.retrieve(id);
-            if (cur.getMsg().equals(message)) {
-                System.out.println(id);
-                foundOne = true;
-            }
+    public static void finder(String message, boolean contains) {
+        MessageIndex index = MessageIndex.open(gitlet);
+        ArrayList<ObjectId> found = contains
+                ? index.findContaining(message) : index.find(message);
+        for (ObjectId id : found) {
+            System.out.println(id);
         }
-        if (!foundOne) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -423,63 +446,35 @@ public class Main {
      * The method that displays the current status.
      */
     public static void myStatus() {
-        ArrayList<String> branchArr = Commit.grabAllBranches();
+        String current = repository.branch();
         System.out.println("=== Branches ===");
-        System.out.println("*" + branchArr.get(0));
-        branchArr.remove(0); Collections.sort(branchArr);
-        for (int x = 0; x < branchArr.size(); x++) {
-            System.out.println(branchArr.get(x));
+        System.out.println("*" + current);
+        for (String branch : repository.branches().keySet()) {
+            if (!branch.equals(current)) {
+                System.out.println(branch);
+            }
         }
         System.out.println(); System.out.println("=== Staged Files ===");
-        List<String> addLst = Utils.plainFilenamesIn(addStage);
-        for (String file : addLst) {
+        Map<String, ObjectId> added = repository.added();
+        for (String file : added.keySet()) {
             System.out.println(file);
         }
         System.out.println(); System.out.println("=== Removed Files ===");
-        List<String> removeLst = Utils.plainFilenamesIn(removeStage);
+        Set<String> removeLst = repository.removed();
         for (String file : removeLst) {
             System.out.println(file);
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-        List<String> immutableList = Utils.plainFilenamesIn(cwd);
-        ArrayList<String> cwdArr = new ArrayList<>(immutableList);
-        Commit currentCommit = Commit.grabCurrentCommit();
-        HashMap<String, String> nameHashMap = currentCommit.getFileNameToHash();
-        Set<String> trackedFiles = nameHashMap.keySet();
-        ArrayList<String> trackedList = new ArrayList<>(trackedFiles);
-        trackedList.addAll(addLst); Collections.sort(trackedList);
-        for (String file : trackedList) {
-            if (cwdArr.contains(file)) {
-                if (!removeLst.contains(file)) {
-                    byte[] fileByte = Utils.readContents(new File(file));
-                    String fileHash = Utils.sha1((Object) fileByte);
-                    if (addLst.contains(file)) {
-                        byte[] addByte = Utils.readContents(new
-                                File(addStage.getPath() + "/" + file));
-                        String addHash = Utils.sha1(addByte);
-                        if (!addHash.equals(fileHash)) {
-                            System.out.println(file + " (modified)");
-                        }
-                    } else {
-                        if (!fileHash.equals(nameHashMap.get(file))) {
-                            System.out.println(file + " (modified)");
-                        }
-                    }
-                }
-                if (removeLst.contains(file)) {
-                    continue;
-                }
-                cwdArr.remove(file);
-            } else if (!removeLst.contains(file)) {
-                System.out.println(file + " (deleted)");
-            }
+        Status status = new Status(repository, cwd);
+        for (Map.Entry<String, String> change
+                 : status.changes().entrySet()) {
+            System.out.println(change.getKey() + " (" + change.getValue()
+                    + ")");
         }
         System.out.println(); System.out.println("=== Untracked Files ===");
-        for (String untracked : cwdArr) {
-            if (!new File(untracked).isDirectory()) {
-                System.out.println(untracked);
-            }
+        for (String untracked : status.untracked()) {
+            System.out.println(untracked);
         }
     }
 
@@ -488,8 +483,7 @@ public class Main {
      * @param fileName The String of the file to be checked out.
      */
     public static void checkoutCase1(String fileName) {
-        Commit current = Commit.grabCurrentCommit();
-        checkoutCase2(current.getID(), fileName);
+        checkoutCase2(repository.headId().toString(), fileName);
     }
 
     /**
@@ -504,22 +498,16 @@ public class Main {
             return;
         }
 
-        HashMap<String, String> nameToBlob =
-                specifiedCommit.getFileNameToHash();
+        ObjectId blobHash = specifiedCommit.fileID(fileName);
 
-        String blobHash = "";
-
-        if (!nameToBlob.containsKey(fileName)) {
+        if (blobHash == null) {
             System.out.println("File does not exist in that commit.");
             return;
-        } else {
-            blobHash = nameToBlob.get(fileName);
         }
 
-        byte[] blobByte = Commit.retrieveBlob(blobHash);
-
         File blobLocation = new File(cwd.getPath() + "/" + fileName);
-        Utils.writeContents(blobLocation, blobByte);
+        ObjectStore.checkout(gitlet, blobHash, blobLocation);
+        repository.written(fileName, blobHash);
     }
 
     /**
@@ -527,87 +515,139 @@ public class Main {
      * @param branchName String of the branch to checkout.
      */
     public static void checkoutCase3(String branchName) {
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-
-        String currentBranch = pointerMap.get("current");
-
-        if (branchName.equals(currentBranch)) {
+        if (branchName.equals(repository.branch())) {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        String currentHeadID = pointerMap.get(currentBranch);
-        Commit currentHead = Commit.retrieve(currentHeadID);
-        String newID = pointerMap.get(branchName);
+        Commit currentHead = repository.head();
+        ObjectId newID = repository.branchId(branchName);
         if (newID == null) {
             System.out.println("No such branch exists.");
             return;
         }
         Commit newHead = Commit.retrieve(newID);
-        List<String> untrackedFilesImmutable = Utils.plainFilenamesIn(cwd);
-        ArrayList<String> untrackedFiles =
-                new ArrayList<>(untrackedFilesImmutable);
-        for (int x = 0; x < untrackedFiles.size(); x++) {
-            String file = untrackedFiles.get(x);
-            if (currentHead.getFileNameToHash().containsKey(file)) {
-                untrackedFiles.remove(file);
-                x--;
-            }
-        }
-        for (String untracked : untrackedFiles) {
-            if (newHead.getFileNameToHash().keySet().contains(untracked)) {
-                System.out.println("There is an untracked file in "
-                        + "the way; delete it, or add and commit it first.");
-                return;
-            }
+        if (untrackedInTheWay(currentHead.getFileNameToHash(),
+                newHead.getFileNameToHash())) {
+            return;
         }
-        for (String trackedFile : newHead.getFileNameToHash().keySet()) {
-            String trackedFileID = newHead.getFileNameToHash().get(trackedFile);
-            File trackedCWD = new File(cwd.getPath() + "/" + trackedFile);
+        switchFiles(currentHead, newHead);
 
-            File trackedStorage = new
-                    File(blobStorage.getPath() + "/" + trackedFileID);
+        repository.clearStage();
 
-            byte[] trackedFileByte = Utils.readContents(trackedStorage);
+        repository.switchBranch(branchName);
+    }
 
-            Utils.writeContents(trackedCWD, (Object) trackedFileByte);
+    /**
+     * Replaces the files of one commit in the working tree with those
+     * of another. The two are compared by tree, so only files whose
+     * blob IDs differ are written or deleted, and directories left
+     * empty are removed. A file both commits share is rewritten only if
+     * its working copy has changed, which the index usually tells from
+     * its stat data; the rest are hashed in parallel. Files left alone
+     * keep their modification times. With "checkout.report" on, the
+     * numbers of files written, deleted and kept are printed.
+     * @param current The commit whose files are in the working tree.
+     * @param target The commit to check out.
+     */
+    private static void switchFiles(Commit current, Commit target) {
+        TreeMap<String, ObjectId[]> changes =
+            Tree.diff(gitlet, current.getTree(), target.getTree());
+        int written = 0, deleted = 0;
+        for (Map.Entry<String, ObjectId[]> change : changes.entrySet()) {
+            String name = change.getKey();
+            ObjectId id = change.getValue()[1];
+            if (id == null) {
+                deleteWorkingFile(name);
+                deleted += 1;
+            } else {
+                ObjectStore.checkout(gitlet, id, new File(cwd, name));
+                repository.written(name, id);
+                written += 1;
+            }
         }
-
-
-        for (String oldTracked : currentHead.getFileNameToHash().keySet()) {
-            if (!newHead.getFileNameToHash().keySet().contains(oldTracked)) {
-                File deleteOld = new File(cwd + "/" + oldTracked);
-                deleteOld.delete();
+        Index index = repository.index();
+        ArrayList<String> unknown = new ArrayList<>();
+        ArrayList<String> stale = new ArrayList<>();
+        Map<String, ObjectId> files = target.getFileNameToHash();
+        for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+            String name = file.getKey();
+            if (changes.containsKey(name)) {
+                continue;
+            }
+            ObjectId id = index.cached(name);
+            if (id == null && new File(cwd, name).isFile()) {
+                unknown.add(name);
+            } else if (!file.getValue().equals(id)) {
+                stale.add(name);
             }
         }
+        ObjectId[] found = Status.hash(cwd, unknown, Status.threads(gitlet));
+        for (int i = 0; i < found.length; i += 1) {
+            String name = unknown.get(i);
+            if (found[i].equals(files.get(name))) {
+                repository.written(name, found[i]);
+            } else {
+                stale.add(name);
+            }
+        }
+        for (String name : stale) {
+            ObjectStore.checkout(gitlet, files.get(name), new File(cwd, name));
+            repository.written(name, files.get(name));
+        }
+        written += stale.size();
+        if (Config.isOn(gitlet, "checkout.report")) {
+            System.out.printf("%d files written, %d deleted, %d kept.%n",
+                    written, deleted, files.size() - written);
+        }
+    }
 
-        Commit.clearStage();
-
-        pointerMap.put("current", branchName);
+    /**
+     * Deletes a working file, and then each directory above it that
+     * that leaves empty.
+     * @param name The path of the file.
+     */
+    private static void deleteWorkingFile(String name) {
+        File file = new File(cwd, name);
+        file.delete();
+        for (File dir = file.getParentFile(); !dir.equals(cwd)
+                 && dir.delete(); dir = dir.getParentFile()) {
+            continue;
+        }
+    }
 
-        Utils.writeObject(headPointers, pointerMap);
+    /**
+     * Reports whether a file of the working tree that the current commit
+     * does not track would be overwritten by one of another commit, and
+     * if so says so. Ignored files are not looked for.
+     * @param current The files of the current commit.
+     * @param target The files of the commit to be checked out.
+     * @return True if there is such a file.
+     */
+    private static boolean untrackedInTheWay(Map<String, ObjectId> current,
+                                             Map<String, ObjectId> target) {
+        for (String file : new WorkTree(cwd).list()) {
+            if (!current.containsKey(file) && target.containsKey(file)) {
+                System.out.println("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Grabs the pointer HashMap from storage, and inserts a new branch inside.
-     * Also will create a split point serialized file for tracking purposes
-     * with merge.
-     * This split point file is simply a String containing the ID of the
-     * commit where a split happened.
+     * Creates a new branch at the head of the current one, writing only
+     * the new branch's ref.
      * @param name The name of the branch to create.
      */
     public static void brancher(String name) {
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-
-        if (pointerMap.containsKey(name)) {
+        if (repository.branchId(name) != null) {
             System.out.println("A branch with that name already exists.");
             return;
         }
 
-        String currentBranch = pointerMap.get("current");
-        String currentHeadID = pointerMap.get(currentBranch);
-        pointerMap.put(name, currentHeadID);
-
-        Utils.writeObject(headPointers, pointerMap);
+        repository.updateBranch(name, repository.headId(),
+                "branch: Created from " + repository.branch());
 
     }
 
@@ -616,15 +656,13 @@ public class Main {
      * @param name String of the branch to remove.
      */
     public static void rmBrancher(String name) {
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
-        if (pointerMap.get("current").equals(name)) {
+        if (repository.branch().equals(name)) {
             System.out.println("Cannot remove the current branch.");
-        } else if (!pointerMap.containsKey(name)) {
+        } else if (repository.branchId(name) == null) {
             System.out.println("A branch with that name does not exist.");
+        } else {
+            repository.updateBranch(name, null, "rm-branch");
         }
-
-        pointerMap.remove(name);
-        Utils.writeObject(headPointers, pointerMap);
     }
 
     /**
@@ -636,58 +674,21 @@ public class Main {
         if (newHead == null) {
             return;
         }
-        HashMap<String, String> nameToBlob = newHead.getFileNameToHash();
+        Map<String, ObjectId> nameToBlob = newHead.getFileNameToHash();
 
-        Commit currentCommit = Commit.grabCurrentCommit();
-        HashMap<String, String> currentTracked =
+        Commit currentCommit = repository.head();
+        Map<String, ObjectId> currentTracked =
                 currentCommit.getFileNameToHash();
 
-        List<String> untrackedFilesImmutable = Utils.plainFilenamesIn(cwd);
-        ArrayList<String> untrackedFiles =
-                new ArrayList<>(untrackedFilesImmutable);
-        for (int x = 0; x < untrackedFiles.size(); x++) {
-
-            String file = untrackedFiles.get(x);
-
-            if (currentCommit.getFileNameToHash().containsKey(file)) {
-                untrackedFiles.remove(file);
-                x--;
-            }
-        }
-        for (String untracked : untrackedFiles) {
-            if (newHead.getFileNameToHash().keySet().contains(untracked)) {
-                System.out.println("There is an untracked file in the way; "
-                        +
-                        "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-
-        for (String blob : nameToBlob.keySet()) {
-            File storedBlob = new
-                    File(blobStorage.getPath() + "/" + nameToBlob.get(blob));
-            File blobLocation = new File(cwd.getPath() + "/" + blob);
-
-            byte[] blobByte = Utils.readContents(storedBlob);
-
-            Utils.writeContents(blobLocation, blobByte);
-        }
-
-        for (String blob : currentTracked.keySet()) {
-            if (!newHead.getFileNameToHash().containsKey(blob)) {
-                File delete = new File(cwd.getPath() + "/" + blob);
-                delete.delete();
-            }
+        if (untrackedInTheWay(currentTracked, nameToBlob)) {
+            return;
         }
 
-        FatMap pointerMap = Utils.readObject(headPointers, FatMap.class);
+        switchFiles(currentCommit, newHead);
 
-        String currentBranch = pointerMap.get("current");
-        pointerMap.put(currentBranch, id);
-
-        Utils.writeObject(headPointers, pointerMap);
-        Commit.clearStage();
+        repository.moveBranch(newHead.getID(),
+                "reset: moving to " + newHead.getID());
+        repository.clearStage();
     }
 
     /**
@@ -699,11 +700,11 @@ public class Main {
      */
     public static boolean mergeErr(String branchName,
                                      Commit otherBranchCommit) {
-        if (addStage.list().length > 0 || removeStage.list().length > 0) {
+        if (repository.hasStagedChanges()) {
             System.out.println("You have uncommitted changes.");
             return true;
         }
-        if (branchName.equals(Commit.grabCurrentBranch())) {
+        if (branchName.equals(repository.branch())) {
             System.out.println("Cannot merge a branch with itself.");
             return true;
         }
@@ -711,143 +712,80 @@ public class Main {
     }
 
     /**
-     * Helper for merge to find the splitPoint.
-     * @param givenSplit If not null, this is the splitPoint.
+     * Helper for merge to find the splitPoint: the latest common
+     * ancestor of the two branches, found through the commit graph.
+     * If it is either branch's head there is nothing to merge, and the
+     * current branch is fast-forwarded or left alone.
      * @param currentBranchCommit The commit of the current Branch.
      * @param otherBranchCommit The commit of the other Branch.
      * @param branchName The name of the branch being merged into.
-     * @return The splitPoint commit.
+     * @return The splitPoint commit, or null if there is nothing to
+     * merge.
      */
     public static Commit
-        splitPointHelper(Commit givenSplit, Commit currentBranchCommit,
+        splitPointHelper(Commit currentBranchCommit,
         Commit otherBranchCommit, String branchName) {
-        Commit splitPoint = null;
-        if (givenSplit != null) {
-            return givenSplit;
-        }
-        Commit cur = currentBranchCommit;
-        ArrayList<String> bothBranches = new ArrayList<>();
-        bothBranches.add(currentBranchCommit.getBranch());
-        bothBranches.add(branchName);
-        while (true) {
-            ArrayList<String> babies = cur.getBabiesBranch();
-            if (babies.size() >= 2) {
-                boolean commitContainedBabies = true;
-                for (String branch : bothBranches) {
-                    if (!babies.contains(branch)) {
-                        commitContainedBabies = false;
-                    }
-                }
-                if (commitContainedBabies) {
-                    splitPoint = cur; break;
-                } else {
-                    Commit c = Commit.grabFirstParent(otherBranchCommit);
-                    while (true) {
-                        if (c.getID().equals(cur.getID())) {
-                            splitPoint = cur;
-                        }
-                        if (c.getParents().get(0) == null) {
-                            break;
-                        }
-                        c = Commit.grabFirstParent(c);
-                    }
-                }
-            }
-            ArrayList<String> parents = cur.getParents();
-            if (parents.size() == 2) {
-                String secondParentID = parents.get(1);
-                Commit checkSecondParent = Commit.retrieve(secondParentID);
-                babies = checkSecondParent.getBabiesBranch();
-                boolean commitContainedBabies = true;
-                for (String branch : bothBranches) {
-                    if (!babies.contains(branch)) {
-                        commitContainedBabies = false;
-                    }
-                }
-                if (commitContainedBabies) {
-                    splitPoint = checkSecondParent; break;
-                }
-            }
-            if (parents.get(0) == null) {
-                break;
-            }
-            cur = Commit.retrieve(parents.get(0));
+        CommitGraph graph = CommitGraph.open(gitlet);
+        int current = graph.index(currentBranchCommit.getID());
+        int other = graph.index(otherBranchCommit.getID());
+        int split = graph.mergeBase(current, other);
+        if (split == other) {
+            System.out.println("Given branch is an "
+                    + "ancestor of the current branch.");
+            return null;
         }
-        if (splitPointHelper2(splitPoint, currentBranchCommit, branchName)) {
+        if (split == current) {
+            System.out.println("Current branch fast-forwarded.");
+            checkoutCase3(branchName);
             return null;
         }
-        return splitPoint;
-    }
-
-    /**
-     *
-     * @param splitPoint The splitPoint that is checked.
-     * @param currentBranchCommit The current branch Commit.
-     * @param branchName The name of the branch to be examined.
-     * @return True or false on whether to return null
-     * for splitPointHelper.
-     */
-    public static boolean splitPointHelper2(Commit splitPoint,
-                                 Commit currentBranchCommit,
-                                 String branchName) {
-        if (splitPoint == null) {
-            if (currentBranchCommit.getBranch().equals(branchName)) {
-                System.out.println("Current branch fast-forwarded.");
-                checkoutCase3(branchName);
-            } else {
-                System.out.println("Given branch is an "
-                        + "ancestor of the current branch.");
-            }
-            return true;
+        if (split == CommitGraph.NONE) {
+            System.out.println("Given branch shares no history "
+                    + "with the current branch.");
+            return null;
         }
-        return false;
+        return Commit.retrieve(graph.id(split));
     }
 
     /**
      * The method that merges two branches together.
      * Creates a new commit out of the two branches.
      * @param branchName The branch to merge into.
-     * @param givenSplit Null if no split Point is predetermined.
-     *                   Otherwise, we can use this for our split.
      * @throws IOException
      */
-    public static void merge(String branchName,
-                             Commit givenSplit) throws IOException {
-        Commit currentBranchCommit = Commit.grabCurrentCommit();
-        Commit otherBranchCommit = Commit.grabBranchCommit(branchName);
+    public static void merge(String branchName) throws IOException {
+        Commit currentBranchCommit = repository.head();
+        ObjectId otherID = repository.branchId(branchName);
+        if (otherID == null) {
+            System.out.println("A branch with that name does not exist.");
+        }
+        Commit otherBranchCommit =
+                otherID == null ? null : Commit.retrieve(otherID);
         if (mergeErr(branchName, otherBranchCommit)) {
             return;
         }
 
 
 
-        Commit splitPoint = splitPointHelper(givenSplit,
-                currentBranchCommit, otherBranchCommit, branchName);
+        Commit splitPoint = splitPointHelper(currentBranchCommit,
+                otherBranchCommit, branchName);
         if (splitPoint == null) {
             return;
         }
 
-        HashMap<String, String> splitNameToID =
-                splitPoint.getFileNameToHash();
-        HashMap<String, String> curNameToID =
+        Map<String, ObjectId> curNameToID =
                 currentBranchCommit.getFileNameToHash();
-        HashMap<String, String> otherNameToID =
+        Map<String, ObjectId> otherNameToID =
                 otherBranchCommit.getFileNameToHash();
-        ArrayList<String> curFiles = new ArrayList<>(curNameToID.keySet());
-        ArrayList<String> otherFiles = new ArrayList<>(otherNameToID.keySet());
-        ArrayList<String> untrackedFiles = new
-                ArrayList<>(Arrays.asList(cwd.list()));
-        for (String file : curFiles) {
-            untrackedFiles.remove(file);
-        }
-        for (String file : otherNameToID.keySet()) {
-            if (untrackedFiles.contains(file)) {
-                System.out.println("There is an untracked file "
-                        + "in the way; delete it, or add and commit it first.");
-                return;
-            }
+        if (untrackedInTheWay(curNameToID, otherNameToID)) {
+            return;
         }
 
+        HashMap<String, ObjectId> splitNameToID = new HashMap<>();
+        ArrayList<String> curFiles = new ArrayList<>();
+        ArrayList<String> otherFiles = new ArrayList<>();
+        changedSince(splitPoint, currentBranchCommit, splitNameToID, curFiles);
+        changedSince(splitPoint, otherBranchCommit, splitNameToID, otherFiles);
         mergeFor(splitNameToID, curNameToID, otherNameToID,
                 curFiles, otherFiles);
         mergeHelperEnding(branchName, curFiles,
@@ -856,28 +794,53 @@ public class Main {
     }
 
     /**
-     * The for loop that handles all the actual merging. Enforces all
+     * Collects what a branch changed since the split point, by
+     * comparing their trees, so that directories the branch did not
+     * touch are skipped. Files changed on neither branch need no
+     * merging, and are left out.
+     * @param splitPoint The split point.
+     * @param head The head of the branch.
+     * @param splitNameToID Receives the split point's version of each
+     *                      file the branch changed or removed.
+     * @param added Receives each file the branch added.
+     */
+    private static void changedSince(Commit splitPoint, Commit head,
+                                     HashMap<String, ObjectId> splitNameToID,
+                                     ArrayList<String> added) {
+        TreeMap<String, ObjectId[]> changes = Tree.diff(gitlet,
+                splitPoint.getTree(), head.getTree());
+        for (String file : changes.keySet()) {
+            ObjectId original = changes.get(file)[0];
+            if (original == null) {
+                added.add(file);
+            } else {
+                splitNameToID.put(file, original);
+            }
+        }
+    }
+
+    /**
+     * The for loop that handles all the actual merging, over the files
+     * that either branch changed since the split point. Enforces all
      * rules, and creates any merge conflict files. Will print out
-     * any kind of merge conflict message as well.
+     * any kind of merge conflict message as well. Files are compared
+     * by blob ID, which is the SHA-1 hash of their contents, so no
+     * blob is read unless it has to be written out.
      * @param splitNameToID The splitPoint id.
-     * @param curNameToID The HashMap for current fileNames to IDs.
-     * @param otherNameToID The HashMap for other fileNames to IDs.
+     * @param curNameToID The Map for current fileNames to IDs.
+     * @param otherNameToID The Map for other fileNames to IDs.
      * @param curFiles The current file ArrayList.
      * @param otherFiles The other file ArrayList.
      * @throws IOException
      */
-    public static void mergeFor(HashMap<String, String> splitNameToID,
-                                HashMap<String, String> curNameToID,
-                                HashMap<String, String> otherNameToID,
+    public static void mergeFor(HashMap<String, ObjectId> splitNameToID,
+                                Map<String, ObjectId> curNameToID,
+                                Map<String, ObjectId> otherNameToID,
                                 ArrayList<String> curFiles,
                                 ArrayList<String> otherFiles)
             throws IOException {
         for (String fileCheck : splitNameToID.keySet()) {
-            String originalID = splitNameToID.get(fileCheck);
-            File locationOriginalFile = new
-                    File(blobStorage.getPath() + "/" + originalID);
-            byte[] originalByte = Utils.readContents(locationOriginalFile);
-            String originalSHA = Utils.sha1(originalByte);
+            ObjectId originalSHA = splitNameToID.get(fileCheck);
             if (curNameToID.containsKey(fileCheck)
                     && !otherNameToID.containsKey(fileCheck)) {
 
@@ -890,39 +853,15 @@ public class Main {
 
             } else if (curNameToID.containsKey(fileCheck)
                     && otherNameToID.containsKey(fileCheck)) {
-                String currentID = curNameToID.get(fileCheck);
-                File locationCurFile = new
-                        File(blobStorage.getPath() + "/" + currentID);
-                byte[] curByte = Utils.readContents(locationCurFile);
-                String curSHA = Utils.sha1((Object) curByte);
-                String otherID = otherNameToID.get(fileCheck);
-                File locationOtherFile = new
-                        File(blobStorage.getPath() + "/" + otherID);
-                byte[] otherByte = Utils.readContents(locationOtherFile);
-                String otherSHA = Utils.sha1((Object) otherByte);
+                ObjectId curSHA = curNameToID.get(fileCheck);
+                ObjectId otherSHA = otherNameToID.get(fileCheck);
                 if (originalSHA.equals(curSHA)
                         && !originalSHA.equals(otherSHA)) {
-                    File writeFile = new File(fileCheck);
-                    File stageToAdd = new
-                            File(addStage.getPath() + "/" + fileCheck);
-                    Utils.writeContents(writeFile, (Object) otherByte);
-                    Utils.writeContents(stageToAdd, (Object) otherByte);
+                    takeOther(fileCheck, otherSHA);
                 } else if (!originalSHA.equals(curSHA)
                         && !originalSHA.equals(otherSHA)
                         && !curSHA.equals(otherSHA)) {
-                    File writeFile = new File(fileCheck);
-                    File stageAdd = new
-                            File(addStage.getPath() + "/" + fileCheck);
-                    String contents = "<<<<<<< HEAD\n";
-                    String curContents =
-                            Utils.readContentsAsString(locationCurFile);
-                    String otherContents =
-                            Utils.readContentsAsString(locationOtherFile);
-                    contents += curContents
-                            + "=======\n" + otherContents + ">>>>>>>\n";
-                    Utils.writeContents(writeFile, contents);
-                    Utils.writeContents(stageAdd, contents);
-                    System.out.println("Encountered a merge conflict.");
+                    conflict(fileCheck, curSHA, otherSHA);
                 }
             }
             curFiles.remove(fileCheck);
@@ -935,36 +874,21 @@ public class Main {
      * This is the case in which the current Commit contains
      * the file we are checking.
      * @param fileCheck The name of the File being checked.
-     * @param curNameToID The HashMap for current fileNames to IDs.
+     * @param curNameToID The Map for current fileNames to IDs.
      * @param originalSHA The original Hash SHA-1 ID.
      * @throws IOException
      */
     public static void firstIfCase(String fileCheck,
-                                   HashMap<String, String> curNameToID,
-                                   String originalSHA)
+                                   Map<String, ObjectId> curNameToID,
+                                   ObjectId originalSHA)
             throws IOException {
-        String currentID = curNameToID.get(fileCheck);
-        File locationCurFile = new
-                File(blobStorage.getPath() + "/" + currentID);
-        byte[] curByte = Utils.readContents(locationCurFile);
-        String curSHA = Utils.sha1(curByte);
+        ObjectId curSHA = curNameToID.get(fileCheck);
         if (curSHA.equals(originalSHA)) {
             File deleteCWD = new File(fileCheck);
-            File locationUntrack = new
-                    File(removeStage.getPath() + "/" + fileCheck);
             deleteCWD.delete();
-            locationUntrack.createNewFile();
+            repository.stageRemoval(fileCheck);
         } else {
-            File writeFile = new File(fileCheck);
-            File stageAdd = new
-                    File(addStage.getPath() + "/" + fileCheck);
-            String contents = "<<<<<<< HEAD\n";
-            String curContents =
-                    Utils.readContentsAsString(locationCurFile);
-            contents += curContents + "=======\n" + ">>>>>>>\n";
-            Utils.writeContents(writeFile, contents);
-            Utils.writeContents(stageAdd, contents);
-            System.out.println("Encountered a merge conflict.");
+            conflict(fileCheck, curSHA, null);
         }
     }
 
@@ -973,46 +897,80 @@ public class Main {
      * This is the case in which the current Commit does not
      * contain the file we are checking.
      * @param fileCheck The file we are currently checking.
-     * @param otherNameToID The HashMap of other fileNames to IDs.
+     * @param otherNameToID The Map of other fileNames to IDs.
      * @param originalSHA The original SHA-1 Hash ID.
      */
     public static void secondIfCase(String fileCheck,
-                                    HashMap<String, String> otherNameToID,
-                                    String originalSHA) {
-        String otherID = otherNameToID.get(fileCheck);
-        File locationOtherFile = new
-                File(blobStorage.getPath() + "/" + otherID);
-        byte[] otherByte = Utils.readContents(locationOtherFile);
-        String otherSHA = Utils.sha1((Object) otherByte);
+                                    Map<String, ObjectId> otherNameToID,
+                                    ObjectId originalSHA) {
+        ObjectId otherSHA = otherNameToID.get(fileCheck);
         if (!otherSHA.equals(originalSHA)) {
-            File writeFile = new File(fileCheck);
-            File stageAdd = new
-                    File(addStage.getPath() + "/" + fileCheck);
-            String contents = "<<<<<<< HEAD\n";
-            contents += "=======\n" + ">>>>>>>\n";
-            Utils.writeContents(writeFile, contents);
-            Utils.writeContents(stageAdd, contents);
-            System.out.println("Encountered a merge conflict.");
+            conflict(fileCheck, null, null);
         }
     }
 
+    /**
+     * Checks out the other branch's version of a file and stages it.
+     * @param fileCheck The name of the file.
+     * @param otherID The ID of the other branch's blob.
+     */
+    public static void takeOther(String fileCheck, ObjectId otherID) {
+        ObjectStore.checkout(gitlet, otherID, new File(fileCheck));
+        repository.stage(fileCheck, otherID);
+    }
+
+    /**
+     * Writes a merge conflict file, streaming both versions into it,
+     * stages it, and reports the conflict.
+     * @param fileCheck The name of the conflicted file.
+     * @param currentID The ID of the current version, or null if the
+     *                  current branch has no version.
+     * @param otherID The ID of the other version, or null if the other
+     *                branch has no version.
+     */
+    public static void conflict(String fileCheck, ObjectId currentID,
+                                ObjectId otherID) {
+        File writeFile = new File(fileCheck);
+        writeFile.delete();
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(writeFile.toPath()))) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            if (currentID != null) {
+                try (InputStream in = ObjectStore.open(gitlet, currentID)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            if (otherID != null) {
+                try (InputStream in = ObjectStore.open(gitlet, otherID)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        repository.stage(fileCheck,
+                ObjectStore.writeFile(gitlet, writeFile, currentID));
+        System.out.println("Encountered a merge conflict.");
+    }
+
     /**
      * Helper for merge in the case fileCheck is present in both
      * other and current.
      * @param branchName The branch name to be used.
      * @param curFiles The ArrayList of current Files.
      * @param otherFiles The ArrayList of other Files.
-     * @param curNameToID The HashMap of current Names to IDs.
-     * @param otherNameToID The HashMap of other Names to IDs.
+     * @param curNameToID The Map of current Names to IDs.
+     * @param otherNameToID The Map of other Names to IDs.
      * @param currentBranchCommit The current branch Commit.
      * @param otherBranchCommit The other branch Commit.
      */
     public static void mergeHelperEnding(String branchName,
                                    ArrayList<String> curFiles,
                                    ArrayList<String> otherFiles,
-                                   HashMap<String,
-                                           String> curNameToID,
-                                   HashMap<String, String> otherNameToID,
+                                   Map<String, ObjectId> curNameToID,
+                                   Map<String, ObjectId> otherNameToID,
                                    Commit currentBranchCommit,
                                    Commit otherBranchCommit) {
         ArrayList<String> absentList = new ArrayList<>(curFiles);
@@ -1021,45 +979,176 @@ public class Main {
         for (String fileCheck : absentSet) {
             if (!curNameToID.containsKey(fileCheck)
                     && otherNameToID.containsKey(fileCheck)) {
-                String otherID = otherNameToID.get(fileCheck);
-                File locationOtherFile = new
-                        File(blobStorage.getPath() + "/" + otherID);
-                byte[] otherByte = Utils.readContents(locationOtherFile);
-                File writeFile = new File(fileCheck);
-                File stageToAdd = new
-                        File(addStage.getPath() + "/" + fileCheck);
-                Utils.writeContents(writeFile, (Object) otherByte);
-                Utils.writeContents(stageToAdd, (Object) otherByte);
+                takeOther(fileCheck, otherNameToID.get(fileCheck));
             } else if (curNameToID.containsKey(fileCheck)
                     && otherNameToID.containsKey(fileCheck)) {
-                String currentID = curNameToID.get(fileCheck);
-                File locationCurFile = new
-                        File(blobStorage.getPath() + "/" + currentID);
-                String otherID = otherNameToID.get(fileCheck);
-                File locationOtherFile = new
-                        File(blobStorage.getPath() + "/" + otherID);
-                File writeFile = new File(fileCheck);
-                File stageAdd = new
-                        File(addStage.getPath() + "/" + fileCheck);
-                String contents = "<<<<<<< HEAD\n";
-                String curContents =
-                        Utils.readContentsAsString(locationCurFile);
-                String otherContents =
-                        Utils.readContentsAsString(locationOtherFile);
-                contents += curContents
-                        + "=======\n" + otherContents + ">>>>>>>\n";
-                Utils.writeContents(writeFile, contents);
-                Utils.writeContents(stageAdd, contents);
-                System.out.println("Encountered a merge conflict.");
+                conflict(fileCheck, curNameToID.get(fileCheck),
+                        otherNameToID.get(fileCheck));
             }
         }
         makeCommit("Merged " + branchName
-                + " into " + currentBranchCommit.getBranch()
+                + " into " + repository.branch()
                 + ".", otherBranchCommit.getID());
     }
 
 
 
+    /**
+     * Moves every loose blob into a new pack so that reads no longer
+     * need one file per blob.
+     */
+    public static void repacker() {
+        ObjectStore.repack(gitlet);
+    }
+
+    /**
+     * Expires reflog entries older than the "gc.reflogExpire" setting
+     * in days (90 by default, whether or not --now is given), deletes
+     * the commits and blobs that no branch, reflog entry or staged file
+     * can reach, keeping anything written within the "gc.grace" setting
+     * in seconds (two weeks by default, none with --now), packs the
+     * branches, and reports what was reclaimed and how long each phase
+     * took.
+     * @param args The args passed into main: gc [--now].
+     */
+    public static void collector(String... args) {
+        if (args.length > 2 || args.length == 2 && !args[1].equals("--now")) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        long grace = args.length == 2 ? 0
+                : Config.getInt(gitlet, "gc.grace", GC_GRACE) * 1000L;
+        long expire = Config.getInt(gitlet, "gc.reflogExpire",
+                REFLOG_EXPIRE) * MILLIS_PER_DAY;
+        GarbageCollector gc = new GarbageCollector(gitlet, grace, expire);
+        gc.mark();
+        gc.sweep();
+        Refs.pack(gitlet);
+        System.out.printf("Reclaimed %d bytes from %d commits and %d blobs.%n",
+                gc.reclaimed(), gc.deadCommits(), gc.deadBlobs());
+        System.out.printf("Mark: %d ms, sweep: %d ms.%n",
+                gc.markTime() / NANOS_PER_MILLI,
+                gc.sweepTime() / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Rewrites every commit in the current stored format, moves the
+     * branches to the commits' new IDs, and deletes the old copies.
+     */
+    public static void migrator() {
+        HashMap<ObjectId, ObjectId> renamed = CommitCodec.migrate(gitlet);
+        for (Map.Entry<String, ObjectId> branch
+                 : repository.branches().entrySet()) {
+            ObjectId old = branch.getValue();
+            if (renamed.containsKey(old)) {
+                repository.updateBranch(branch.getKey(), renamed.get(old),
+                        "migrate");
+            }
+        }
+        HashSet<ObjectId> current = new HashSet<>(renamed.values());
+        int changed = 0;
+        for (ObjectId old : renamed.keySet()) {
+            if (!current.contains(old)) {
+                new File(commitStorage, old.toString()).delete();
+                changed += 1;
+            }
+        }
+        if (changed > 0) {
+            CommitGraph.discard(gitlet);
+            CommitIndex.discard(gitlet);
+            MessageIndex.discard(gitlet);
+        }
+        System.out.printf("Migrated %d commits, %d of them to new IDs.%n",
+                renamed.size(), changed);
+    }
+
+    /**
+     * Runs a watcher over the working directory until "watch stop" is
+     * given, so that status only looks at files that have changed.
+     * @param args The args passed into main: watch [stop].
+     */
+    public static void watcher(String... args) {
+        if (args.length > 2 || args.length == 2 && !args[1].equals("stop")) {
+            System.out.println("Incorrect operands.");
+        } else if (args.length == 2) {
+            Watcher.stop(gitlet);
+        } else {
+            Watcher.run(gitlet, cwd);
+        }
+    }
+
+    /**
+     * Prints the reflog of a branch, newest change first, as the head
+     * each change left it at, its place counting back from the newest,
+     * and the command that made it.
+     * @param args The args passed into main: reflog [BRANCH].
+     */
+    public static void reflogger(String... args) {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        String branch = args.length == 2 ? args[1] : repository.branch();
+        Reflog log = Reflog.open(gitlet, branch);
+        for (int k = log.size() - 1; k >= 0; k -= 1) {
+            ObjectId id = log.newId(k);
+            System.out.printf("%s %s@{%d}: %s%n",
+                    id == null ? "(deleted)" : id.toString(), branch,
+                    log.size() - 1 - k, log.command(k));
+        }
+    }
+
+    /** Default grace period of gc, in seconds. */
+    private static final int GC_GRACE = 14 * 24 * 60 * 60;
+
+    /** Default age in days at which gc expires reflog entries. */
+    private static final int REFLOG_EXPIRE = 90;
+
+    /** Milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * Prints a repository setting, or changes it when a value is given.
+     * @param args The args passed into main: config KEY [VALUE].
+     */
+    public static void configurer(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Incorrect operands.");
+        } else if (args.length == 2) {
+            System.out.println(Config.get(gitlet, args[1], ""));
+        } else {
+            Config.set(gitlet, args[1], args[2]);
+        }
+    }
+
+    /**
+     * Trains a compression dictionary from an even sample of the stored
+     * blobs and commits, makes it the current dictionary, and reports
+     * how well the sample compresses with and without it.
+     */
+    public static void dictTrainer() {
+        ArrayList<byte[]> samples = Compression.samples(gitlet);
+        byte[] dict = Compression.train(gitlet, samples);
+        if (dict == null) {
+            System.out.println("Not enough objects to train a dictionary.");
+            return;
+        }
+        long raw = 0, plain = 0, trained = 0;
+        for (byte[] sample : samples) {
+            raw += sample.length;
+            plain += Compression.deflate(sample, null).length;
+            trained += Compression.deflate(sample, dict).length;
+        }
+        System.out.printf("Trained a %d-byte dictionary from %d objects.%n",
+                dict.length, samples.size());
+        System.out.printf("Compression ratio: %.2f with the dictionary, "
+                + "%.2f without.%n", (double) raw / trained,
+                (double) raw / plain);
+    }
+
     /**
      * Remembers this remote repository by adding to the remoteRepos HashMap.
      * @param remoteName The name of the remote Repo
@@ -1106,53 +1195,66 @@ public class Main {
             System.out.println("Remote directory not found.");
             return;
         }
-        File remoteBranchMapLocation = new
-                File(remotePathString + "/headPointers");
-        FatMap remoteBranchMap =
-                Utils.readObject(remoteBranchMapLocation, FatMap.class);
-
-        String remoteLatestCommitID =
-                remoteBranchMap.get(remoteBranchName);
-        ArrayList<Commit> changeList = new ArrayList<>();
-        Commit checkCommit = Commit.grabCurrentCommit();
-        String currentID = checkCommit.getID();
-        for (;; checkCommit = Commit.grabFirstParent(checkCommit)) {
-            String curID = checkCommit.getID();
-            String parentID = checkCommit.getParents().get(0);
-            if (curID.equals(remoteLatestCommitID)) {
-                break;
-            } else if (parentID == null) {
-                System.out.println("Please pull down "
-                        +
-                        "remote changes before pushing.");
-                return;
-            } else {
-                changeList.add(checkCommit);
-            }
+        ObjectId remoteLatestCommitID =
+                Refs.get(remoteFileCheck, remoteBranchName);
+        CommitGraph graph = CommitGraph.open(gitlet);
+        ObjectId currentID = repository.headId();
+        int current = graph.index(currentID);
+        if (remoteLatestCommitID == null
+                || !new File(commitStorage, remoteLatestCommitID.toString())
+                        .exists()
+                || !graph.isAncestor(graph.index(remoteLatestCommitID),
+                        current)) {
+            System.out.println("Please pull down "
+                    +
+                    "remote changes before pushing.");
+            return;
         }
-        File remoteCommitDir = new File(remotePathString + "/commits");
-        File remoteBlobDir = new File(remotePathString + "/blobby");
-        for (Commit writeCommit : changeList) {
-            HashMap<String, String> nameToBlob =
-                    writeCommit.getFileNameToHash();
-            for (String blobName : nameToBlob.keySet()) {
-                String blobID = nameToBlob.get(blobName);
-                File blobLocation = new
-                        File(blobStorage.getPath() + "/" + blobID);
-                byte[] blobByte = Utils.readContents(blobLocation);
-                File f = new File(remoteBlobDir.getPath() + "/" + blobID);
-                Utils.writeContents(f, blobByte);
-            }
-            File f = new
-                    File(remoteCommitDir.getPath() + "/" + writeCommit.getID());
-            Utils.writeObject(f, writeCommit);
+        File remoteCommits = new File(remoteFileCheck, "commits");
+        for (int k : missingFrom(graph, current, remoteCommits)) {
+            Commit writeCommit = Commit.retrieve(graph.id(k));
+            Tree.copy(gitlet, remoteFileCheck, writeCommit.getTree());
+            Commit.writeCommit(remoteFileCheck, writeCommit.getID(),
+                    writeCommit);
         }
-        String curRemoteBranch = remoteBranchMap.get("current");
-        if (!curRemoteBranch.equals(remoteBranchName)) {
-            remoteBranchMap.put("current", remoteBranchName);
+        CommitGraph.open(remoteFileCheck).index(currentID);
+        if (!Refs.head(remoteFileCheck).equals(remoteBranchName)) {
+            Refs.setHead(remoteFileCheck, remoteBranchName);
         }
-        remoteBranchMap.put(remoteBranchName, currentID);
-        Utils.writeObject(remoteBranchMapLocation, remoteBranchMap);
+        Refs.update(remoteFileCheck, remoteBranchName, remoteLatestCommitID,
+                currentID, "push");
+    }
+
+    /**
+     * Returns the commits reachable from a commit whose stored form is
+     * not in a commit directory, walking the commit graph and stopping
+     * at commits the directory already holds.
+     * @param graph The commit graph holding START.
+     * @param start The record number of the commit to start from.
+     * @param commits The commit directory to check against.
+     * @return The record numbers of the missing commits.
+     */
+    private static ArrayList<Integer> missingFrom(CommitGraph graph,
+                                                  int start, File commits) {
+        ArrayList<Integer> result = new ArrayList<>();
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int k = pending.pop();
+            if (!seen.add(k)
+                    || new File(commits, graph.id(k).toString()).exists()) {
+                continue;
+            }
+            result.add(k);
+            for (int which = 0; which < CommitGraph.MAX_PARENTS;
+                 which += 1) {
+                if (graph.parent(k, which) != CommitGraph.NONE) {
+                    pending.push(graph.parent(k, which));
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -1160,72 +1262,39 @@ public class Main {
      * seen, and places them in a branch called
      * [remote name]/[remote branch name]. If this
      * branch did not previously exist, then it will
-     * be created now.
+     * be created now. The remote's history is walked through
+     * its commit graph, so only the commits being copied are read.
      * @param remoteName Name of the remote to be fetched from.
      * @param remoteBranchName The branch that
      * is being fetched from in the remote.
-     * @return The commit that the fetcher splits at.
+     * @return False if nothing could be fetched.
      */
-    public static Commit fetcher(String remoteName,
-                                 String remoteBranchName) {
+    public static boolean fetcher(String remoteName,
+                                  String remoteBranchName) {
         FatMap remotesMap = Utils.readObject(remoteRepos, FatMap.class);
         String remotePathString = remotesMap.get(remoteName);
-        File remoteHeadPointers = new File(remotePathString + "/headPointers");
-        if (!remoteHeadPointers.exists()) {
+        File remoteRepo = new File(remotePathString);
+        if (!new File(remoteRepo, "commits").isDirectory()) {
             System.out.println("Remote directory not found.");
-            return null;
+            return false;
         }
-        File remoteCommits = new File(remotePathString + "/commits");
-        File remoteBlobs = new File(remotePathString + "/blobby");
-        Commit curCommit = Commit.grabCurrentCommit();
-        String curCommitID = curCommit.getID();
-        ArrayList<Commit> changeList = new ArrayList<>(); FatMap remoteBranches
-                = Utils.readObject(remoteHeadPointers, FatMap.class);
-        String latestRemoteCommitID = remoteBranches.get(remoteBranchName);
-        if (latestRemoteCommitID == null) {
+        ObjectId latestID = Refs.get(remoteRepo, remoteBranchName);
+        if (latestID == null) {
             System.out.println("That remote does not have that branch.");
-            return null;
-        }
-        File latestRemoteCommitLocation = new File(remotePathString
-                + "/commits/" + latestRemoteCommitID);
-        Commit checkCommit =
-                Utils.readObject(latestRemoteCommitLocation, Commit.class);
-        if (Utils.plainFilenamesIn(commitStorage).
-                contains(checkCommit.getID())) {
-            return null;
+            return false;
         }
-        while (checkCommit.getParents().get(0) != null
-                && !checkCommit.getID().equals(curCommitID)) {
-            changeList.add(checkCommit);
-            HashMap<String, String> blobNameToHash =
-                    checkCommit.getFileNameToHash();
-            for (String blobName : blobNameToHash.keySet()) {
-                String blobID = blobNameToHash.get(blobName);
-                File remoteBlobLocation = new
-                        File(remoteBlobs.getPath() + "/" + blobID);
-                File localBlobLocation = new
-                        File(blobStorage.getPath() + "/" + blobID);
-                byte[] blobByte = Utils.readContents(remoteBlobLocation);
-                Utils.writeContents(localBlobLocation, (Object) blobByte);
-            }
-            String parentID = checkCommit.getParents().get(0);
-            File parentLocation =
-                    new File(remoteCommits.getPath() + "/" + parentID);
-            checkCommit = Utils.readObject(parentLocation, Commit.class);
-        }
-        for (Commit c : changeList) {
-            File writeCommit =
-                    new File(commitStorage.getPath() + "/" + c.getID());
-            Utils.writeObject(writeCommit, c);
+        CommitGraph remoteGraph = CommitGraph.open(remoteRepo);
+        for (int k : missingFrom(remoteGraph, remoteGraph.index(latestID),
+                commitStorage)) {
+            Commit checkCommit = Commit.read(remoteRepo, remoteGraph.id(k));
+            Tree.copy(remoteRepo, gitlet, checkCommit.getTree());
+            Commit.writeCommit(checkCommit.getID(), checkCommit);
         }
+        CommitGraph.open(gitlet).index(latestID);
         String savedRemoteBranch = remoteName + "/" + remoteBranchName;
-        FatMap localBranches = Utils.readObject(headPointers, FatMap.class);
-        if (!localBranches.containsKey(savedRemoteBranch)) {
-            localBranches.put(remoteName + "/" + remoteBranchName, "");
-        }
-        localBranches.put(savedRemoteBranch, latestRemoteCommitID);
-        Utils.writeObject(headPointers, localBranches);
-        return curCommit;
+        repository.updateBranch(savedRemoteBranch, latestID,
+                "fetch: " + remoteName + " " + remoteBranchName);
+        return true;
     }
 
     /**
@@ -1236,7 +1305,8 @@ public class Main {
      */
     public static void puller(String remoteName,
                               String remoteBranchName) throws IOException {
-        Commit split = fetcher(remoteName, remoteBranchName);
-        merge(remoteName + "/" + remoteBranchName, split);
+        if (fetcher(remoteName, remoteBranchName)) {
+            merge(remoteName + "/" + remoteBranchName);
+        }
     }
 }
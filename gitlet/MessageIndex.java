@@ -0,0 +1,550 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The date and message of every commit, kept apart from the commits so
+ * that global-log and find need not read any of them.
+ *
+ * The message log (.gitlet/messages) is the magic "GLML" and a version
+ * int, followed by one record per commit in the order they were
+ * stored: the 20-byte commit ID, then the date and the message, each
+ * an int byte count and UTF-8 bytes. A record is named by its offset.
+ *
+ * The index (.gitlet/messageIndex) covers the log up to some offset.
+ * It is the magic "GLMX", a version int, the offset covered, the number
+ * of hash slots, the number of trigrams and the number of postings,
+ * followed by
+ *   an open-addressed hash table of messages: per slot, the message's
+ *   hash and its record's offset plus one, or 0 for an empty slot;
+ *   the trigrams, sorted: per trigram, its three chars as a long and
+ *   where its postings start and how many there are;
+ *   the postings: the offsets of the records whose messages contain
+ *   each trigram, in log order.
+ * Records past the covered offset are searched one by one, and the
+ * index is rebuilt once they take up TAIL_LIMIT bytes. Both files are
+ * memory-mapped, and both may be deleted at any time: a missing log is
+ * rebuilt from the commit directory.
+ * @author Andrew Tom
+ */
+class MessageIndex {
+
+    /** Magic number at the start of the message log. */
+    static final int LOG_MAGIC = 0x474c4d4c;
+
+    /** Magic number at the start of the index. */
+    static final int INDEX_MAGIC = 0x474c4d58;
+
+    /** Current version of both files. */
+    static final int VERSION = 1;
+
+    /** Bytes of unindexed records at which the index is rebuilt. */
+    static final int TAIL_LIMIT = 1 << 16;
+
+    /**
+     * Opens the message index of a repository, first building the log
+     * from the commit directory if there is none, and rebuilding the
+     * index if it is missing or too far behind the log.
+     * @param repo The .gitlet directory of the repository.
+     * @return The index.
+     */
+    static MessageIndex open(File repo) {
+        File log = new File(repo, "messages");
+        File index = new File(repo, "messageIndex");
+        if (!log.isFile()) {
+            index.delete();
+            File tmp = new File(repo, "messages.tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(LOG_MAGIC);
+                out.writeInt(VERSION);
+                List<String> names =
+                        Utils.plainFilenamesIn(new File(repo, "commits"));
+                for (String name : names) {
+                    if (ObjectId.isId(name)) {
+                        writeRecord(out, Commit.read(repo,
+                                ObjectId.parse(name)));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            try {
+                Files.move(tmp.toPath(), log.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        MessageIndex result = new MessageIndex(log, index);
+        if (result._covered == 0
+                || result.end() - result._covered >= TAIL_LIMIT) {
+            result.write(index);
+            result = new MessageIndex(log, index);
+        }
+        return result;
+    }
+
+    /**
+     * Records a newly stored commit at the end of the log. Nothing is
+     * recorded if the repository has no log yet, since building one
+     * will find it.
+     * @param repo The .gitlet directory of the repository.
+     * @param c The commit, with its ID set.
+     */
+    static void add(File repo, Commit c) {
+        File log = new File(repo, "messages");
+        if (!log.isFile()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(log, true)))) {
+            writeRecord(out, c);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the log and index of a repository, to be rebuilt when
+     * they are next opened. Used whenever commits are deleted.
+     * @param repo The .gitlet directory of the repository.
+     */
+    static void discard(File repo) {
+        new File(repo, "messages").delete();
+        new File(repo, "messageIndex").delete();
+    }
+
+    /**
+     * Opens an existing log and, if it is usable, its index.
+     * @param log The log file.
+     * @param index The index file, which need not exist.
+     */
+    private MessageIndex(File log, File index) {
+        _log = map(log);
+        if (_log.capacity() < HEADER || _log.getInt(0) != LOG_MAGIC
+                || _log.getInt(Integer.BYTES) != VERSION) {
+            throw Utils.error("Corrupt message log.");
+        }
+        _end = wholeEnd();
+        if (index.isFile()) {
+            ByteBuffer mapped = map(index);
+            if (mapped.capacity() >= INDEX_HEADER
+                    && mapped.getInt(0) == INDEX_MAGIC
+                    && mapped.getInt(Integer.BYTES) == VERSION
+                    && mapped.getLong(COVERED) <= _end) {
+                _index = mapped;
+                _covered = (int) mapped.getLong(COVERED);
+                _slots = mapped.getInt(SLOTS);
+                _trigrams = mapped.getInt(TRIGRAMS);
+                _trigramStart = INDEX_HEADER + _slots * SLOT;
+                _postingStart = _trigramStart + _trigrams * TRIGRAM;
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the first record.
+     * @return The offset just past the log header.
+     */
+    int first() {
+        return HEADER;
+    }
+
+    /**
+     * Returns the offset just past the last record.
+     * @return The end of the log.
+     */
+    int end() {
+        return _end;
+    }
+
+    /**
+     * Returns the offset of the record after the one at R.
+     * @param r The offset of a record.
+     * @return The offset of the next, or end().
+     */
+    int next(int r) {
+        int date = r + ObjectId.BYTES;
+        int message = date + Integer.BYTES + _log.getInt(date);
+        return message + Integer.BYTES + _log.getInt(message);
+    }
+
+    /**
+     * Returns the commit ID of the record at R.
+     * @param r The offset of a record.
+     * @return The ID of its commit.
+     */
+    ObjectId id(int r) {
+        byte[] raw = new byte[ObjectId.BYTES];
+        _log.get(r, raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Returns the date of the record at R.
+     * @param r The offset of a record.
+     * @return The date of its commit, as shown by log.
+     */
+    String date(int r) {
+        return stringAt(r + ObjectId.BYTES);
+    }
+
+    /**
+     * Returns the message of the record at R.
+     * @param r The offset of a record.
+     * @return The message of its commit.
+     */
+    String message(int r) {
+        int date = r + ObjectId.BYTES;
+        return stringAt(date + Integer.BYTES + _log.getInt(date));
+    }
+
+    /**
+     * Finds the commits whose message is exactly MESSAGE, through the
+     * hash table and then the unindexed records.
+     * @param message The message to look for.
+     * @return The IDs of the commits, in the order they were stored.
+     */
+    ArrayList<ObjectId> find(String message) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        int hash = hash(message);
+        if (_slots > 0) {
+            for (int s = hash & (_slots - 1);; s = (s + 1) & (_slots - 1)) {
+                int slot = INDEX_HEADER + s * SLOT;
+                long r = _index.getLong(slot + Integer.BYTES) - 1;
+                if (r < 0) {
+                    break;
+                }
+                if (_index.getInt(slot) == hash
+                        && message((int) r).equals(message)) {
+                    result.add(id((int) r));
+                }
+            }
+        }
+        for (int r = Math.max(_covered, HEADER); r < _end; r = next(r)) {
+            if (message(r).equals(message)) {
+                result.add(id(r));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the commits whose message contains TEXT. The indexed
+     * records checked are only those whose messages contain every
+     * trigram of TEXT; text too short to have any is checked against
+     * every record.
+     * @param text The text to look for.
+     * @return The IDs of the commits, in the order they were stored.
+     */
+    ArrayList<ObjectId> findContaining(String text) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        HashSet<Long> grams = trigrams(text);
+        int from = Math.max(_covered, HEADER);
+        if (grams.isEmpty() || _index == null) {
+            from = HEADER;
+        } else {
+            long[] candidates = null;
+            for (long gram : grams) {
+                long[] postings = postings(gram);
+                candidates = candidates == null ? postings
+                        : intersect(candidates, postings);
+                if (candidates.length == 0) {
+                    break;
+                }
+            }
+            for (long r : candidates) {
+                if (message((int) r).contains(text)) {
+                    result.add(id((int) r));
+                }
+            }
+        }
+        for (int r = from; r < _end; r = next(r)) {
+            if (message(r).contains(text)) {
+                result.add(id(r));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes an index covering every record of the log.
+     * @param index Where to write it.
+     */
+    private void write(File index) {
+        ArrayList<Integer> records = new ArrayList<>();
+        for (int r = HEADER; r < _end; r = next(r)) {
+            records.add(r);
+        }
+        int slots = Integer.highestOneBit(Math.max(MIN_SLOTS,
+                records.size() * 2 - 1)) * 2;
+        int[] hashes = new int[slots];
+        long[] offsets = new long[slots];
+        HashMap<Long, ArrayList<Integer>> postings = new HashMap<>();
+        int postingCount = 0;
+        for (int r : records) {
+            String message = message(r);
+            int hash = hash(message);
+            int s = hash & (slots - 1);
+            while (offsets[s] != 0) {
+                s = (s + 1) & (slots - 1);
+            }
+            hashes[s] = hash;
+            offsets[s] = r + 1L;
+            for (long gram : trigrams(message)) {
+                postings.computeIfAbsent(gram, g -> new ArrayList<>())
+                        .add(r);
+                postingCount += 1;
+            }
+        }
+        Long[] grams = postings.keySet().toArray(new Long[0]);
+        Arrays.sort(grams);
+        File tmp = new File(index.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(_end);
+                out.writeInt(slots);
+                out.writeInt(grams.length);
+                out.writeInt(postingCount);
+                for (int s = 0; s < slots; s += 1) {
+                    out.writeInt(hashes[s]);
+                    out.writeLong(offsets[s]);
+                }
+                int start = 0;
+                for (Long gram : grams) {
+                    out.writeLong(gram);
+                    out.writeInt(start);
+                    out.writeInt(postings.get(gram).size());
+                    start += postings.get(gram).size();
+                }
+                for (Long gram : grams) {
+                    for (int r : postings.get(gram)) {
+                        out.writeLong(r);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), index.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the offsets of the indexed records whose messages contain
+     * a trigram, found by binary search of the trigram table.
+     * @param gram The trigram.
+     * @return The offsets, in log order.
+     */
+    private long[] postings(long gram) {
+        int lo = 0, hi = _trigrams - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = _trigramStart + mid * TRIGRAM;
+            long key = _index.getLong(entry);
+            if (key < gram) {
+                lo = mid + 1;
+            } else if (key > gram) {
+                hi = mid - 1;
+            } else {
+                int start = _index.getInt(entry + Long.BYTES);
+                long[] result = new long[_index.getInt(
+                        entry + Long.BYTES + Integer.BYTES)];
+                for (int i = 0; i < result.length; i += 1) {
+                    result[i] = _index.getLong(
+                            _postingStart + (start + i) * Long.BYTES);
+                }
+                return result;
+            }
+        }
+        return new long[0];
+    }
+
+    /**
+     * Returns the offset just past the last complete record of the log,
+     * so that a record cut short by a crash is never read.
+     * @return The end of the whole records.
+     */
+    private int wholeEnd() {
+        int length = _log.capacity();
+        int r = HEADER;
+        while (length - r >= ObjectId.BYTES + 2 * Integer.BYTES) {
+            int date = r + ObjectId.BYTES;
+            int message = date + Integer.BYTES + _log.getInt(date);
+            if (message + Integer.BYTES > length) {
+                break;
+            }
+            int next = message + Integer.BYTES + _log.getInt(message);
+            if (next > length) {
+                break;
+            }
+            r = next;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the String stored at OFF as a byte count and UTF-8 bytes.
+     * @param off Where the count starts in the log.
+     * @return The String.
+     */
+    private String stringAt(int off) {
+        byte[] bytes = new byte[_log.getInt(off)];
+        _log.get(off + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a record for a commit to a log.
+     * @param out The log.
+     * @param c The commit.
+     * @throws IOException If OUT fails.
+     */
+    private static void writeRecord(DataOutputStream out, Commit c)
+        throws IOException {
+        out.write(c.getID().toBytes());
+        for (String s : new String[] {c.getMyDate(), c.getMsg()}) {
+            byte[] bytes = (s == null ? "" : s)
+                    .getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the distinct trigrams of S, each of its runs of three
+     * chars packed into a long.
+     * @param s The String.
+     * @return Its trigrams, empty if S is shorter than three chars.
+     */
+    private static HashSet<Long> trigrams(String s) {
+        HashSet<Long> result = new HashSet<>();
+        for (int i = 0; i + 2 < s.length(); i += 1) {
+            result.add((long) s.charAt(i) << (2 * Character.SIZE)
+                    | (long) s.charAt(i + 1) << Character.SIZE
+                    | s.charAt(i + 2));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offsets found in both of two sorted arrays.
+     * @param a Sorted offsets.
+     * @param b Sorted offsets.
+     * @return Their intersection, sorted.
+     */
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the hash of a message used by the hash table, with its
+     * high bits folded into its low ones.
+     * @param message The message.
+     * @return Its hash.
+     */
+    private static int hash(String message) {
+        int h = message.hashCode();
+        return h ^ (h >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * Maps a whole file read-only.
+     * @param f The file.
+     * @return Its contents.
+     */
+    private static ByteBuffer map(File f) {
+        try (RandomAccessFile in = new RandomAccessFile(f, "r")) {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, in.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Size of the log header: magic and version. */
+    private static final int HEADER = 8;
+
+    /** Where the offset covered is in the index header. */
+    private static final int COVERED = 8;
+
+    /** Where the number of hash slots is in the index header. */
+    private static final int SLOTS = COVERED + Long.BYTES;
+
+    /** Where the number of trigrams is in the index header. */
+    private static final int TRIGRAMS = SLOTS + Integer.BYTES;
+
+    /** Size of the index header. */
+    private static final int INDEX_HEADER = TRIGRAMS + 2 * Integer.BYTES;
+
+    /** Size of a hash slot: a hash and an offset. */
+    private static final int SLOT = Integer.BYTES + Long.BYTES;
+
+    /** Size of a trigram entry: the trigram, a start and a count. */
+    private static final int TRIGRAM = Long.BYTES + 2 * Integer.BYTES;
+
+    /** Fewest hash slots in an index. */
+    private static final int MIN_SLOTS = 16;
+
+    /** The mapped log. */
+    private final ByteBuffer _log;
+
+    /** Offset just past the last whole record of the log. */
+    private int _end;
+
+    /** The mapped index, or null if there is none. */
+    private ByteBuffer _index;
+
+    /** Offset in the log up to which the index covers it. */
+    private int _covered;
+
+    /** Number of hash slots in the index. */
+    private int _slots;
+
+    /** Number of trigrams in the index. */
+    private int _trigrams;
+
+    /** Where the trigram table starts in the index. */
+    private int _trigramStart;
+
+    /** Where the postings start in the index. */
+    private int _postingStart;
+}
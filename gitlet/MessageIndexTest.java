@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of finding commits by their messages.
+ *  @author Andrew Tom
+ */
+public class MessageIndexTest {
+
+    /** Makes a repository with an empty message log. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        MessageIndex.open(_repo);
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /**
+     * The hash table finds every commit with exactly a message, and no
+     * other, even among messages whose hashes are equal.
+     */
+    @Test
+    public void findsExactMessages() {
+        ObjectId fix = commit("fix bug");
+        commit("fix bug twice");
+        ObjectId again = commit("fix bug");
+        ObjectId[] same = {commit("AaAa"), commit("AaBB"), commit("BBAa"),
+                           commit("BBBB")};
+        MessageIndex index = indexed();
+        assertEquals(List.of(fix, again), index.find("fix bug"));
+        assertTrue(index.find("fix").isEmpty());
+        assertTrue(index.find("nothing").isEmpty());
+        assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+        String[] messages = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        for (int i = 0; i < messages.length; i += 1) {
+            assertEquals(List.of(same[i]), index.find(messages[i]));
+        }
+    }
+
+    /**
+     * Only messages holding every trigram of the text are checked, and
+     * of those only the ones that hold the text itself are found.
+     */
+    @Test
+    public void intersectsTrigrams() {
+        ObjectId merge = commit("merge branch topic");
+        ObjectId mergeFix = commit("merge fix");
+        ObjectId topicFix = commit("topic fix");
+        commit("abcd bcde");
+        ObjectId whole = commit("abcde");
+        MessageIndex index = indexed();
+        assertEquals(List.of(merge, mergeFix),
+                     index.findContaining("merge"));
+        assertEquals(List.of(mergeFix, topicFix),
+                     index.findContaining("fix"));
+        assertEquals(List.of(topicFix), index.findContaining("opic f"));
+        assertEquals(List.of(whole), index.findContaining("abcde"));
+        assertTrue(index.findContaining("merge topic").isEmpty());
+        assertTrue(index.findContaining("xyz").isEmpty());
+    }
+
+    /** Text with no trigram is looked for in every message. */
+    @Test
+    public void checksShortTextEverywhere() {
+        ObjectId a = commit("a fix");
+        ObjectId b = commit("fi");
+        ObjectId c = commit("unrelated");
+        MessageIndex index = indexed();
+        assertEquals(List.of(a, b), index.findContaining("fi"));
+        assertEquals(List.of(c), index.findContaining("u"));
+        assertEquals(List.of(a, b, c), index.findContaining(""));
+        assertEquals(List.of(b), index.find("fi"));
+    }
+
+    /**
+     * Commits stored since the index was written are searched one by
+     * one after the indexed ones, until there are enough of them that
+     * the index is rebuilt.
+     */
+    @Test
+    public void searchesUnindexedTail() {
+        ObjectId old = commit("release one");
+        indexed();
+        File indexFile = new File(_repo, "messageIndex");
+        long before = indexFile.length();
+        ObjectId recent = commit("release two");
+        ObjectId same = commit("release one");
+        MessageIndex index = MessageIndex.open(_repo);
+        assertEquals(before, indexFile.length());
+        assertEquals(List.of(old, same), index.find("release one"));
+        assertEquals(List.of(old, recent, same),
+                     index.findContaining("release"));
+        assertEquals(List.of(old, recent, same),
+                     index.findContaining("re"));
+        commit("x".repeat(MessageIndex.TAIL_LIMIT));
+        index = MessageIndex.open(_repo);
+        assertNotEquals(before, indexFile.length());
+        assertEquals(List.of(old, same), index.find("release one"));
+        assertEquals(List.of(recent), index.findContaining("two"));
+    }
+
+    /** A record cut short at the end of the log is not read. */
+    @Test
+    public void ignoresPartialRecord() throws IOException {
+        ObjectId whole = commit("whole");
+        try (FileOutputStream out =
+                new FileOutputStream(new File(_repo, "messages"), true)) {
+            out.write(new byte[ObjectId.BYTES + 2]);
+        }
+        MessageIndex index = MessageIndex.open(_repo);
+        assertEquals(List.of(whole), index.findContaining(""));
+    }
+
+    /**
+     * Stores a commit, a child of the last one stored, so that commits
+     * with the same message made in the same second differ.
+     * @param msg The message of the commit.
+     * @return Its ID.
+     */
+    private ObjectId commit(String msg) {
+        Commit c = _last == null ? new Commit(msg)
+            : new Commit(msg, _last);
+        c.setTree(Tree.write(_repo, Map.of()));
+        c.setID();
+        Commit.writeCommit(_repo, c.getID(), c);
+        _last = c.getID();
+        _made.add(_last);
+        return _last;
+    }
+
+    /**
+     * Rebuilds the index so that it covers every commit stored, and
+     * opens it.
+     * @return The index.
+     */
+    private MessageIndex indexed() {
+        new File(_repo, "messageIndex").delete();
+        MessageIndex index = MessageIndex.open(_repo);
+        assertEquals(_made, index.findContaining(""));
+        return index;
+    }
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+
+    /** The last commit stored, or null. */
+    private ObjectId _last;
+
+    /** The commits stored, in order. */
+    private final ArrayList<ObjectId> _made = new ArrayList<>();
+}
@@ -0,0 +1,317 @@
+package gitlet;
+import java.io.Serializable;
+import java.security.MessageDigest;
+
+/**
+ * The SHA-1 ID of a commit or blob, held as its 20 raw bytes packed
+ * into three primitive fields rather than as a 40-character String.
+ * That makes an ID a third of the size, and equality and hashing a few
+ * word comparisons. IDs are still written out as lower-case hex.
+ * @author Andrew Tom
+ */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Number of bytes in an ID. */
+    static final int BYTES = 20;
+
+    /**
+     * An ID from its raw bytes.
+     * @param raw Holds the ID.
+     * @param off Where the ID starts in RAW.
+     */
+    private ObjectId(byte[] raw, int off) {
+        _w0 = getLong(raw, off);
+        _w1 = getLong(raw, off + Long.BYTES);
+        _w2 = (int) (getLong(raw, off + BYTES - Long.BYTES) & INT_MASK);
+    }
+
+    /**
+     * Returns the ID held in RAW starting at OFF.
+     * @param raw Holds the 20 bytes of the ID.
+     * @param off Where the ID starts in RAW.
+     * @return The ID.
+     */
+    static ObjectId fromBytes(byte[] raw, int off) {
+        return new ObjectId(raw, off);
+    }
+
+    /**
+     * Parses a 40-digit hex ID, without allocating anything but the
+     * result.
+     * @param hex The ID as a lower- or upper-case hex numeral.
+     * @return The ID.
+     */
+    static ObjectId parse(CharSequence hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw Utils.error("Malformed object ID %s.", hex);
+        }
+        long w0 = parseWord(hex, 0, Long.BYTES);
+        long w1 = parseWord(hex, Long.BYTES, Long.BYTES);
+        int w2 = (int) parseWord(hex, 2 * Long.BYTES, Integer.BYTES);
+        return new ObjectId(w0, w1, w2);
+    }
+
+    /**
+     * Parses a hex ID, or returns null for a null or empty String, as
+     * used for missing parents and empty references.
+     * @param hex The ID, or null.
+     * @return The ID, or null.
+     */
+    static ObjectId parseOrNull(String hex) {
+        return hex == null || hex.isEmpty() ? null : parse(hex);
+    }
+
+    /**
+     * Reports whether a String is a well-formed hex ID.
+     * @param hex The String to check.
+     * @return True if HEX is 40 hex digits.
+     */
+    static boolean isId(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i += 1) {
+            if (Character.digit(hex.charAt(i), HEX) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the SHA-1 ID of DATA, hashed with this thread's digest.
+     * @param data The bytes to hash.
+     * @return The ID.
+     */
+    static ObjectId hash(byte[] data) {
+        return hash(data, 0, data.length);
+    }
+
+    /**
+     * Returns the SHA-1 ID of LEN bytes of DATA from OFF, hashed with
+     * this thread's digest.
+     * @param data Holds the bytes to hash.
+     * @param off Where they start.
+     * @param len How many there are.
+     * @return The ID.
+     */
+    static ObjectId hash(byte[] data, int off, int len) {
+        MessageDigest md = digest();
+        md.update(data, off, len);
+        return fromDigest(md);
+    }
+
+    /**
+     * Finishes a SHA-1 digest and returns its result as an ID. The
+     * digest is reset and may be used again.
+     * @param md A SHA-1 digest.
+     * @return The ID.
+     */
+    static ObjectId fromDigest(MessageDigest md) {
+        return new ObjectId(md.digest(), 0);
+    }
+
+    /**
+     * Returns this thread's SHA-1 digest, reset and ready for use. It
+     * must be finished before anything else on the thread hashes.
+     * @return The digest.
+     */
+    static MessageDigest digest() {
+        MessageDigest result = DIGEST.get();
+        result.reset();
+        return result;
+    }
+
+    /**
+     * Writes the 20 bytes of this ID into DEST at OFF.
+     * @param dest The array to write into.
+     * @param off Where to start in DEST.
+     */
+    void copyTo(byte[] dest, int off) {
+        putLong(dest, off, _w0, Long.BYTES);
+        putLong(dest, off + Long.BYTES, _w1, Long.BYTES);
+        putLong(dest, off + 2 * Long.BYTES, _w2, Integer.BYTES);
+    }
+
+    /**
+     * Returns the 20 bytes of this ID.
+     * @return A new array holding the ID.
+     */
+    byte[] toBytes() {
+        byte[] result = new byte[BYTES];
+        copyTo(result, 0);
+        return result;
+    }
+
+    /**
+     * Returns the first byte of this ID, as used by fan-out tables.
+     * @return The first byte, from 0 to 255.
+     */
+    int firstByte() {
+        return (int) (_w0 >>> (Long.SIZE - Byte.SIZE));
+    }
+
+    /**
+     * Reports whether this ID's hex form starts with PREFIX.
+     * @param prefix Up to 40 lower-case hex digits.
+     * @return True if PREFIX is a prefix of this ID.
+     */
+    boolean startsWith(CharSequence prefix) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (prefix.charAt(i) != DIGITS[nibble(i)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        char[] result = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = DIGITS[nibble(i)];
+        }
+        return new String(result);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> Integer.SIZE);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int result = Long.compareUnsigned(_w0, other._w0);
+        if (result == 0) {
+            result = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (result == 0) {
+            result = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return result;
+    }
+
+    /**
+     * An ID from its three words.
+     * @param w0 Bytes 0 to 7.
+     * @param w1 Bytes 8 to 15.
+     * @param w2 Bytes 16 to 19.
+     */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /**
+     * Returns the Ith hex digit of this ID.
+     * @param i The position of the digit, from 0 to 39.
+     * @return Its value, from 0 to 15.
+     */
+    private int nibble(int i) {
+        int shift = Long.SIZE - NIBBLE - NIBBLE * (i % HEX);
+        long word;
+        if (i < HEX) {
+            word = _w0;
+        } else if (i < 2 * HEX) {
+            word = _w1;
+        } else {
+            word = _w2 & INT_MASK;
+            shift -= Integer.SIZE;
+        }
+        return (int) (word >>> shift) & NIBBLE_MASK;
+    }
+
+    /**
+     * Reads a big-endian long from RAW at OFF.
+     * @param raw The bytes.
+     * @param off Where the long starts.
+     * @return The long.
+     */
+    private static long getLong(byte[] raw, int off) {
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i += 1) {
+            result = (result << Byte.SIZE) | (raw[off + i] & BYTE_MASK);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the low N bytes of WORD big-endian into DEST at OFF.
+     * @param dest The array to write into.
+     * @param off Where to start.
+     * @param word The value to write.
+     * @param n The number of bytes to write.
+     */
+    private static void putLong(byte[] dest, int off, long word, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            dest[off + i] = (byte) word;
+            word >>>= Byte.SIZE;
+        }
+    }
+
+    /**
+     * Parses N bytes' worth of hex digits of HEX starting at byte OFF.
+     * @param hex The hex numeral.
+     * @param off The first byte to parse.
+     * @param n The number of bytes to parse.
+     * @return Their value.
+     */
+    private static long parseWord(CharSequence hex, int off, int n) {
+        long result = 0;
+        for (int i = 2 * off; i < 2 * (off + n); i += 1) {
+            int digit = Character.digit(hex.charAt(i), HEX);
+            if (digit < 0) {
+                throw Utils.error("Malformed object ID %s.", hex);
+            }
+            result = (result << NIBBLE) | digit;
+        }
+        return result;
+    }
+
+    /** Bits in a hex digit. */
+    private static final int NIBBLE = 4;
+
+    /** Mask for one hex digit. */
+    private static final int NIBBLE_MASK = 0xf;
+
+    /** Radix of hex digits, and the number of them in a long. */
+    private static final int HEX = 16;
+
+    /** Mask for turning a byte into an unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Mask for turning an int into an unsigned value. */
+    private static final long INT_MASK = 0xffffffffL;
+
+    /** The lower-case hex digits. */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /** One SHA-1 digest per thread, reused between hashes. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(Utils::newSha1);
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    /** Bytes 0 to 7 of the ID. */
+    private final long _w0;
+
+    /** Bytes 8 to 15 of the ID. */
+    private final long _w1;
+
+    /** Bytes 16 to 19 of the ID. */
+    private final int _w2;
+}
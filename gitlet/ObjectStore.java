@@ -0,0 +1,1034 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The blob store of a repository. Blobs start out as loose files in
+ * .gitlet/blobby, named by their SHA-1 ID, and are moved into packs
+ * under .gitlet/packs by repack. Reads check the packs first and fall
+ * back to the loose files.
+ *
+ * A stored blob is normally just the blob's bytes. New versions of a
+ * file may instead be stored as a delta against an earlier version;
+ * large files may be stored as lists of content-defined chunks. Such
+ * blobs, compressed blobs, and plain blobs that happen to start with
+ * MAGIC, begin with MAGIC and a type byte so readers can tell them
+ * apart.
+ * @author Andrew Tom
+ */
+class ObjectStore {
+
+    /**
+     * Returns the loose object directory of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @return The blobby directory inside REPO.
+     */
+    static File looseDir(File repo) {
+        return new File(repo, "blobby");
+    }
+
+    /**
+     * Returns the pack directory of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @return The packs directory inside REPO.
+     */
+    static File packDir(File repo) {
+        return new File(repo, "packs");
+    }
+
+    /**
+     * Returns the file a blob is stored in while it is loose.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return Its file in the blobby directory, which may not exist.
+     */
+    static File loose(File repo, ObjectId id) {
+        return new File(looseDir(repo), id.toString());
+    }
+
+    /**
+     * Reads a blob from a repository, rebuilding it from its delta
+     * chain if it is stored as a delta.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The contents of the blob.
+     */
+    static byte[] read(File repo, ObjectId id) {
+        byte[] result = CACHE.get(id);
+        if (result != null) {
+            return result;
+        }
+        byte[] stored = Compression.decompress(repo, readStored(repo, id));
+        switch (typeOf(stored)) {
+        case RAW:
+            return Arrays.copyOfRange(stored, HEADER, stored.length);
+        case CHUNKED:
+            try (InputStream in = open(repo, id)) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        case DELTA:
+            ObjectId base = baseOf(stored);
+            byte[] baseBytes = read(repo, base);
+            remember(base, baseBytes);
+            result = Delta.apply(baseBytes, Arrays.copyOfRange(stored,
+                    DELTA_HEADER, stored.length));
+            remember(id, result);
+            return result;
+        default:
+            return stored;
+        }
+    }
+
+    /**
+     * Reads a blob exactly as it is stored, without decoding it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The stored bytes of the blob.
+     */
+    static byte[] readStored(File repo, ObjectId id) {
+        for (PackFile pack : packs(repo)) {
+            byte[] result = pack.read(id);
+            if (result != null) {
+                return result;
+            }
+        }
+        return Utils.readContents(loose(repo, id));
+    }
+
+    /**
+     * Reports whether a repository already stores a blob.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return True if the blob is packed or loose in REPO.
+     */
+    static boolean contains(File repo, ObjectId id) {
+        for (PackFile pack : packs(repo)) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return loose(repo, id).isFile();
+    }
+
+    /**
+     * Reports whether a repository already stores a blob, and if so
+     * marks it as just written, so that a garbage collection running at
+     * the same time treats it as new. A pack is touched, but a loose
+     * blob may be hard-linked into the working directory, where its
+     * modification time is the working file's, so it is noted in the
+     * .gitlet/fresh log instead.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return True if REPO has the blob.
+     */
+    private static boolean freshen(File repo, ObjectId id) {
+        long now = System.currentTimeMillis();
+        for (PackFile pack : packs(repo)) {
+            if (pack.contains(id)) {
+                pack.getPackFile().setLastModified(now);
+                return true;
+            }
+        }
+        if (!loose(repo, id).isFile()) {
+            return false;
+        }
+        byte[] line = (now + " " + id + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+        try (FileChannel out = FileChannel.open(
+                 new File(repo, FRESH).toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileLock lock = out.lock()) {
+            ByteBuffer buf = ByteBuffer.wrap(line);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the loose blobs stored again since a time, and drops the
+     * older lines of the .gitlet/fresh log. For gc, which keeps them as
+     * it keeps blobs written since then.
+     * @param repo The .gitlet directory of the repository.
+     * @param cutoff The time in milliseconds.
+     * @return The IDs of the blobs.
+     */
+    static HashSet<ObjectId> freshSince(File repo, long cutoff) {
+        HashSet<ObjectId> result = new HashSet<>();
+        File log = new File(repo, FRESH);
+        if (!log.isFile()) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(log.toPath(),
+                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            ByteBuffer all = ByteBuffer.allocate((int) channel.size());
+            while (all.hasRemaining() && channel.read(all) >= 0) {
+                continue;
+            }
+            StringBuilder kept = new StringBuilder();
+            for (String line : new String(all.array(),
+                     StandardCharsets.UTF_8).split("\n")) {
+                int space = line.indexOf(' ');
+                if (space > 0 && Long.parseLong(line.substring(0, space))
+                        >= cutoff) {
+                    result.add(ObjectId.parse(line.substring(space + 1)));
+                    kept.append(line).append('\n');
+                }
+            }
+            ByteBuffer out = ByteBuffer.wrap(
+                    kept.toString().getBytes(StandardCharsets.UTF_8));
+            channel.truncate(out.remaining());
+            for (long at = 0; out.hasRemaining(); ) {
+                at += channel.write(out, at);
+            }
+        } catch (IOException | NumberFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Stores a blob as a loose object, unless REPO already has it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param contents The contents of the blob.
+     */
+    static void write(File repo, ObjectId id, byte[] contents) {
+        write(repo, id, contents, null);
+    }
+
+    /**
+     * Stores a blob as a loose object, unless REPO already has it. If
+     * BASE names an earlier version of the same file, the blob is
+     * stored as a delta against it when that is at most half the size
+     * and keeps the delta chain no deeper than MAX_DEPTH.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param contents The contents of the blob.
+     * @param base The ID of an earlier version, or null.
+     */
+    static void write(File repo, ObjectId id, byte[] contents,
+                      ObjectId base) {
+        if (freshen(repo, id)) {
+            return;
+        }
+        byte[] stored = null;
+        if (base != null && !base.equals(id) && contains(repo, base)) {
+            stored = deltify(repo, contents, base);
+        }
+        if (stored == null) {
+            stored = plain(contents);
+        }
+        stored = Compression.compress(repo, stored);
+        Utils.writeContents(loose(repo, id), (Object) stored);
+    }
+
+    /**
+     * Stores the contents of a file as a blob and returns its ID. With
+     * the "chunking" setting on, files of at least "chunking.threshold"
+     * bytes are stored as lists of chunks. Otherwise files of at most
+     * STREAM_LIMIT bytes are read whole, so that they can be stored as
+     * deltas against BASE. Larger files are hashed as they are copied
+     * into the store a buffer at a time, so that memory use does not
+     * depend on their size.
+     * @param repo The .gitlet directory of the repository.
+     * @param source The file to store.
+     * @param base The ID of an earlier version of the file, or null.
+     * @return The ID of the blob.
+     */
+    static ObjectId writeFile(File repo, File source, ObjectId base) {
+        if (Config.isOn(repo, "chunking") && source.length()
+                >= Config.getInt(repo, "chunking.threshold", CHUNK_LIMIT)) {
+            return writeChunked(repo, source);
+        }
+        if (source.length() <= STREAM_LIMIT) {
+            byte[] contents = Utils.readContents(source);
+            ObjectId id = ObjectId.hash(contents);
+            write(repo, id, contents, base);
+            return id;
+        }
+        File tmp = temporary(repo);
+        MessageDigest md = ObjectId.digest();
+        try {
+            boolean escape = hasMagic(Utils.readPrefix(source, MAGIC.length));
+            try (InputStream in = new DigestInputStream(
+                    Files.newInputStream(source.toPath()), md);
+                 OutputStream out = Compression.deflating(repo,
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath()),
+                            Utils.BUFFER_SIZE))) {
+                if (escape) {
+                    out.write(MAGIC);
+                    out.write(RAW);
+                }
+                in.transferTo(out);
+            }
+            ObjectId id = ObjectId.fromDigest(md);
+            install(repo, tmp, id);
+            return id;
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Stores a file as a chunked blob: a list of the IDs of its
+     * content-defined chunks, each of which is stored as a blob of its
+     * own unless an identical chunk already is. The list is MAGIC,
+     * CHUNKED, the length of the file as a long, and the 20-byte IDs.
+     * @param repo The .gitlet directory of the repository.
+     * @param source The file to store.
+     * @return The ID of the blob, which is the hash of the whole file.
+     */
+    private static ObjectId writeChunked(File repo, File source) {
+        MessageDigest whole = Utils.newSha1();
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        list.write(MAGIC, 0, MAGIC.length);
+        list.write(CHUNKED);
+        list.write(ByteBuffer.allocate(8).putLong(source.length()).array(),
+                0, 8);
+        byte[] buf = new byte[2 * Chunker.MAX];
+        int start = 0, end = 0;
+        boolean eof = false;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            while (true) {
+                if (!eof && end - start < Chunker.MAX) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    end += in.readNBytes(buf, end, buf.length - end);
+                    eof = end < buf.length;
+                }
+                if (start == end) {
+                    break;
+                }
+                int len = Chunker.cut(buf, start, end - start);
+                whole.update(buf, start, len);
+                ObjectId chunkID = ObjectId.hash(buf, start, len);
+                write(repo, chunkID,
+                        Arrays.copyOfRange(buf, start, start + len));
+                list.write(chunkID.toBytes(), 0, ObjectId.BYTES);
+                start += len;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectId id = ObjectId.fromDigest(whole);
+        if (!freshen(repo, id)) {
+            Utils.writeContents(loose(repo, id),
+                    (Object) Compression.compress(repo, list.toByteArray()));
+        }
+        return id;
+    }
+
+    /**
+     * Lists the chunks of a chunked blob.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the chunked blob.
+     * @return The IDs of its chunks, in order.
+     */
+    static ArrayList<ObjectId> chunkIDs(File repo, ObjectId id) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        byte[] list = Compression.decompress(repo, readStored(repo, id));
+        for (int i = CHUNK_HEADER; i < list.length; i += ObjectId.BYTES) {
+            result.add(ObjectId.fromBytes(list, i));
+        }
+        return result;
+    }
+
+    /**
+     * Opens a stream over the contents of a blob, decoding it on the
+     * fly, so that blobs larger than memory can be read.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The contents of the blob as a stream.
+     */
+    static InputStream open(File repo, ObjectId id) {
+        try {
+            return decode(repo, id, openStored(repo, id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes the contents of a blob to a file, replacing the file if it
+     * exists. How depends on the "checkout.mode" setting. In the default
+     * "copy" mode the blob is decoded a buffer at a time. A blob stored
+     * plain can instead be handed to the kernel to copy with
+     * FileChannel.transferTo in "transfer" mode, or, if it is loose, be
+     * hard-linked into place in "hardlink" mode. Hard-linked blobs are
+     * made read-only, so the working files linked to them are read-only
+     * too: editing one in place would change the store, so it must be
+     * replaced, as Gitlet itself always does, rather than written
+     * through. Nothing touches a loose blob's modification time once it
+     * is written, so a linked working file keeps its own. Each mode
+     * falls back to the next when the blob or the filesystem does not
+     * allow it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param dest The file to write.
+     */
+    static void checkout(File repo, ObjectId id, File dest) {
+        String mode = Config.get(repo, "checkout.mode", "copy");
+        try {
+            Files.deleteIfExists(dest.toPath());
+            dest.getAbsoluteFile().getParentFile().mkdirs();
+            if (!mode.equals("copy") && isPlain(repo, id)) {
+                if (mode.equals("hardlink") && link(repo, id, dest)) {
+                    return;
+                }
+                if (transfer(repo, id, dest)) {
+                    return;
+                }
+            }
+            try (InputStream in = open(repo, id)) {
+                Files.copy(in, dest.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Reports whether a blob is stored as its bare contents: neither
+     * compressed, nor a delta, nor chunked, nor escaped.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return True if the stored bytes of the blob are its contents.
+     * @throws IOException If the blob cannot be read.
+     */
+    private static boolean isPlain(File repo, ObjectId id)
+        throws IOException {
+        try (InputStream in = openStored(repo, id)) {
+            return typeOf(in.readNBytes(HEADER)) == 0;
+        }
+    }
+
+    /**
+     * Hard-links a loose plain blob into place, making the blob
+     * read-only first.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param dest The file to create, which must not exist.
+     * @return True if DEST was linked, false if it must be copied.
+     */
+    private static boolean link(File repo, ObjectId id, File dest) {
+        File loose = loose(repo, id);
+        if (!loose.isFile()) {
+            return false;
+        }
+        try {
+            loose.setWritable(false, false);
+            Files.createLink(dest.toPath(), loose.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies a plain blob into place with FileChannel.transferTo, which
+     * lets the kernel copy it (with copy_file_range on Linux) without
+     * passing it through the Java heap.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param dest The file to create, which must not exist.
+     * @return True if DEST was written, false if it must be copied.
+     */
+    private static boolean transfer(File repo, ObjectId id, File dest) {
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (PackFile pack : packs(repo)) {
+                if (pack.transferTo(id, out)) {
+                    return true;
+                }
+            }
+            try (FileChannel in = FileChannel.open(
+                    loose(repo, id).toPath())) {
+                long size = in.size();
+                for (long done = 0, n; done < size; done += n) {
+                    n = in.transferTo(done, size - done, out);
+                    if (n <= 0) {
+                        throw new IOException("short transfer");
+                    }
+                }
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException excp) {
+            dest.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Copies a blob from one repository to another in its stored form,
+     * a buffer at a time, copying the bases of a delta, the chunks of a
+     * chunked blob and any compression dictionary first. Chunks the
+     * other repository already has are not copied again.
+     * @param from The .gitlet directory holding the blob.
+     * @param to The .gitlet directory to copy it into.
+     * @param id The ID of the blob.
+     */
+    static void copy(File from, File to, ObjectId id) {
+        if (contains(to, id)) {
+            return;
+        }
+        File tmp = null;
+        try {
+            for (ObjectId needed : references(from, id)) {
+                copy(from, to, needed);
+            }
+            tmp = temporary(to);
+            try (InputStream in = openStored(from, id)) {
+                Files.copy(in, tmp.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            Compression.copyDictionary(from, to,
+                    Utils.readPrefix(tmp, Compression.HEADER));
+            install(to, tmp, id);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens a stream over a blob exactly as it is stored.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The stored bytes of the blob as a stream.
+     * @throws IOException If the blob cannot be opened.
+     */
+    static InputStream openStored(File repo, ObjectId id)
+        throws IOException {
+        for (PackFile pack : packs(repo)) {
+            InputStream result = pack.open(id);
+            if (result != null) {
+                return result;
+            }
+        }
+        File loose = loose(repo, id);
+        if (!loose.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        return Files.newInputStream(loose.toPath());
+    }
+
+    /**
+     * Turns a stream over a stored blob into a stream over its
+     * contents. Only deltas, which are never larger than STREAM_LIMIT,
+     * are decoded in memory.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @param stored The stored bytes of the blob, or of what is inside
+     *               its compression.
+     * @return The contents of the blob as a stream.
+     * @throws IOException If STORED fails.
+     */
+    private static InputStream decode(File repo, ObjectId id,
+                                      InputStream stored)
+        throws IOException {
+        BufferedInputStream in =
+            new BufferedInputStream(stored, Utils.BUFFER_SIZE);
+        in.mark(HEADER);
+        byte[] head = in.readNBytes(HEADER);
+        in.reset();
+        switch (typeOf(head)) {
+        case ZLIB:
+            in.skipNBytes(HEADER);
+            return decode(repo, id, Compression.inflating(repo, in));
+        case RAW:
+            in.skipNBytes(HEADER);
+            return in;
+        case DELTA:
+            in.close();
+            return new ByteArrayInputStream(read(repo, id));
+        case CHUNKED:
+            in.skipNBytes(CHUNK_HEADER);
+            return new ChunkStream(repo, in);
+        default:
+            return in;
+        }
+    }
+
+    /** The contents of a chunked blob, read one chunk at a time. */
+    private static class ChunkStream extends InputStream {
+
+        /**
+         * A stream over the chunks listed in LIST.
+         * @param repo The .gitlet directory holding the chunks.
+         * @param list The list of chunk IDs, just past its header.
+         */
+        ChunkStream(File repo, InputStream list) {
+            _repo = repo;
+            _list = list;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            while (true) {
+                if (_chunk != null) {
+                    int n = _chunk.read(buf, off, len);
+                    if (n >= 0) {
+                        return n;
+                    }
+                    _chunk.close();
+                    _chunk = null;
+                }
+                byte[] next = _list.readNBytes(ObjectId.BYTES);
+                if (next.length < ObjectId.BYTES) {
+                    return -1;
+                }
+                _chunk = open(_repo, ObjectId.fromBytes(next, 0));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_chunk != null) {
+                _chunk.close();
+            }
+            _list.close();
+        }
+
+        /** The repository holding the chunks. */
+        private final File _repo;
+
+        /** The rest of the list of chunk IDs. */
+        private final InputStream _list;
+
+        /** The chunk being read, or null between chunks. */
+        private InputStream _chunk;
+    }
+
+    /**
+     * Returns the first DELTA_HEADER bytes of a stored blob once any
+     * compression is undone, which is enough to tell whether it is a
+     * delta and against what.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The start of the blob's uncompressed stored form.
+     * @throws IOException If the blob cannot be read.
+     */
+    private static byte[] innerHead(File repo, ObjectId id)
+        throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(
+                openStored(repo, id), Utils.BUFFER_SIZE)) {
+            in.mark(HEADER);
+            byte[] head = in.readNBytes(HEADER);
+            if (typeOf(head) != ZLIB) {
+                in.reset();
+                return in.readNBytes(DELTA_HEADER);
+            }
+            try (InputStream inner = Compression.inflating(repo, in)) {
+                return inner.readNBytes(DELTA_HEADER);
+            }
+        }
+    }
+
+    /**
+     * Reads a blob into memory if it is at most STREAM_LIMIT bytes.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The contents of the blob, or null if it is too large.
+     */
+    private static byte[] readSmall(File repo, ObjectId id) {
+        byte[] result = CACHE.get(id);
+        if (result != null) {
+            return result;
+        }
+        try (InputStream in = open(repo, id)) {
+            result = in.readNBytes(STREAM_LIMIT + 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.length > STREAM_LIMIT ? null : result;
+    }
+
+    /**
+     * Returns a new temporary file in the loose object directory of a
+     * repository. Its name is never a valid ID.
+     * @param repo The .gitlet directory of the repository.
+     * @return The new, empty file.
+     */
+    private static File temporary(File repo) {
+        try {
+            return File.createTempFile("incoming-", ".tmp", looseDir(repo));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file into place as the loose
+     * object ID, or discards it if the object is already stored.
+     * @param repo The .gitlet directory of the repository.
+     * @param tmp The temporary file.
+     * @param id The ID of the blob it holds.
+     * @throws IOException If the file cannot be moved.
+     */
+    private static void install(File repo, File tmp, ObjectId id)
+        throws IOException {
+        if (freshen(repo, id)) {
+            tmp.delete();
+        } else {
+            Files.move(tmp.toPath(), loose(repo, id).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Encodes CONTENTS as a delta against BASE.
+     * @param repo The .gitlet directory of the repository.
+     * @param contents The contents of the new blob.
+     * @param base The ID of the blob to take the delta against.
+     * @return The stored form of the delta, or null if a delta would be
+     *         too deep or not small enough to be worth it.
+     */
+    private static byte[] deltify(File repo, byte[] contents,
+                                  ObjectId base) {
+        byte[] baseHead;
+        try {
+            baseHead = innerHead(repo, base);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int depth = 1;
+        if (typeOf(baseHead) == DELTA) {
+            depth += baseHead[HEADER];
+        }
+        if (depth > MAX_DEPTH) {
+            return null;
+        }
+        byte[] baseBytes = readSmall(repo, base);
+        if (baseBytes == null) {
+            return null;
+        }
+        remember(base, baseBytes);
+        byte[] delta = Delta.compute(baseBytes, contents);
+        if (DELTA_HEADER + delta.length > contents.length / 2) {
+            return null;
+        }
+        byte[] result = new byte[DELTA_HEADER + delta.length];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        result[MAGIC.length] = DELTA;
+        result[HEADER] = (byte) depth;
+        base.copyTo(result, HEADER + 1);
+        System.arraycopy(delta, 0, result, DELTA_HEADER, delta.length);
+        return result;
+    }
+
+    /**
+     * Returns the stored form of an undeltified blob. That is the blob
+     * itself, unless it happens to start with MAGIC, in which case it
+     * is wrapped in a RAW header so it is not mistaken for an encoded
+     * object.
+     * @param contents The contents of the blob.
+     * @return The bytes to store.
+     */
+    static byte[] plain(byte[] contents) {
+        if (!hasMagic(contents)) {
+            return contents;
+        }
+        byte[] result = new byte[HEADER + contents.length];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        result[MAGIC.length] = RAW;
+        System.arraycopy(contents, 0, result, HEADER, contents.length);
+        return result;
+    }
+
+    /**
+     * Returns the encoding of a stored blob.
+     * @param stored The stored bytes of a blob.
+     * @return RAW, DELTA, ZLIB or CHUNKED for encoded blobs, or 0 for a
+     *         plain blob.
+     */
+    static byte typeOf(byte[] stored) {
+        if (hasMagic(stored) && stored.length >= HEADER) {
+            return stored[MAGIC.length];
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the ID of the base of a stored delta.
+     * @param stored The stored bytes of a delta blob.
+     * @return The ID of its base.
+     */
+    static ObjectId baseOf(byte[] stored) {
+        return ObjectId.fromBytes(stored, HEADER + 1);
+    }
+
+    /**
+     * Reports whether DATA starts with MAGIC.
+     * @param data The bytes to check.
+     * @return True if the first bytes of DATA are MAGIC.
+     */
+    private static boolean hasMagic(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a rebuilt blob in the reconstruction cache, dropping the
+     * least recently used blobs once the cache is over CACHE_BYTES.
+     * @param id The ID of the blob.
+     * @param contents The contents of the blob.
+     */
+    private static void remember(ObjectId id, byte[] contents) {
+        if (contents.length > CACHE_BYTES || CACHE.containsKey(id)) {
+            return;
+        }
+        CACHE.put(id, contents);
+        cachedBytes += contents.length;
+        Iterator<byte[]> eldest = CACHE.values().iterator();
+        while (cachedBytes > CACHE_BYTES) {
+            cachedBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Lists the IDs of every blob in a repository, packed or loose.
+     * @param repo The .gitlet directory of the repository.
+     * @return The IDs of the stored blobs, without duplicates.
+     */
+    static ArrayList<ObjectId> ids(File repo) {
+        LinkedHashSet<ObjectId> result = new LinkedHashSet<>();
+        for (PackFile pack : packs(repo)) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                result.add(pack.idAt(k));
+            }
+        }
+        List<String> loose = Utils.plainFilenamesIn(looseDir(repo));
+        if (loose != null) {
+            for (String name : loose) {
+                if (ObjectId.isId(name)) {
+                    result.add(ObjectId.parse(name));
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Moves every loose blob of a repository into a new pack, then
+     * deletes the loose copies.
+     * @param repo The .gitlet directory of the repository.
+     * @return The number of blobs packed.
+     */
+    static int repack(File repo) {
+        File loose = looseDir(repo);
+        List<String> names = Utils.plainFilenamesIn(loose);
+        if (names == null || names.isEmpty()) {
+            return 0;
+        }
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        for (String name : names) {
+            if (ObjectId.isId(name)) {
+                ids.add(ObjectId.parse(name));
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        File packs = packDir(repo);
+        packs.mkdir();
+        PackFile pack = PackFile.write(loose, ids, packs);
+        packs(repo).add(0, pack);
+        for (ObjectId id : ids) {
+            loose(repo, id).delete();
+        }
+        return ids.size();
+    }
+
+    /**
+     * Replaces a pack with a new one holding only some of its objects,
+     * copying each a buffer at a time. The new pack is complete before
+     * the old one is deleted.
+     * @param repo The .gitlet directory of the repository.
+     * @param pack One of the packs of REPO.
+     * @param keep The IDs of the objects in PACK to keep; if empty, the
+     *             pack is simply deleted.
+     * @return The new pack, or null if KEEP is empty.
+     */
+    static PackFile rewritePack(File repo, PackFile pack,
+                                ArrayList<ObjectId> keep) {
+        File packs = packDir(repo);
+        PackFile result = null;
+        if (!keep.isEmpty()) {
+            File scratch = new File(packs, "rewrite");
+            scratch.mkdir();
+            try {
+                for (ObjectId id : keep) {
+                    File copy = new File(scratch, id.toString());
+                    try (InputStream in = pack.open(id)) {
+                        Files.copy(in, copy.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                result = PackFile.write(scratch, keep, packs);
+                packs(repo).add(0, result);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                for (File f : scratch.listFiles()) {
+                    f.delete();
+                }
+                scratch.delete();
+            }
+        }
+        packs(repo).remove(pack);
+        pack.delete();
+        return result;
+    }
+
+    /**
+     * Lists the other blobs a stored blob needs in order to be read: the
+     * base of a delta, or the chunks of a chunked blob.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the blob.
+     * @return The IDs of the blobs it refers to, possibly none.
+     */
+    static ArrayList<ObjectId> references(File repo, ObjectId id) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        try {
+            byte[] inner = innerHead(repo, id);
+            if (typeOf(inner) == DELTA) {
+                result.add(baseOf(inner));
+            } else if (typeOf(inner) == CHUNKED) {
+                result.addAll(chunkIDs(repo, id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the packs of a repository, opening them on first use.
+     * @param repo The .gitlet directory of the repository.
+     * @return The open packs of REPO, newest first.
+     */
+    static ArrayList<PackFile> packs(File repo) {
+        File key = repo.getAbsoluteFile();
+        ArrayList<PackFile> result = OPEN_PACKS.get(key);
+        if (result == null) {
+            result = new ArrayList<>();
+            File dir = packDir(repo);
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0,
+                                name.length() - ".idx".length());
+                        result.add(new PackFile(new File(dir, base + ".pack"),
+                                new File(dir, name)));
+                    }
+                }
+            }
+            OPEN_PACKS.put(key, result);
+        }
+        return result;
+    }
+
+    /** Leading bytes marking a stored blob as encoded rather than plain. */
+    static final byte[] MAGIC = {0, 'g', 'l', 't'};
+
+    /** Size of the header of an encoded blob: MAGIC and a type byte. */
+    static final int HEADER = MAGIC.length + 1;
+
+    /** Type byte of a plain blob wrapped only to escape MAGIC. */
+    static final byte RAW = 'R';
+
+    /** Type byte of a blob stored as a delta. A delta header is followed
+     *  by the chain depth as one byte and the 20-byte ID of the base. */
+    static final byte DELTA = 'D';
+
+    /** Type byte of a compressed object; see Compression. */
+    static final byte ZLIB = 'Z';
+
+    /** Type byte of a blob stored as a list of chunks; see
+     *  writeChunked. */
+    static final byte CHUNKED = 'C';
+
+    /** Size of the header of a chunked blob. */
+    static final int CHUNK_HEADER = HEADER + 8;
+
+    /** Default size from which files are chunked, when chunking is on. */
+    static final int CHUNK_LIMIT = 1 << 20;
+
+    /** Size of the header of a delta blob. */
+    static final int DELTA_HEADER = HEADER + 1 + ObjectId.BYTES;
+
+    /** Deepest delta chain that will be written. */
+    static final int MAX_DEPTH = 10;
+
+    /** Largest file that is read into memory to be stored. */
+    static final int STREAM_LIMIT = 1 << 23;
+
+    /** Most bytes of rebuilt blobs kept in the reconstruction cache. */
+    static final long CACHE_BYTES = 1 << 25;
+
+    /** Name of the log of loose blobs stored again, by time. */
+    private static final String FRESH = "fresh";
+
+    /** Recently rebuilt blobs by ID, least recently used first. Blobs
+     *  are content-addressed, so entries never go stale. */
+    private static final LinkedHashMap<ObjectId, byte[]> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the blobs in CACHE. */
+    private static long cachedBytes;
+
+    /** The packs opened so far in this process, by repository. */
+    private static final HashMap<File, ArrayList<PackFile>> OPEN_PACKS =
+            new HashMap<>();
+}
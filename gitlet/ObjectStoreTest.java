@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of hard-linked checkout.
+ *  @author Andrew Tom
+ */
+public class ObjectStoreTest {
+
+    /** Makes an empty repository in hardlink mode, storing one blob. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        Config.set(_repo, "checkout.mode", "hardlink");
+        ObjectStore.write(_repo, ID, CONTENTS.getBytes());
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /**
+     * Storing a linked blob again leaves the working file's time alone,
+     * and gc still counts the blob as just stored.
+     */
+    @Test
+    public void restoringKeepsLinkedFileTime() throws IOException {
+        File f = new File(_dir, "f.txt");
+        ObjectStore.checkout(_repo, ID, f);
+        assertFalse(Files.getPosixFilePermissions(f.toPath())
+                    .contains(PosixFilePermission.OWNER_WRITE));
+        long old = System.currentTimeMillis() - DAY;
+        f.setLastModified(old);
+        ObjectStore.write(_repo, ID, CONTENTS.getBytes());
+        assertEquals(old, f.lastModified());
+
+        GarbageCollector gc = new GarbageCollector(_repo, DAY / 2, DAY);
+        gc.mark();
+        gc.sweep();
+        assertEquals(0, gc.deadBlobs());
+        assertTrue(ObjectStore.contains(_repo, ID));
+    }
+
+    /** An old loose blob nothing reaches or stored again is collected. */
+    @Test
+    public void unfreshenedBlobIsCollected() {
+        ObjectStore.loose(_repo, ID)
+            .setLastModified(System.currentTimeMillis() - DAY);
+        GarbageCollector gc = new GarbageCollector(_repo, DAY / 2, DAY);
+        gc.mark();
+        gc.sweep();
+        assertEquals(1, gc.deadBlobs());
+    }
+
+    /** Milliseconds in a day. */
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    /** Contents of the blob. */
+    private static final String CONTENTS = "linked\n";
+
+    /** ID of the blob. */
+    private static final ObjectId ID = Utils.sha1Id(CONTENTS);
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
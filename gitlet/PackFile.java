@@ -0,0 +1,424 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * A pack of blobs: one append-only data file holding every object
+ * back to back, plus a sorted index mapping each object's ID to its
+ * offset in the data file. The index is memory-mapped and searched
+ * with a fan-out table, so a lookup touches a handful of pages
+ * instead of a directory entry per blob.
+ *
+ * The data file (pack-NAME.pack) is the magic "GPAK", a version
+ * int and an object count, followed by each object as a long length
+ * and its bytes. The index file (pack-NAME.idx) is the magic "GPIX",
+ * a version int, the object count, 256 cumulative fan-out counts by
+ * first ID byte, the sorted 20-byte IDs, and finally one long offset
+ * per ID.
+ * @author Andrew Tom
+ */
+class PackFile {
+
+    /** Magic number at the start of a pack data file. */
+    static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number at the start of a pack index file. */
+    static final int INDEX_MAGIC = 0x47504958;
+
+    /** Current version of both pack files. */
+    static final int VERSION = 1;
+
+    /** Number of bytes in a binary object ID. */
+    static final int ID_BYTES = 20;
+
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT = 256;
+
+    /** Size of the index header: magic, version and count. */
+    private static final int INDEX_HEADER = 12;
+
+    /** Size of the data file header: magic, version and count. */
+    private static final int PACK_HEADER = 12;
+
+    /** Mask for turning a byte into an unsigned int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * Opens the pack whose data file is PACK and whose index is INDEX.
+     * @param pack The pack-NAME.pack data file.
+     * @param index The matching pack-NAME.idx file.
+     */
+    PackFile(File pack, File index) {
+        _pack = pack;
+        _indexFile = index;
+        try (RandomAccessFile in = new RandomAccessFile(index, "r")) {
+            _index = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, in.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != INDEX_MAGIC || _index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack index %s.", index.getName());
+        }
+        _count = _index.getInt(8);
+        _idStart = INDEX_HEADER + FANOUT * 4;
+        _offsetStart = _idStart + _count * ID_BYTES;
+    }
+
+    /**
+     * Returns the number of objects in this pack.
+     * @return The object count.
+     */
+    int size() {
+        return _count;
+    }
+
+    /**
+     * Returns the data file of this pack.
+     * @return The pack-NAME.pack file.
+     */
+    File getPackFile() {
+        return _pack;
+    }
+
+    /**
+     * Returns the space this pack takes on disk.
+     * @return The combined size of its data and index files.
+     */
+    long bytes() {
+        return _pack.length() + _indexFile.length();
+    }
+
+    /**
+     * Deletes the data and index files of this pack. The pack must not
+     * be used afterwards.
+     */
+    void delete() {
+        _pack.delete();
+        _indexFile.delete();
+    }
+
+    /**
+     * Finds where an object starts in the data file.
+     * @param id The ID of the object.
+     * @return Its offset in the data file, or -1 if it is not packed here.
+     */
+    long find(ObjectId id) {
+        byte[] key = id.toBytes();
+        int first = id.firstByte();
+        int lo = first == 0 ? 0 : _index.getInt(INDEX_HEADER + (first - 1) * 4);
+        int hi = _index.getInt(INDEX_HEADER + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return _index.getLong(_offsetStart + mid * 8);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reports whether this pack holds an object.
+     * @param id The ID of the object.
+     * @return True if the object is in this pack.
+     */
+    boolean contains(ObjectId id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Returns the ID of the Kth object in ID order.
+     * @param k The position of the object in the index.
+     * @return The ID.
+     */
+    ObjectId idAt(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        _index.get(_idStart + k * ID_BYTES, raw);
+        return ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Reads an object out of this pack.
+     * @param id The ID of the object.
+     * @return The stored bytes of the object, or null if it is not here.
+     */
+    byte[] read(ObjectId id) {
+        long offset = find(id);
+        if (offset < 0) {
+            return null;
+        }
+        try (FileChannel data = FileChannel.open(_pack.toPath())) {
+            ByteBuffer len = ByteBuffer.allocate(8);
+            readFully(data, len, offset);
+            long length = len.getLong(0);
+            if (length > Integer.MAX_VALUE) {
+                throw Utils.error("Packed object %s is too large.", id);
+            }
+            ByteBuffer body = ByteBuffer.allocate((int) length);
+            readFully(data, body, offset + 8);
+            return body.array();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens a stream over an object in this pack, for objects too large
+     * to read into memory.
+     * @param id The ID of the object.
+     * @return The stored bytes of the object as a stream, or null if it
+     *         is not here.
+     */
+    InputStream open(ObjectId id) {
+        long offset = find(id);
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            FileChannel data = FileChannel.open(_pack.toPath());
+            try {
+                ByteBuffer len = ByteBuffer.allocate(8);
+                readFully(data, len, offset);
+                data.position(offset + 8);
+                return new Slice(Channels.newInputStream(data),
+                        len.getLong(0));
+            } catch (IOException | RuntimeException excp) {
+                data.close();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Copies an object in this pack to a channel with transferTo, so
+     * that it need not pass through the Java heap.
+     * @param id The ID of the object.
+     * @param out Where to write the stored bytes of the object.
+     * @return True if the object was copied, false if it is not here.
+     * @throws IOException If the pack or OUT fails.
+     */
+    boolean transferTo(ObjectId id, WritableByteChannel out)
+        throws IOException {
+        long offset = find(id);
+        if (offset < 0) {
+            return false;
+        }
+        try (FileChannel data = FileChannel.open(_pack.toPath())) {
+            ByteBuffer len = ByteBuffer.allocate(8);
+            readFully(data, len, offset);
+            long length = len.getLong(0);
+            for (long done = 0, n; done < length; done += n) {
+                n = data.transferTo(offset + 8 + done, length - done, out);
+                if (n <= 0) {
+                    throw new IOException("truncated pack file");
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the objects named by IDS, taken from the loose files in
+     * BLOBS, into a new pack under PACKDIR.
+     * @param blobs The loose object directory.
+     * @param ids The IDs of the objects to pack.
+     * @param packDir The directory holding packs.
+     * @return The newly written pack.
+     */
+    static PackFile write(File blobs, ArrayList<ObjectId> ids,
+                          File packDir) {
+        Collections.sort(ids);
+        StringBuilder names = new StringBuilder();
+        for (ObjectId id : ids) {
+            names.append(id);
+        }
+        String name = "pack-" + Utils.sha1(names.toString());
+        File pack = new File(packDir, name + ".pack");
+        File index = new File(packDir, name + ".idx");
+        File tmpPack = new File(packDir, name + ".pack.tmp");
+        File tmpIndex = new File(packDir, name + ".idx.tmp");
+        long[] offsets = new long[ids.size()];
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpPack.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                long offset = PACK_HEADER;
+                for (int k = 0; k < ids.size(); k += 1) {
+                    File loose = new File(blobs, ids.get(k).toString());
+                    long length = loose.length();
+                    offsets[k] = offset;
+                    out.writeLong(length);
+                    Files.copy(loose.toPath(), out);
+                    offset += 8 + length;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpIndex.toPath())))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                int[] fanout = new int[FANOUT];
+                for (ObjectId id : ids) {
+                    fanout[id.firstByte()] += 1;
+                }
+                int total = 0;
+                for (int count : fanout) {
+                    total += count;
+                    out.writeInt(total);
+                }
+                for (ObjectId id : ids) {
+                    out.write(id.toBytes());
+                }
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+            }
+            Files.move(tmpPack.toPath(), pack.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpIndex.toPath(), index.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmpPack.delete();
+            tmpIndex.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new PackFile(pack, index);
+    }
+
+    /**
+     * Compares the Kth ID in the index against KEY, unsigned bytewise.
+     * @param k The position in the index.
+     * @param key The binary ID being searched for.
+     * @return Negative, zero or positive as the Kth ID is less than,
+     *         equal to or greater than KEY.
+     */
+    private int compareAt(int k, byte[] key) {
+        int base = _idStart + k * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int a = _index.get(base + i) & BYTE_MASK;
+            int b = key[i] & BYTE_MASK;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Fills BUF from DATA starting at POSITION.
+     * @param data The channel to read.
+     * @param buf The buffer to fill.
+     * @param position The file position to start at.
+     * @throws IOException If the file ends early.
+     */
+    private static void readFully(FileChannel data, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = data.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("truncated pack file");
+            }
+        }
+    }
+
+    /** A stream over the next LIMIT bytes of another stream. */
+    private static class Slice extends FilterInputStream {
+
+        /**
+         * A stream over the first LIMIT bytes of IN.
+         * @param in The underlying stream.
+         * @param limit The number of bytes to deliver.
+         */
+        Slice(InputStream in, long limit) {
+            super(in);
+            _left = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_left <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                _left -= 1;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (_left <= 0) {
+                return -1;
+            }
+            int n = in.read(buf, off, (int) Math.min(len, _left));
+            if (n > 0) {
+                _left -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, _left));
+            _left -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), _left);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Number of bytes still to be delivered. */
+        private long _left;
+    }
+
+    /** The data file of this pack. */
+    private final File _pack;
+
+    /** The index file of this pack. */
+    private final File _indexFile;
+
+    /** The memory-mapped index file. */
+    private final MappedByteBuffer _index;
+
+    /** Number of objects in this pack. */
+    private final int _count;
+
+    /** Offset of the sorted ID table in the index. */
+    private final int _idStart;
+
+    /** Offset of the offset table in the index. */
+    private final int _offsetStart;
+}
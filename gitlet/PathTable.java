@@ -0,0 +1,62 @@
+package gitlet;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The paths of the files seen so far, each stored once and numbered in
+ * the order they were first seen. FileTables are keyed by these
+ * numbers, so every commit that tracks a path shares its one String.
+ * Numbers are not stored anywhere, and only last as long as the
+ * process.
+ * @author Andrew Tom
+ */
+class PathTable {
+
+    /**
+     * Returns the number of a path, numbering it if it is new.
+     * @param path The path.
+     * @return Its number.
+     */
+    static int intern(String path) {
+        Integer id = IDS.get(path);
+        if (id == null) {
+            id = PATHS.size();
+            IDS.put(path, id);
+            PATHS.add(path);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of a path without numbering it.
+     * @param path The path.
+     * @return Its number, or -1 if it has none.
+     */
+    static int find(String path) {
+        Integer id = IDS.get(path);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the path with a number.
+     * @param id The number, as returned by intern.
+     * @return The path.
+     */
+    static String path(int id) {
+        return PATHS.get(id);
+    }
+
+    /**
+     * Returns how many paths have been numbered.
+     * @return The number of paths.
+     */
+    static int size() {
+        return PATHS.size();
+    }
+
+    /** The number of each path. */
+    private static final HashMap<String, Integer> IDS = new HashMap<>();
+
+    /** Each path, by number. */
+    private static final ArrayList<String> PATHS = new ArrayList<>();
+}
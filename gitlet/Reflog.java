@@ -0,0 +1,314 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The history of a branch: every change Refs made to it, oldest first,
+ * so that heads a branch has left behind can be found again without
+ * reading every commit.
+ *
+ * The log of branch NAME is .gitlet/logs/NAME. It holds the magic
+ * "GLRL" and a version int, then one RECORD-byte record per change:
+ * the old and new IDs (all zeros for none), the time in milliseconds,
+ * and the command that made the change as a length short and up to
+ * COMMAND_BYTES bytes of UTF-8, cut short if longer. Records are only
+ * ever appended, each with a single write and an fsync, and since they
+ * all have one size the K'th is read directly from the memory-mapped
+ * file. Times only go forward unless the clock is set back, so a time
+ * is found by binary search. gc expires records older than its grace
+ * period, so that a log never names a commit it has collected.
+ * @author Andrew Tom
+ */
+class Reflog {
+
+    /** Magic number at the start of a log. */
+    static final int MAGIC = 0x474c524c;
+
+    /** Current version of the log. */
+    static final int VERSION = 1;
+
+    /**
+     * Records a change to a branch. Called by Refs while it holds the
+     * branch's lock.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the branch.
+     * @param old Its head before, or null if it did not exist.
+     * @param id Its head after, or null if it was deleted.
+     * @param command What made the change.
+     */
+    static void append(File repo, String name, ObjectId old, ObjectId id,
+                       String command) {
+        File log = new File(new File(repo, LOGS), name);
+        log.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(log.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER + RECORD);
+            if (out.size() == 0) {
+                buf.putInt(MAGIC).putInt(VERSION);
+            }
+            buf.put(bytes(old)).put(bytes(id))
+                .putLong(System.currentTimeMillis());
+            byte[] text = command.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(text.length, COMMAND_BYTES);
+            while (length < text.length && (text[length] & 0xc0) == 0x80) {
+                length -= 1;
+            }
+            buf.putShort((short) length).put(text, 0, length);
+            buf.position(buf.position() + COMMAND_BYTES - length);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            out.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the names of every branch with a log, including deleted
+     * branches.
+     * @param repo The .gitlet directory of the repository.
+     * @return The names.
+     */
+    static List<String> names(File repo) {
+        ArrayList<String> result = new ArrayList<>();
+        names(new File(repo, LOGS), "", result);
+        return result;
+    }
+
+    /**
+     * Drops the records of a branch's log made before a time, deleting
+     * the log if none are left. Called by Refs while it holds the
+     * branch's lock, so that no record is appended meanwhile.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the branch.
+     * @param cutoff The time in milliseconds before which records go.
+     * @return The number of records dropped.
+     */
+    static int expire(File repo, String name, long cutoff) {
+        Reflog log = open(repo, name);
+        ArrayList<Integer> kept = new ArrayList<>();
+        for (int k = 0; k < log.size(); k += 1) {
+            if (log.time(k) >= cutoff) {
+                kept.add(k);
+            }
+        }
+        int dropped = log.size() - kept.size();
+        File file = new File(new File(repo, LOGS), name);
+        if (dropped == 0) {
+            return 0;
+        } else if (kept.isEmpty()) {
+            file.delete();
+            return dropped;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + kept.size() * RECORD);
+        buf.putInt(MAGIC).putInt(VERSION);
+        for (int k : kept) {
+            ByteBuffer record = log._log.duplicate();
+            record.position(log.offset(k)).limit(log.offset(k) + RECORD);
+            buf.put(record);
+        }
+        buf.flip();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                out.force(false);
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return dropped;
+    }
+
+    /**
+     * Opens the log of a branch.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the branch.
+     * @return The log, empty if the branch has never changed.
+     */
+    static Reflog open(File repo, String name) {
+        File log = new File(new File(repo, LOGS), name);
+        if (!log.isFile()) {
+            return new Reflog(null);
+        }
+        try (FileChannel in = FileChannel.open(log.toPath())) {
+            MappedByteBuffer mapped =
+                    in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (mapped.capacity() < HEADER || mapped.getInt(0) != MAGIC
+                    || mapped.getInt(Integer.BYTES) != VERSION) {
+                throw Utils.error("Corrupt reflog: %s", name);
+            }
+            return new Reflog(mapped);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of changes logged.
+     * @return The number of records.
+     */
+    int size() {
+        return _log == null ? 0 : (_log.capacity() - HEADER) / RECORD;
+    }
+
+    /**
+     * Returns the head a branch had before a change.
+     * @param k The number of the change, from 0 for the oldest.
+     * @return The old head, or null if the change created the branch.
+     */
+    ObjectId oldId(int k) {
+        return id(offset(k));
+    }
+
+    /**
+     * Returns the head a branch had after a change.
+     * @param k The number of the change, from 0 for the oldest.
+     * @return The new head, or null if the change deleted the branch.
+     */
+    ObjectId newId(int k) {
+        return id(offset(k) + ObjectId.BYTES);
+    }
+
+    /**
+     * Returns when a change was made.
+     * @param k The number of the change, from 0 for the oldest.
+     * @return The time in milliseconds since the epoch.
+     */
+    long time(int k) {
+        return _log.getLong(offset(k) + 2 * ObjectId.BYTES);
+    }
+
+    /**
+     * Returns the command that made a change.
+     * @param k The number of the change, from 0 for the oldest.
+     * @return The command, perhaps cut short.
+     */
+    String command(int k) {
+        int at = offset(k) + 2 * ObjectId.BYTES + Long.BYTES;
+        byte[] text = new byte[_log.getShort(at)];
+        _log.get(at + Short.BYTES, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the last change made at or before a time.
+     * @param time A time in milliseconds since the epoch.
+     * @return The number of the change, or -1 if every change is later.
+     */
+    int before(long time) {
+        int lo = 0, hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * A log.
+     * @param log The mapped log file, or null if there is none.
+     */
+    private Reflog(MappedByteBuffer log) {
+        _log = log;
+    }
+
+    /**
+     * Returns where a record starts.
+     * @param k The number of the record.
+     * @return Its offset in the file.
+     */
+    private int offset(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException(Integer.toString(k));
+        }
+        return HEADER + k * RECORD;
+    }
+
+    /**
+     * Reads an ID from the log.
+     * @param at Where it starts.
+     * @return The ID, or null if it is all zeros.
+     */
+    private ObjectId id(int at) {
+        byte[] raw = new byte[ObjectId.BYTES];
+        _log.get(at, raw);
+        return Arrays.equals(raw, NONE) ? null : ObjectId.fromBytes(raw, 0);
+    }
+
+    /**
+     * Adds the names of the logs under a directory to a list, skipping
+     * temporary files.
+     * @param dir The directory.
+     * @param prefix The name of DIR relative to logs, with a trailing
+     *               slash, or "" for logs itself.
+     * @param result Receives the name of each branch.
+     */
+    private static void names(File dir, String prefix,
+                              List<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                names(file, prefix + file.getName() + "/", result);
+            } else if (!file.getName().endsWith(".tmp")) {
+                result.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes an ID is logged as.
+     * @param id The ID, or null.
+     * @return Its raw bytes, or all zeros for null.
+     */
+    private static byte[] bytes(ObjectId id) {
+        return id == null ? NONE : id.toBytes();
+    }
+
+    /** Name of the directory of logs. */
+    private static final String LOGS = "logs";
+
+    /** Bytes before the first record. */
+    private static final int HEADER = 8;
+
+    /** Most bytes of command kept in a record. */
+    private static final int COMMAND_BYTES = 78;
+
+    /** Bytes in a record. */
+    private static final int RECORD = 2 * ObjectId.BYTES + Long.BYTES
+        + Short.BYTES + COMMAND_BYTES;
+
+    /** How a missing ID is logged. */
+    private static final byte[] NONE = new byte[ObjectId.BYTES];
+
+    /** The mapped log, or null if there is none. */
+    private final MappedByteBuffer _log;
+}
@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of expiring reflog records.
+ *  @author Andrew Tom
+ */
+public class ReflogTest {
+
+    /** Makes an empty .gitlet directory. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+    }
+
+    /** Deletes it. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** Only the records made before the cutoff go, oldest first. */
+    @Test
+    public void expiresOldRecords() throws InterruptedException {
+        Reflog.append(_repo, "origin/master", null, A, "fetch");
+        Thread.sleep(STEP);
+        long cutoff = System.currentTimeMillis();
+        Thread.sleep(STEP);
+        Reflog.append(_repo, "origin/master", A, B, "fetch");
+        assertEquals(0, Refs.expireLogs(_repo, 0));
+        assertEquals(1, Refs.expireLogs(_repo, cutoff));
+        Reflog log = Reflog.open(_repo, "origin/master");
+        assertEquals(1, log.size());
+        assertEquals(A, log.oldId(0));
+        assertEquals(B, log.newId(0));
+    }
+
+    /** A log with nothing left is deleted. */
+    @Test
+    public void deletesEmptyLog() {
+        Reflog.append(_repo, "master", null, A, "init");
+        Reflog.append(_repo, "master", A, null, "rm-branch");
+        assertEquals(2, Refs.expireLogs(_repo,
+                System.currentTimeMillis() + STEP));
+        assertEquals(0, Reflog.open(_repo, "master").size());
+        assertTrue(Reflog.names(_repo).isEmpty());
+    }
+
+    /** Milliseconds between records made at different times. */
+    private static final long STEP = 20;
+
+    /** Commit IDs. */
+    private static final ObjectId A = Utils.sha1Id("a"), B = Utils.sha1Id("b");
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
@@ -0,0 +1,413 @@
+package gitlet;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The branches of a repository, local and remote-tracking, and which
+ * of them is checked out.
+ *
+ * Each branch is a small file under .gitlet/refs named after it (so
+ * "origin/master" is refs/origin/master) holding the hex ID of its head
+ * and a newline. Branches that have not moved since the last
+ * packRefs are instead lines of .gitlet/packedRefs, each an ID, a space
+ * and a name, sorted by name; a file under refs overrides a packed
+ * line. .gitlet/HEAD names the current branch as "ref: NAME".
+ *
+ * Every change is a compare-and-swap: the new contents are written to
+ * NAME.lock, created only if it does not exist, the branch is checked
+ * to still hold the ID the caller expects, and the lock file is then
+ * renamed over the branch. Two commands updating one branch cannot
+ * both succeed, and readers never see a partial file. Each change is
+ * logged to the branch's Reflog while the lock is held.
+ *
+ * Repositories made before refs keep their branches in a serialized
+ * FatMap at .gitlet/headPointers, which is split into refs the first
+ * time they are used.
+ * @author Andrew Tom
+ */
+class Refs {
+
+    /**
+     * Returns the name of the current branch.
+     * @param repo The .gitlet directory of the repository.
+     * @return The branch HEAD refers to.
+     */
+    static String head(File repo) {
+        upgrade(repo);
+        String head = Utils.readContentsAsString(new File(repo, HEAD)).trim();
+        if (!head.startsWith(SYMBOLIC)) {
+            throw Utils.error("Malformed HEAD: %s", head);
+        }
+        return head.substring(SYMBOLIC.length());
+    }
+
+    /**
+     * Makes a branch current.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The branch HEAD is to refer to.
+     */
+    static void setHead(File repo, String name) {
+        upgrade(repo);
+        File head = new File(repo, HEAD);
+        File lock = lock(head);
+        commit(lock, head, SYMBOLIC + name + "\n");
+    }
+
+    /**
+     * Returns the head of a branch.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the branch.
+     * @return The ID of its head, or null if there is no such branch.
+     */
+    static ObjectId get(File repo, String name) {
+        upgrade(repo);
+        File loose = new File(new File(repo, REFS), name);
+        if (loose.isFile()) {
+            return ObjectId.parse(
+                    Utils.readContentsAsString(loose).trim());
+        }
+        return packed(repo).get(name);
+    }
+
+    /**
+     * Returns every branch.
+     * @param repo The .gitlet directory of the repository.
+     * @return The head of each branch, by name.
+     */
+    static TreeMap<String, ObjectId> all(File repo) {
+        upgrade(repo);
+        TreeMap<String, ObjectId> result = packed(repo);
+        loose(new File(repo, REFS), "", result);
+        return result;
+    }
+
+    /**
+     * Moves, creates or deletes a branch, provided it still has the
+     * head the caller last saw.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the branch.
+     * @param expected The head the branch must have, or null if it must
+     *                 not exist.
+     * @param id The new head, or null to delete the branch.
+     * @param command What is making the change, for the branch's
+     *                Reflog.
+     * @throws GitletException If another command holds the branch's
+     *                         lock, or has moved it, or a new branch's
+     *                         name is not allowed.
+     */
+    static void update(File repo, String name, ObjectId expected,
+                       ObjectId id, String command) {
+        upgrade(repo);
+        if (expected == null && id != null) {
+            checkName(repo, name);
+        }
+        File loose = new File(new File(repo, REFS), name);
+        File lock = lock(loose);
+        ObjectId current;
+        try {
+            current = get(repo, name);
+        } catch (RuntimeException excp) {
+            lock.delete();
+            throw excp;
+        }
+        if (!Objects.equals(current, expected)) {
+            lock.delete();
+            throw Utils.error("Branch %s was changed by another command.",
+                    name);
+        }
+        try {
+            Reflog.append(repo, name, current, id, command);
+        } catch (RuntimeException excp) {
+            lock.delete();
+            throw excp;
+        }
+        if (id != null) {
+            commit(lock, loose, id + "\n");
+            return;
+        }
+        try {
+            if (packed(repo).containsKey(name)) {
+                File packedRefs = new File(repo, PACKED);
+                File packLock = lock(packedRefs);
+                TreeMap<String, ObjectId> packed = packed(repo);
+                packed.remove(name);
+                commit(packLock, packedRefs, format(packed));
+            }
+            loose.delete();
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /**
+     * Checks that a new branch may take a name. Each of its parts
+     * between slashes becomes a file or directory under refs and logs,
+     * so no part may be empty, "." or "..", or end in a suffix used for
+     * lock or temporary files, and the name may not be a directory of
+     * an existing branch or log, nor lie under one.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of the new branch.
+     * @throws GitletException If the name is not allowed.
+     */
+    static void checkName(File repo, String name) {
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")) {
+                throw Utils.error("Invalid branch name %s: it has an "
+                        + "empty, '.' or '..' part.", name);
+            }
+            if (part.endsWith(LOCK) || part.endsWith(TMP)) {
+                throw Utils.error("Invalid branch name %s: no part may "
+                        + "end in %s or %s.", name, LOCK, TMP);
+            }
+        }
+        for (String other : all(repo).keySet()) {
+            if (nested(name, other)) {
+                throw Utils.error("Branch name %s conflicts with branch %s.",
+                        name, other);
+            }
+        }
+        for (String other : Reflog.names(repo)) {
+            if (nested(name, other)) {
+                throw Utils.error("Branch name %s conflicts with the "
+                        + "reflog of %s.", name, other);
+            }
+        }
+    }
+
+    /**
+     * Moves every branch into packedRefs, so that a repository with
+     * many branches that rarely move keeps them in one file. A branch
+     * updated while this runs keeps its newer file.
+     * @param repo The .gitlet directory of the repository.
+     */
+    static void pack(File repo) {
+        upgrade(repo);
+        File packedRefs = new File(repo, PACKED);
+        File packLock = lock(packedRefs);
+        TreeMap<String, ObjectId> loose = new TreeMap<>();
+        loose(new File(repo, REFS), "", loose);
+        TreeMap<String, ObjectId> packed = packed(repo);
+        packed.putAll(loose);
+        commit(packLock, packedRefs, format(packed));
+        for (Map.Entry<String, ObjectId> ref : loose.entrySet()) {
+            File file = new File(new File(repo, REFS), ref.getKey());
+            File lock;
+            try {
+                lock = lock(file);
+            } catch (GitletException excp) {
+                continue;
+            }
+            if (file.isFile() && ref.getValue().equals(ObjectId.parse(
+                    Utils.readContentsAsString(file).trim()))) {
+                file.delete();
+            }
+            lock.delete();
+        }
+    }
+
+    /**
+     * Expires the records of every Reflog made before a time, holding
+     * each branch's lock meanwhile. A branch another command is
+     * updating keeps its log whole.
+     * @param repo The .gitlet directory of the repository.
+     * @param cutoff The time in milliseconds before which records go.
+     * @return The number of records dropped.
+     */
+    static int expireLogs(File repo, long cutoff) {
+        int result = 0;
+        for (String name : Reflog.names(repo)) {
+            File lock;
+            try {
+                lock = lock(new File(new File(repo, REFS), name));
+            } catch (GitletException excp) {
+                continue;
+            }
+            try {
+                result += Reflog.expire(repo, name, cutoff);
+            } finally {
+                lock.delete();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets up the refs of a new repository.
+     * @param repo The .gitlet directory of the repository.
+     * @param name The name of its first branch.
+     * @param id The head of its first branch.
+     */
+    static void init(File repo, String name, ObjectId id) {
+        new File(repo, REFS).mkdir();
+        setHead(repo, name);
+        update(repo, name, null, id, "init");
+    }
+
+    /**
+     * Splits the FatMap of a repository made before refs into refs,
+     * if it has not been already.
+     * @param repo The .gitlet directory of the repository.
+     */
+    private static void upgrade(File repo) {
+        File legacy = new File(repo, LEGACY);
+        if (!legacy.isFile()) {
+            return;
+        }
+        FatMap pointers = Utils.readObject(legacy, FatMap.class);
+        File refs = new File(repo, REFS);
+        refs.mkdir();
+        for (String name : pointers.keySet()) {
+            if (!name.equals(LEGACY_CURRENT)) {
+                File loose = new File(refs, name);
+                loose.getParentFile().mkdirs();
+                Utils.writeContents(loose, pointers.get(name) + "\n");
+            }
+        }
+        Utils.writeContents(new File(repo, HEAD),
+                SYMBOLIC + pointers.get(LEGACY_CURRENT) + "\n");
+        legacy.delete();
+    }
+
+    /**
+     * Reports whether one branch name is a directory of another.
+     * @param a One name.
+     * @param b Another.
+     * @return True if either lies under the other.
+     */
+    private static boolean nested(String a, String b) {
+        return a.startsWith(b + "/") || b.startsWith(a + "/");
+    }
+
+    /**
+     * Takes the lock of a ref file.
+     * @param file The ref file.
+     * @return The lock file, which the caller must rename or delete.
+     * @throws GitletException If another command holds the lock.
+     */
+    private static File lock(File file) {
+        File lock = new File(file.getPath() + LOCK);
+        lock.getParentFile().mkdirs();
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            throw Utils.error("Unable to lock %s: another command is "
+                    + "updating it.", file.getName());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return lock;
+    }
+
+    /**
+     * Writes the new contents of a ref file to its lock, forces them to
+     * disk and renames the lock over the file, releasing it.
+     * @param lock The lock, as returned by lock.
+     * @param file The ref file.
+     * @param contents Its new contents.
+     */
+    private static void commit(File lock, File file, String contents) {
+        try {
+            try (FileOutputStream out = new FileOutputStream(lock)) {
+                out.write(contents.getBytes(StandardCharsets.UTF_8));
+                out.getChannel().force(false);
+            }
+            Files.move(lock.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            lock.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Reads packedRefs.
+     * @param repo The .gitlet directory of the repository.
+     * @return The head of each packed branch, by name.
+     */
+    private static TreeMap<String, ObjectId> packed(File repo) {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        File packedRefs = new File(repo, PACKED);
+        if (!packedRefs.isFile()) {
+            return result;
+        }
+        for (String line
+                 : Utils.readContentsAsString(packedRefs).split("\n")) {
+            if (line.length() > Utils.UID_LENGTH) {
+                result.put(line.substring(Utils.UID_LENGTH + 1),
+                        ObjectId.parse(line.substring(0,
+                                Utils.UID_LENGTH)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents of packedRefs holding some branches.
+     * @param refs The head of each branch, by name.
+     * @return The lines of packedRefs.
+     */
+    private static String format(TreeMap<String, ObjectId> refs) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            result.append(ref.getValue()).append(' ')
+                .append(ref.getKey()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Adds the ref files under a directory to a map, skipping locks.
+     * @param dir The directory.
+     * @param prefix The name of DIR relative to refs, with a trailing
+     *               slash, or "" for refs itself.
+     * @param result Receives the head of each branch, by name.
+     */
+    private static void loose(File dir, String prefix,
+                              TreeMap<String, ObjectId> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                loose(file, prefix + file.getName() + "/", result);
+            } else if (!file.getName().endsWith(LOCK)) {
+                result.put(prefix + file.getName(), ObjectId.parse(
+                        Utils.readContentsAsString(file).trim()));
+            }
+        }
+    }
+
+    /** Name of the file naming the current branch. */
+    private static final String HEAD = "HEAD";
+
+    /** Name of the directory of ref files. */
+    private static final String REFS = "refs";
+
+    /** Name of the file of packed refs. */
+    private static final String PACKED = "packedRefs";
+
+    /** Name of the FatMap of branches of repositories made before refs. */
+    private static final String LEGACY = "headPointers";
+
+    /** Key of the current branch in the legacy FatMap. */
+    private static final String LEGACY_CURRENT = "current";
+
+    /** Prefix of the contents of HEAD. */
+    private static final String SYMBOLIC = "ref: ";
+
+    /** Suffix of lock files. */
+    private static final String LOCK = ".lock";
+
+    /** Suffix of the temporary files of reflogs. */
+    private static final String TMP = ".tmp";
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the names a new branch may take.
+ *  @author Andrew Tom
+ */
+public class RefsTest {
+
+    /** Makes a .gitlet directory with branches master and origin/main. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        Refs.init(_repo, "master", A);
+        Refs.update(_repo, "origin/main", null, A, "fetch");
+    }
+
+    /** Deletes it. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** Names that cannot be laid out as files are refused. */
+    @Test
+    public void rejectsBadParts() {
+        for (String name : new String[] {"", "a//b", "/a", "a/", ".", "..",
+                                         "a/../b", "a/./b", "a.lock",
+                                         "a.lock/b", "a.tmp"}) {
+            assertRejected(name);
+        }
+    }
+
+    /** A name may not be a directory of a branch, or lie under one. */
+    @Test
+    public void rejectsNestedNames() {
+        assertRejected("origin");
+        assertRejected("master/topic");
+        assertRejected("origin/main/topic");
+        Refs.update(_repo, "origin/dev", null, A, "fetch");
+        Refs.update(_repo, "topic", null, A, "branch");
+        assertEquals(A, Refs.get(_repo, "origin/dev"));
+        assertEquals(A, Refs.get(_repo, "topic"));
+    }
+
+    /** The log of a deleted branch still holds its name's place. */
+    @Test
+    public void rejectsNameUnderLog() {
+        Refs.update(_repo, "topic", null, A, "branch");
+        Refs.update(_repo, "topic", A, null, "rm-branch");
+        assertNull(Refs.get(_repo, "topic"));
+        assertRejected("topic/next");
+    }
+
+    /**
+     * Checks that creating a branch is refused with a GitletException
+     * and leaves no trace.
+     * @param name The name of the branch.
+     */
+    private void assertRejected(String name) {
+        TreeMap<String, ObjectId> before = Refs.all(_repo);
+        try {
+            Refs.update(_repo, name, null, A, "branch");
+            fail("accepted " + name);
+        } catch (GitletException e) {
+            assertNotNull(e.getMessage());
+        }
+        assertEquals(before, Refs.all(_repo));
+    }
+
+    /** A commit ID. */
+    private static final ObjectId A = Utils.sha1Id("a");
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
@@ -0,0 +1,324 @@
+package gitlet;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The state of a repository as one command sees it: the current
+ * branch, the branches, the head commit and the staging area. Main
+ * makes one per command. Each piece is loaded once, the first time it
+ * is asked for, and kept; changes are only made to the copies in
+ * memory until flush writes each changed file once, branches first,
+ * then HEAD, then the index. A command that fails before flushing
+ * leaves the repository as it found it. Each file is replaced whole,
+ * but the files are not replaced together: if flush fails part way,
+ * as when another command has moved a branch, the files before the
+ * failure are written and those after it are not.
+ *
+ * Every file the session reads or writes is counted, so tests can
+ * check how much work a command does.
+ * @author Andrew Tom
+ */
+class Repository {
+
+    /**
+     * A session on a repository.
+     * @param repo The .gitlet directory of the repository.
+     */
+    Repository(File repo) {
+        _repo = repo;
+    }
+
+    /**
+     * Returns the .gitlet directory of the repository.
+     * @return The directory.
+     */
+    File dir() {
+        return _repo;
+    }
+
+    /**
+     * Returns the name of the current branch.
+     * @return The branch HEAD refers to.
+     */
+    String branch() {
+        if (_branch == null) {
+            _reads += 1;
+            _branch = Refs.head(_repo);
+        }
+        return _branch;
+    }
+
+    /**
+     * Returns the head of a branch.
+     * @param name The name of the branch.
+     * @return Its head, or null if there is no such branch.
+     */
+    ObjectId branchId(String name) {
+        if (!_branches.containsKey(name) && !_allBranches) {
+            _reads += 1;
+            _branches.put(name, Refs.get(_repo, name));
+        }
+        return _branches.get(name);
+    }
+
+    /**
+     * Returns every branch.
+     * @return The head of each branch, by name.
+     */
+    TreeMap<String, ObjectId> branches() {
+        if (!_allBranches) {
+            _reads += 1;
+            TreeMap<String, ObjectId> stored = Refs.all(_repo);
+            for (String name : _updates.keySet()) {
+                stored.put(name, _branches.get(name));
+            }
+            _branches.clear();
+            _branches.putAll(stored);
+            _allBranches = true;
+        }
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> ref : _branches.entrySet()) {
+            if (ref.getValue() != null) {
+                result.put(ref.getKey(), ref.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ID of the head commit of the current branch.
+     * @return The ID.
+     */
+    ObjectId headId() {
+        return branchId(branch());
+    }
+
+    /**
+     * Returns the head commit of the current branch.
+     * @return The commit.
+     */
+    Commit head() {
+        if (_head == null || !_head.getID().equals(headId())) {
+            _reads += 1;
+            _head = Commit.retrieve(headId());
+        }
+        return _head;
+    }
+
+    /**
+     * Moves, creates or deletes a branch. The change is made in
+     * storage by flush, provided no other command has changed the
+     * branch since this session read it.
+     * @param name The name of the branch.
+     * @param id Its new head, or null to delete it.
+     * @param command What is making the change, for the reflog.
+     * @throws GitletException If a new branch's name is not allowed.
+     */
+    void updateBranch(String name, ObjectId id, String command) {
+        ObjectId old = branchId(name);
+        if (old == null && id != null) {
+            Refs.checkName(_repo, name);
+        }
+        if (!_updates.containsKey(name)) {
+            _expected.put(name, old);
+        }
+        _branches.put(name, id);
+        _updates.put(name, command);
+    }
+
+    /**
+     * Moves the current branch.
+     * @param id Its new head.
+     * @param command What is moving it, for the reflog.
+     */
+    void moveBranch(ObjectId id, String command) {
+        updateBranch(branch(), id, command);
+    }
+
+    /**
+     * Makes another branch current.
+     * @param name The branch.
+     */
+    void switchBranch(String name) {
+        _branch = name;
+        _headChanged = true;
+    }
+
+    /**
+     * Returns the staging area and what is known of the working files.
+     * @return The index.
+     */
+    Index index() {
+        if (_index == null) {
+            _reads += 1;
+            _index = Index.read(_repo);
+        }
+        return _index;
+    }
+
+    /**
+     * Returns the files staged for addition.
+     * @return The ID of the blob staged for each, by name.
+     */
+    TreeMap<String, ObjectId> added() {
+        return index().added();
+    }
+
+    /**
+     * Returns the files staged for removal.
+     * @return Their names.
+     */
+    TreeSet<String> removed() {
+        return index().removed();
+    }
+
+    /**
+     * Reports whether anything is staged.
+     * @return True if any file is staged for addition or removal.
+     */
+    boolean hasStagedChanges() {
+        return !added().isEmpty() || !removed().isEmpty();
+    }
+
+    /**
+     * Stages a file for addition. The blob must already be stored, and
+     * the working file must hold its contents.
+     * @param name The name of the file.
+     * @param id The ID of the blob holding its staged contents.
+     */
+    void stage(String name, ObjectId id) {
+        index().add(name, id);
+    }
+
+    /**
+     * Stages a file for removal.
+     * @param name The name of the file.
+     */
+    void stageRemoval(String name) {
+        index().remove(name);
+    }
+
+    /**
+     * Removes a file from both parts of the staging area.
+     * @param name The name of the file.
+     */
+    void unstage(String name) {
+        index().unstage(name);
+    }
+
+    /**
+     * Empties the staging area.
+     */
+    void clearStage() {
+        index().clearStage();
+    }
+
+    /**
+     * Records that a working file has just been written with the
+     * contents of a blob, so it need not be hashed again.
+     * @param name The name of the file.
+     * @param id The ID of the blob.
+     */
+    void written(String name, ObjectId id) {
+        index().record(name, id);
+    }
+
+    /**
+     * Empties the staging area into the changes it makes to the files
+     * of the head commit.
+     * @return The new blob ID of each file staged for addition, and
+     *         null for each file staged for removal that the head
+     *         tracks.
+     */
+    HashMap<String, ObjectId> takeStagedChanges() {
+        HashMap<String, ObjectId> result = new HashMap<>(added());
+        for (String name : removed()) {
+            if (!result.containsKey(name) && head().fileID(name) != null) {
+                result.put(name, null);
+            }
+        }
+        clearStage();
+        return result;
+    }
+
+    /**
+     * Writes out every change made through this session: the branches,
+     * then HEAD, then the index.
+     * @throws GitletException If another command changed a branch this
+     *                         session changes; nothing after it is
+     *                         written.
+     */
+    void flush() {
+        for (Map.Entry<String, String> update : _updates.entrySet()) {
+            String name = update.getKey();
+            _writes += 1;
+            Refs.update(_repo, name, _expected.get(name),
+                    _branches.get(name), update.getValue());
+        }
+        _updates.clear();
+        _expected.clear();
+        if (_headChanged) {
+            _writes += 1;
+            Refs.setHead(_repo, _branch);
+            _headChanged = false;
+        }
+        if (_index != null && _index.write()) {
+            _writes += 1;
+        }
+    }
+
+    /**
+     * Returns how many files this session has read, counting a
+     * directory listing as one.
+     * @return The number of reads.
+     */
+    int reads() {
+        return _reads;
+    }
+
+    /**
+     * Returns how many files this session has written or deleted.
+     * @return The number of writes.
+     */
+    int writes() {
+        return _writes;
+    }
+
+    /** The .gitlet directory of the repository. */
+    private final File _repo;
+
+    /** The current branch, or null until read. */
+    private String _branch;
+
+    /** True if the current branch has changed since HEAD was read. */
+    private boolean _headChanged;
+
+    /** The head of each branch read so far, null for none. */
+    private final HashMap<String, ObjectId> _branches = new HashMap<>();
+
+    /** True once every branch has been read into _branches. */
+    private boolean _allBranches;
+
+    /** The command changing each branch to be written, in order. */
+    private final LinkedHashMap<String, String> _updates =
+        new LinkedHashMap<>();
+
+    /** The stored head of each branch to be written, null for none. */
+    private final HashMap<String, ObjectId> _expected = new HashMap<>();
+
+    /** The head commit, or null until read. */
+    private Commit _head;
+
+    /** The staging area and stat cache, or null until read. */
+    private Index _index;
+
+    /** Files read. */
+    private int _reads;
+
+    /** Files written or deleted. */
+    private int _writes;
+}
@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the per-command Repository session.
+ *  @author Andrew Tom
+ */
+public class RepositoryTest {
+
+    /** Makes an empty repository whose master branch is at A. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+        Refs.init(_repo, "master", A);
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** HEAD, the branch and the index are each read once. */
+    @Test
+    public void readsEachPieceOnce() {
+        Repository session = new Repository(_repo);
+        for (int i = 0; i < 3; i += 1) {
+            assertEquals("master", session.branch());
+            assertEquals(A, session.headId());
+            assertTrue(session.added().isEmpty());
+            assertTrue(session.removed().isEmpty());
+            assertFalse(session.hasStagedChanges());
+        }
+        assertEquals(3, session.reads());
+        assertEquals(0, session.writes());
+    }
+
+    /** Changes stay in memory until flush writes each one once. */
+    @Test
+    public void flushWritesEachChangeOnce() {
+        Repository session = new Repository(_repo);
+        session.stage("f.txt", B);
+        session.stageRemoval("g.txt");
+        session.moveBranch(B, "test");
+        session.updateBranch("other", A, "test");
+        assertEquals(A + "\n", ref("master"));
+        assertFalse(new File(_repo, "refs/other").exists());
+        assertTrue(Index.read(_repo).added().isEmpty());
+        assertEquals(0, session.writes());
+        session.flush();
+        assertEquals(3, session.writes());
+        assertEquals(B + "\n", ref("master"));
+        assertEquals(A + "\n", ref("other"));
+        Reflog log = Reflog.open(_repo, "master");
+        assertEquals(2, log.size());
+        assertEquals(A, log.oldId(1));
+        assertEquals(B, log.newId(1));
+        assertEquals("test", log.command(1));
+        Index stored = Index.read(_repo);
+        assertEquals(B, stored.added().get("f.txt"));
+        assertTrue(stored.removed().contains("g.txt"));
+        session.flush();
+        assertEquals(3, session.writes());
+        assertEquals(2, Reflog.open(_repo, "master").size());
+
+        Repository next = new Repository(_repo);
+        assertEquals(B, next.headId());
+        assertEquals(A, next.branchId("other"));
+        assertEquals(B, next.added().get("f.txt"));
+        assertTrue(next.removed().contains("g.txt"));
+        next.clearStage();
+        next.flush();
+        assertEquals(1, next.writes());
+        assertTrue(Index.read(_repo).added().isEmpty());
+        assertTrue(Index.read(_repo).removed().isEmpty());
+    }
+
+    /** Switching branches rewrites HEAD and nothing else. */
+    @Test
+    public void flushWritesHead() {
+        Refs.update(_repo, "other", null, B, "test");
+        Repository session = new Repository(_repo);
+        session.switchBranch("other");
+        assertEquals("ref: master\n",
+                Utils.readContentsAsString(new File(_repo, "HEAD")));
+        session.flush();
+        assertEquals(1, session.writes());
+        assertEquals("ref: other\n",
+                Utils.readContentsAsString(new File(_repo, "HEAD")));
+        assertEquals(A + "\n", ref("master"));
+        assertEquals(1, Reflog.open(_repo, "master").size());
+    }
+
+    /** A branch moved by another session since it was read is kept. */
+    @Test
+    public void flushRefusesStaleBranch() {
+        Repository first = new Repository(_repo);
+        assertEquals(A, first.headId());
+        Repository second = new Repository(_repo);
+        second.moveBranch(B, "test");
+        second.flush();
+        first.moveBranch(C, "test");
+        first.stage("f.txt", C);
+        try {
+            first.flush();
+            fail("stale update was written");
+        } catch (GitletException excp) {
+            assertEquals(B + "\n", ref("master"));
+            assertEquals(2, Reflog.open(_repo, "master").size());
+            assertTrue(Index.read(_repo).added().isEmpty());
+        }
+    }
+
+    /**
+     * A commit run through Main reads HEAD, the branch, the parent
+     * commit and the index once each, and writes the branch and the
+     * cleared index once each.
+     */
+    @Test
+    public void commitCountsEndToEnd() throws Exception {
+        File work = Scratch.dir();
+        try {
+            run(work, "init");
+            Utils.writeContents(new File(work, "f.txt"), "one");
+            run(work, "add", "f.txt");
+            assertEquals("reads 4 writes 2", run(work, "commit", "one"));
+        } finally {
+            Scratch.delete(work);
+        }
+    }
+
+    /**
+     * Runs a gitlet command in its own process, as a user would.
+     * @param work The working directory to run it in.
+     * @param args The command and its operands.
+     * @return What the command printed, ending with the counts of the
+     *         files its session read and wrote.
+     * @throws Exception If the process cannot be run.
+     */
+    private static String run(File work, String... args) throws Exception {
+        Process p = Scratch.start(work, Counted.class, args);
+        String out = new String(p.getInputStream().readAllBytes());
+        assertEquals(out, 0, p.waitFor());
+        return out.trim();
+    }
+
+    /** Runs Main, then prints what its session read and wrote. */
+    static class Counted {
+        /**
+         * Runs a command.
+         * @param args The command and its operands.
+         * @throws IOException If the command fails to read or write.
+         */
+        public static void main(String... args) throws IOException {
+            Main.main(args);
+            Repository session = Main.session();
+            if (session != null) {
+                System.out.println("reads " + session.reads()
+                                   + " writes " + session.writes());
+            }
+        }
+    }
+
+    /**
+     * Returns the contents of a loose ref file.
+     * @param name The name of the branch.
+     * @return What the file holds.
+     */
+    private String ref(String name) {
+        return Utils.readContentsAsString(new File(_repo, "refs/" + name));
+    }
+
+    /** Commit IDs used as branch heads and blobs. */
+    private static final ObjectId
+        A = Utils.sha1Id("a"), B = Utils.sha1Id("b"), C = Utils.sha1Id("c");
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+
+/** Scratch directories and repositories for the unit tests.
+ *  @author Andrew Tom
+ */
+class Scratch {
+
+    /**
+     * Makes a new empty directory under the system's temporary
+     * directory.
+     * @return The directory.
+     * @throws IOException If it cannot be made.
+     */
+    static File dir() throws IOException {
+        return Files.createTempDirectory("gitlet-test").toFile();
+    }
+
+    /**
+     * Makes an empty .gitlet directory in DIR, with the directories
+     * that hold its blobs and commits.
+     * @param dir The working directory of the repository.
+     * @return The .gitlet directory.
+     */
+    static File repo(File dir) {
+        File repo = new File(dir, ".gitlet");
+        ObjectStore.looseDir(repo).mkdirs();
+        new File(repo, "commits").mkdir();
+        return repo;
+    }
+
+    /**
+     * Starts a class's main method in a new JVM, with the class path of
+     * this one.
+     * @param dir The working directory of the new process.
+     * @param main The class to run.
+     * @param args The arguments to its main method.
+     * @return The process, whose error output is merged into its
+     *         standard output.
+     * @throws IOException If the process cannot be started.
+     */
+    static Process start(File dir, Class<?> main, String... args)
+        throws IOException {
+        StringJoiner classPath = new StringJoiner(File.pathSeparator);
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        ArrayList<String> command = new ArrayList<>(List.of(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp", classPath.toString(), main.getName()));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+    }
+
+    /**
+     * Deletes a file, or a directory and everything under it.
+     * @param f The file to delete.
+     */
+    static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,208 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The last two sections of status: working files that differ from
+ * what is staged or committed, and files nothing tracks.
+ *
+ * The index vouches for most files from their stat data alone. The
+ * rest are read and hashed on a ForkJoinPool, split in halves down to
+ * UNIT files per task, so a large tree hashes on every core. The
+ * number of threads is the "status.threads" setting, by default one
+ * per processor; with one thread, or few files, they are hashed on the
+ * calling thread. The IDs found are recorded in the index afterwards,
+ * on the calling thread, since the index is not shared.
+ *
+ * If a Watcher is running, the working files and their IDs are taken
+ * from the state the last status saved, and only files the watcher
+ * has seen change since are looked at; what this status finds is then
+ * saved in turn. Tracked files that the WorkTree ignores are not
+ * watched, so they are always checked directly.
+ * @author Andrew Tom
+ */
+class Status {
+
+    /**
+     * Compares the working directory of a repository with its stage
+     * and head commit.
+     * @param repository The session of the command.
+     * @param work The working directory.
+     */
+    Status(Repository repository, File work) {
+        Watcher.View view = Watcher.view(repository.dir());
+        boolean watched = view != null && view.complete();
+        Set<String> present = watched ? view.present(work)
+            : new HashSet<>(new WorkTree(work).list());
+        HashMap<String, ObjectId> found = new HashMap<>();
+        for (String name : present) {
+            found.put(name, null);
+        }
+        HashSet<String> outside = new HashSet<>();
+        Map<String, ObjectId> added = repository.added();
+        Set<String> removed = repository.removed();
+        Map<String, ObjectId> committed =
+            repository.head().getFileNameToHash();
+        TreeSet<String> tracked = new TreeSet<>(committed.keySet());
+        tracked.addAll(added.keySet());
+        Index index = repository.index();
+        ArrayList<String> unknown = new ArrayList<>();
+        TreeMap<String, ObjectId> expected = new TreeMap<>();
+        for (String name : tracked) {
+            if (removed.contains(name)) {
+                continue;
+            }
+            boolean listed = present.remove(name);
+            if (!listed) {
+                if (!new File(work, name).isFile()) {
+                    _changes.put(name, "deleted");
+                    continue;
+                }
+                outside.add(name);
+            }
+            ObjectId staged = added.get(name);
+            expected.put(name, staged != null ? staged : committed.get(name));
+            ObjectId id = watched && listed ? view.known(name) : null;
+            if (id == null) {
+                id = index.cached(name);
+            }
+            if (id == null) {
+                unknown.add(name);
+            } else {
+                found.put(name, id);
+            }
+        }
+        ObjectId[] ids = hash(work, unknown, threads(repository.dir()));
+        for (int i = 0; i < ids.length; i += 1) {
+            found.put(unknown.get(i), ids[i]);
+            index.record(unknown.get(i), ids[i]);
+        }
+        for (Map.Entry<String, ObjectId> file : expected.entrySet()) {
+            if (!found.get(file.getKey()).equals(file.getValue())) {
+                _changes.put(file.getKey(), "modified");
+            }
+        }
+        _untracked.addAll(present);
+        if (view != null && view.stale()) {
+            found.keySet().removeAll(outside);
+            view.save(found);
+        }
+    }
+
+    /**
+     * Returns the tracked files whose working copies differ from what
+     * is staged or committed.
+     * @return "modified" or "deleted" for each, sorted by name.
+     */
+    TreeMap<String, String> changes() {
+        return _changes;
+    }
+
+    /**
+     * Returns the working files that are neither staged nor committed,
+     * and those staged for removal but still present.
+     * @return Their names, sorted.
+     */
+    TreeSet<String> untracked() {
+        return _untracked;
+    }
+
+    /**
+     * Returns how many threads to hash working files on.
+     * @param repo The .gitlet directory of the repository.
+     * @return The "status.threads" setting, or the number of
+     *         processors.
+     */
+    static int threads(File repo) {
+        return Config.getInt(repo, "status.threads",
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Hashes working files.
+     * @param work The working directory.
+     * @param names The names of the files.
+     * @param threads How many threads to hash them on.
+     * @return The ID of each file, in the order of NAMES.
+     */
+    static ObjectId[] hash(File work, List<String> names, int threads) {
+        ObjectId[] result = new ObjectId[names.size()];
+        Hasher all = new Hasher(work, names, result, 0, names.size());
+        if (threads <= 1 || names.size() <= UNIT) {
+            all.compute();
+            return result;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(all);
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Hashes a range of files, splitting it while it is large. */
+    private static class Hasher extends RecursiveAction {
+
+        /**
+         * A task hashing NAMES[FROM..TO) into IDS[FROM..TO).
+         * @param work The working directory.
+         * @param names The names of every file.
+         * @param ids Receives the ID of each file.
+         * @param from The first file of this task.
+         * @param to One past its last file.
+         */
+        Hasher(File work, List<String> names, ObjectId[] ids,
+               int from, int to) {
+            _work = work;
+            _names = names;
+            _ids = ids;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= UNIT) {
+                for (int i = _from; i < _to; i += 1) {
+                    _ids[i] = Utils.sha1FileId(
+                            new File(_work, _names.get(i)));
+                }
+                return;
+            }
+            int mid = (_from + _to) >>> 1;
+            invokeAll(new Hasher(_work, _names, _ids, _from, mid),
+                      new Hasher(_work, _names, _ids, mid, _to));
+        }
+
+        /** The working directory. */
+        private final File _work;
+
+        /** The names of every file. */
+        private final List<String> _names;
+
+        /** The ID of each file. */
+        private final ObjectId[] _ids;
+
+        /** The range of files of this task. */
+        private final int _from, _to;
+    }
+
+    /** Most files hashed by one task. */
+    private static final int UNIT = 64;
+
+    /** The changed tracked files. */
+    private final TreeMap<String, String> _changes = new TreeMap<>();
+
+    /** The untracked files. */
+    private final TreeSet<String> _untracked = new TreeSet<>();
+}
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the hashing done by status.
+ *  @author Andrew Tom
+ */
+public class StatusTest {
+
+    /** Makes a scratch directory of FILES small files. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        for (int i = 0; i < FILES; i += 1) {
+            _names.add("f" + i);
+            Utils.writeContents(new File(_dir, "f" + i), "file " + i);
+        }
+    }
+
+    /** Deletes the scratch directory. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** Every thread count gives each file's ID in the order given. */
+    @Test
+    public void hashesInOrderOnAnyThreads() {
+        for (int threads : new int[] {1, 2, 7}) {
+            ObjectId[] ids = Status.hash(_dir, _names, threads);
+            assertEquals(FILES, ids.length);
+            for (int i = 0; i < FILES; i += 1) {
+                assertEquals(Utils.sha1Id("file " + i), ids[i]);
+            }
+        }
+    }
+
+    /** Hashing nothing gives nothing. */
+    @Test
+    public void hashesNothing() {
+        assertEquals(0, Status.hash(_dir, new ArrayList<>(), 4).length);
+    }
+
+    /** Enough files that several tasks hash them. */
+    private static final int FILES = 1000;
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** The names of its files. */
+    private final ArrayList<String> _names = new ArrayList<>();
+}
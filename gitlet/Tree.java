@@ -0,0 +1,388 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The files of a commit as a Merkle tree: one tree object per
+ * directory, listing the files and subdirectories directly inside it
+ * by name. A file entry holds the ID of its blob and a directory entry
+ * the ID of its tree, so equal directories have equal IDs wherever and
+ * whenever they appear, and are stored once. Paths are separated by
+ * '/'.
+ *
+ * A tree is stored in the object store like a blob. It is the magic
+ * "GLTR", a version byte and the number of entries as an int, followed
+ * by each entry, sorted by name: a type byte, FILE or DIR, the name in
+ * modified UTF-8, and the 20-byte ID.
+ * @author Andrew Tom
+ */
+class Tree {
+
+    /** Magic number at the start of a tree. */
+    static final int MAGIC = 0x474c5452;
+
+    /** Current version of the format. */
+    static final int VERSION = 1;
+
+    /** Type byte of a file entry. */
+    static final byte FILE = 'F';
+
+    /** Type byte of a directory entry. */
+    static final byte DIR = 'D';
+
+    /** Separator between the names of a path. */
+    static final char SEPARATOR = '/';
+
+    /** One entry of a tree. */
+    static class Entry {
+
+        /**
+         * An entry.
+         * @param type FILE or DIR.
+         * @param id The ID of the blob or tree.
+         */
+        Entry(byte type, ObjectId id) {
+            _type = type;
+            _id = id;
+        }
+
+        /**
+         * Reports whether this entry is a directory.
+         * @return True for a DIR entry.
+         */
+        boolean isDir() {
+            return _type == DIR;
+        }
+
+        /**
+         * Returns the ID of the blob or tree of this entry.
+         * @return The ID.
+         */
+        ObjectId id() {
+            return _id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj)._type == _type
+                    && ((Entry) obj)._id.equals(_id);
+        }
+
+        @Override
+        public int hashCode() {
+            return _id.hashCode();
+        }
+
+        /** FILE or DIR. */
+        private final byte _type;
+
+        /** The ID of the blob or tree. */
+        private final ObjectId _id;
+    }
+
+    /**
+     * Stores the trees of a set of files, from scratch.
+     * @param repo The .gitlet directory of the repository.
+     * @param files The ID of the blob of each file, by path.
+     * @return The ID of the root tree.
+     */
+    static ObjectId write(File repo, Map<String, ObjectId> files) {
+        return update(repo, null, files);
+    }
+
+    /**
+     * Stores the trees of a set of files that differs from those of
+     * BASE by CHANGES. Only the directories on the paths of the changes
+     * are read, rebuilt and hashed; every other directory keeps its
+     * tree. Directories left empty are dropped, except the root. A
+     * directory may be replaced by a file of the same name, or a file
+     * by a directory, in one update.
+     * @param repo The .gitlet directory of the repository.
+     * @param base The root tree of the original files, or null for none.
+     * @param changes The new ID of each changed file by path, or null
+     *                for files removed.
+     * @return The ID of the new root tree.
+     */
+    static ObjectId update(File repo, ObjectId base,
+                           Map<String, ObjectId> changes) {
+        return update(repo, base, changes, true);
+    }
+
+    /**
+     * Reads a tree.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the tree.
+     * @return Its entries by name.
+     */
+    static TreeMap<String, Entry> read(File repo, ObjectId id) {
+        TreeMap<String, Entry> result = new TreeMap<>();
+        byte[] raw = ObjectStore.read(repo, id);
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(raw))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Object %s is not a tree.", id);
+            }
+            int version = in.readUnsignedByte();
+            if (version > VERSION) {
+                throw Utils.error("Tree is in version %d of the format; "
+                        + "this Gitlet reads up to %d.", version, VERSION);
+            }
+            int count = in.readInt();
+            byte[] idBytes = new byte[ObjectId.BYTES];
+            for (int i = 0; i < count; i += 1) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                in.readFully(idBytes);
+                result.put(name, new Entry(type,
+                        ObjectId.fromBytes(idBytes, 0)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Lists every file under a tree.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the root tree.
+     * @return The ID of the blob of each file, by path.
+     */
+    static HashMap<String, ObjectId> flatten(File repo, ObjectId id) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        flatten(repo, id, "", result);
+        return result;
+    }
+
+    /**
+     * Finds one file under a tree, reading only the trees on its path.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the root tree.
+     * @param path The path of the file.
+     * @return The ID of its blob, or null if there is no such file.
+     */
+    static ObjectId lookup(File repo, ObjectId id, String path) {
+        int slash = path.indexOf(SEPARATOR);
+        Entry entry = read(repo, id).get(slash < 0 ? path
+                : path.substring(0, slash));
+        if (entry == null) {
+            return null;
+        } else if (slash < 0) {
+            return entry.isDir() ? null : entry.id();
+        } else if (!entry.isDir()) {
+            return null;
+        }
+        return lookup(repo, entry.id(), path.substring(slash + 1));
+    }
+
+    /**
+     * Compares the files under two trees, skipping every directory
+     * whose tree is the same on both sides.
+     * @param repo The .gitlet directory of the repository.
+     * @param a The ID of one root tree, or null for no files.
+     * @param b The ID of the other root tree, or null for no files.
+     * @return For each path whose file differs, its blob IDs under A
+     *         and under B, either null where the file is missing.
+     */
+    static TreeMap<String, ObjectId[]> diff(File repo, ObjectId a,
+                                            ObjectId b) {
+        TreeMap<String, ObjectId[]> result = new TreeMap<>();
+        diff(repo, a, b, "", result);
+        return result;
+    }
+
+    /**
+     * Visits a tree and every tree and blob under it, skipping any
+     * tree already in SEEN along with everything under it.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the root tree.
+     * @param seen The IDs of the trees already visited; added to.
+     * @param blobs Receives the ID of every blob found under the trees
+     *              visited.
+     */
+    static void walk(File repo, ObjectId id, HashSet<ObjectId> seen,
+                     HashSet<ObjectId> blobs) {
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            ObjectId next = pending.pop();
+            if (!seen.add(next)) {
+                continue;
+            }
+            for (Entry entry : read(repo, next).values()) {
+                if (entry.isDir()) {
+                    pending.push(entry.id());
+                } else {
+                    blobs.add(entry.id());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a tree and everything under it from one repository to
+     * another. Trees are copied after everything under them, so a tree
+     * the other repository already has is complete there and is not
+     * looked into.
+     * @param from The .gitlet directory holding the tree.
+     * @param to The .gitlet directory to copy it into.
+     * @param id The ID of the tree.
+     */
+    static void copy(File from, File to, ObjectId id) {
+        if (ObjectStore.contains(to, id)) {
+            return;
+        }
+        for (Entry entry : read(from, id).values()) {
+            if (entry.isDir()) {
+                copy(from, to, entry.id());
+            } else {
+                ObjectStore.copy(from, to, entry.id());
+            }
+        }
+        ObjectStore.copy(from, to, id);
+    }
+
+    /**
+     * Rebuilds the tree of one directory.
+     * @param repo The .gitlet directory of the repository.
+     * @param base The directory's current tree, or null.
+     * @param changes The changed files under the directory, by path
+     *                relative to it.
+     * @param root True for the root, which is kept even when empty.
+     * @return The ID of the new tree, or null if it would be empty.
+     */
+    private static ObjectId update(File repo, ObjectId base,
+                                   Map<String, ObjectId> changes,
+                                   boolean root) {
+        TreeMap<String, Entry> entries = base == null ? new TreeMap<>()
+                : read(repo, base);
+        HashMap<String, HashMap<String, ObjectId>> below = new HashMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(FILE, change.getValue()));
+            }
+        }
+        for (String dir : below.keySet()) {
+            Entry old = entries.get(dir);
+            ObjectId sub = update(repo, old != null && old.isDir()
+                    ? old.id() : null, below.get(dir), false);
+            if (sub == null) {
+                if (old != null && old.isDir()) {
+                    entries.remove(dir);
+                }
+            } else {
+                entries.put(dir, new Entry(DIR, sub));
+            }
+        }
+        if (entries.isEmpty() && !root) {
+            return null;
+        }
+        byte[] encoded = encode(entries);
+        ObjectId result = ObjectId.hash(encoded);
+        if (!result.equals(base)) {
+            ObjectStore.write(repo, result, encoded);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the entries of a tree.
+     * @param entries The entries by name.
+     * @return The encoded tree, whose SHA-1 is its ID.
+     */
+    static byte[] encode(TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+            byte[] raw = new byte[ObjectId.BYTES];
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getValue()._type);
+                out.writeUTF(entry.getKey());
+                entry.getValue().id().copyTo(raw, 0);
+                out.write(raw);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Adds every file under a tree to RESULT.
+     * @param repo The .gitlet directory of the repository.
+     * @param id The ID of the tree.
+     * @param prefix The path of the tree's directory, followed by a
+     *               separator unless it is the root.
+     * @param result The files found so far, by path.
+     */
+    private static void flatten(File repo, ObjectId id, String prefix,
+                                HashMap<String, ObjectId> result) {
+        for (Map.Entry<String, Entry> e : read(repo, id).entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue().isDir()) {
+                flatten(repo, e.getValue().id(), path + SEPARATOR, result);
+            } else {
+                result.put(path, e.getValue().id());
+            }
+        }
+    }
+
+    /**
+     * Adds the files that differ between two trees to RESULT.
+     * @param repo The .gitlet directory of the repository.
+     * @param a The ID of one tree, or null.
+     * @param b The ID of the other tree, or null.
+     * @param prefix The path of the trees' directory, followed by a
+     *               separator unless it is the root.
+     * @param result The differences found so far, by path.
+     */
+    private static void diff(File repo, ObjectId a, ObjectId b,
+                             String prefix,
+                             TreeMap<String, ObjectId[]> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        TreeMap<String, Entry> left = a == null ? new TreeMap<>()
+                : read(repo, a);
+        TreeMap<String, Entry> right = b == null ? new TreeMap<>()
+                : read(repo, b);
+        TreeMap<String, Entry> names = new TreeMap<>(left);
+        names.putAll(right);
+        for (String name : names.keySet()) {
+            Entry l = left.get(name), r = right.get(name);
+            if (l != null && l.equals(r)) {
+                continue;
+            }
+            String path = prefix + name;
+            ObjectId lDir = l != null && l.isDir() ? l.id() : null;
+            ObjectId rDir = r != null && r.isDir() ? r.id() : null;
+            if (lDir != null || rDir != null) {
+                diff(repo, lDir, rDir, path + SEPARATOR, result);
+            }
+            ObjectId lFile = l != null && !l.isDir() ? l.id() : null;
+            ObjectId rFile = r != null && !r.isDir() ? r.id() : null;
+            if (lFile != null || rFile != null) {
+                result.put(path, new ObjectId[] {lFile, rFile});
+            }
+        }
+    }
+}
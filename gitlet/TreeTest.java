@@ -0,0 +1,73 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of updating commit trees.
+ *  @author Andrew Tom
+ */
+public class TreeTest {
+
+    /** Makes an empty object store. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Scratch.dir();
+        _repo = Scratch.repo(_dir);
+    }
+
+    /** Deletes it. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_dir);
+    }
+
+    /** A directory replaced by a file of its name leaves the file. */
+    @Test
+    public void directoryBecomesFile() {
+        HashMap<String, ObjectId> files = new HashMap<>();
+        files.put("a/x", A);
+        files.put("a/y", B);
+        files.put("b", C);
+        ObjectId base = Tree.write(_repo, files);
+
+        HashMap<String, ObjectId> changes = new HashMap<>();
+        changes.put("a/x", null);
+        changes.put("a/y", null);
+        changes.put("a", C);
+        Map<String, ObjectId> after =
+            Tree.flatten(_repo, Tree.update(_repo, base, changes));
+        assertEquals(Map.of("a", C, "b", C), after);
+    }
+
+    /** A file replaced by a directory of its name leaves the directory. */
+    @Test
+    public void fileBecomesDirectory() {
+        HashMap<String, ObjectId> files = new HashMap<>();
+        files.put("a", A);
+        files.put("b", C);
+        ObjectId base = Tree.write(_repo, files);
+
+        HashMap<String, ObjectId> changes = new HashMap<>();
+        changes.put("a", null);
+        changes.put("a/x", B);
+        Map<String, ObjectId> after =
+            Tree.flatten(_repo, Tree.update(_repo, base, changes));
+        assertEquals(Map.of("a/x", B, "b", C), after);
+    }
+
+    /** Blob IDs. */
+    private static final ObjectId
+        A = Utils.sha1Id("a"), B = Utils.sha1Id("b"), C = Utils.sha1Id("c");
+
+    /** The scratch directory. */
+    private File _dir;
+
+    /** Its .gitlet directory. */
+    private File _repo;
+}
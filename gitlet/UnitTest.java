@@ -12,7 +12,24 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class,
+                                        ObjectStoreTest.class,
+                                        DeltaTest.class,
+                                        ChunkerTest.class,
+                                        CommitCodecTest.class,
+                                        CommitGraphTest.class,
+                                        CommitIndexTest.class,
+                                        MessageIndexTest.class,
+                                        TreeTest.class,
+                                        FileTableTest.class,
+                                        RefsTest.class,
+                                        ReflogTest.class,
+                                        GarbageCollectorTest.class,
+                                        RepositoryTest.class,
+                                        IndexTest.class,
+                                        StatusTest.class,
+                                        WatcherTest.class,
+                                        IgnoreRulesTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -0,0 +1,583 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * An optional background process, started by "watch", that notes
+ * which working files change so that status need not look at the
+ * rest.
+ *
+ * While it runs the watcher holds a lock on .gitlet/watch.lock and
+ * appends the path of every file or directory the WatchService
+ * reports created, changed or deleted anywhere in the working tree to
+ * .gitlet/watch, as writeUTF records after the magic "GLWJ", a
+ * version int and a token chosen afresh each time it starts. An empty
+ * name means the service overflowed and lost events. A service
+ * watches one directory, so each directory is registered as it
+ * appears, and everything already in it is journaled. Ignored files
+ * and directories are left out, and a change to .gitletignore is
+ * journaled as an overflow, since it can change what status lists.
+ * Status saves what it found in .gitlet/watchState: the token, how
+ * far into the journal it had read, and each working file with the ID
+ * of its contents if known. The next status need only look again at
+ * the files named in the journal since then. If no watcher holds the
+ * lock, the token differs or the journal has overflowed, status scans
+ * everything and saves a new state.
+ *
+ * Events the service has queued but the watcher has not yet journaled
+ * would be missed, so status first syncs with the watcher: it creates
+ * a cookie file in .gitlet, which the watcher also watches, and reads
+ * the journal until the cookie's name appears in it. The watcher
+ * journals every event already queued before a cookie, so every change
+ * made before the cookie is then in the journal. If the cookie does
+ * not appear within the "watch.timeout" setting in milliseconds,
+ * status scans everything instead.
+ * @author Andrew Tom
+ */
+class Watcher {
+
+    /** Magic number at the start of the journal. */
+    static final int MAGIC = 0x474c574a;
+
+    /** Magic number at the start of the saved state. */
+    static final int STATE_MAGIC = 0x474c5753;
+
+    /** Current version of the journal and state. */
+    static final int VERSION = 1;
+
+    /**
+     * Watches a working directory until stop is called, journaling
+     * every change to its files.
+     * @param repo The .gitlet directory of the repository.
+     * @param work Its working directory.
+     * @throws GitletException If a watcher is already running.
+     */
+    static void run(File repo, File work) {
+        File stop = new File(repo, STOP);
+        try (FileChannel lockChannel = FileChannel.open(
+                 new File(repo, LOCK).toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE);
+             WatchService service =
+                 FileSystems.getDefault().newWatchService()) {
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                throw Utils.error("A watcher is already running.");
+            }
+            stop.delete();
+            Path root = work.getAbsoluteFile().toPath();
+            Path repoDir = repo.getAbsoluteFile().toPath();
+            WorkTree tree = new WorkTree(work);
+            register(service, tree, root, root, new ArrayList<>());
+            repoDir.register(service, ENTRY_CREATE);
+            try (FileChannel out = FileChannel.open(
+                    new File(repo, JOURNAL).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(out, header(new Random().nextLong()));
+                boolean closed = false;
+                while (!closed && !stop.exists()) {
+                    WatchKey key = service.poll(POLL, TimeUnit.MILLISECONDS);
+                    ArrayList<String> names = new ArrayList<>();
+                    ArrayList<String> cookies = new ArrayList<>();
+                    while (key != null) {
+                        Path dir = (Path) key.watchable();
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == OVERFLOW) {
+                                names.add("");
+                                continue;
+                            }
+                            Path path = dir.resolve((Path) event.context());
+                            String name = name(root, path);
+                            if (dir.equals(repoDir)) {
+                                if (name.startsWith(COOKIE_PATH)) {
+                                    cookies.add(name);
+                                }
+                                continue;
+                            }
+                            boolean isDir = Files.isDirectory(path);
+                            if (name.equals(WorkTree.IGNORE)) {
+                                tree = new WorkTree(work);
+                                register(service, tree, root, root,
+                                        new ArrayList<>());
+                                names.add("");
+                            } else if (tree.ignored(name, isDir)) {
+                                continue;
+                            }
+                            names.add(name);
+                            if (event.kind() == ENTRY_CREATE && isDir) {
+                                register(service, tree, root, path, names);
+                            }
+                        }
+                        if (!key.reset()
+                                && (dir.equals(root) || dir.equals(repoDir))) {
+                            closed = true;
+                        }
+                        key = cookies.isEmpty() ? null : service.poll();
+                    }
+                    names.addAll(cookies);
+                    write(out, records(names));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stop.delete();
+        }
+    }
+
+    /**
+     * Asks the watcher of a repository to stop.
+     * @param repo The .gitlet directory of the repository.
+     * @throws GitletException If no watcher is running.
+     */
+    static void stop(File repo) {
+        if (!running(repo)) {
+            throw Utils.error("No watcher is running.");
+        }
+        Utils.writeContents(new File(repo, STOP), "");
+    }
+
+    /**
+     * Returns what the running watcher of a repository has seen since
+     * the last saved state, once it has journaled every change made
+     * before this call. If it has not within the "watch.timeout"
+     * setting, the view is not complete, so status scans everything.
+     * @param repo The .gitlet directory of the repository.
+     * @return The view, or null if no watcher is running.
+     */
+    static View view(File repo) {
+        if (!running(repo)) {
+            return null;
+        }
+        String name = COOKIE + ProcessHandle.current().pid() + "."
+            + System.nanoTime();
+        File cookie = new File(repo, name);
+        long deadline = System.currentTimeMillis()
+            + Config.getInt(repo, "watch.timeout", TIMEOUT);
+        Utils.writeContents(cookie, "");
+        try {
+            while (true) {
+                View result = read(repo);
+                if (result == null
+                        || result._cookies.contains(REPO_PATH + name)) {
+                    return result;
+                }
+                if (System.currentTimeMillis() >= deadline
+                        || !running(repo)) {
+                    result._synced = false;
+                    return result;
+                }
+                Thread.sleep(SYNC_POLL);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /**
+     * Reads the journal and saved state of a repository, whether or not
+     * a watcher is running.
+     * @param repo The .gitlet directory of the repository.
+     * @return The view, or null if there is no journal.
+     */
+    static View read(File repo) {
+        File journal = new File(repo, JOURNAL);
+        if (!journal.isFile()) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(journal.toPath())) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                continue;
+            }
+            if (header.hasRemaining()) {
+                return null;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw Utils.error("Corrupt watch journal.");
+            }
+            View result = new View(repo, header.getLong());
+            result.load();
+            long start = result._state == null ? HEADER : result._end;
+            ByteBuffer tail = ByteBuffer.allocate(
+                    (int) Math.max(0, in.size() - start));
+            in.position(start);
+            while (tail.hasRemaining() && in.read(tail) >= 0) {
+                continue;
+            }
+            tail.flip();
+            result._end = start + result.scan(tail);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the start of a journal.
+     * @param token The token of the watcher writing it.
+     * @return The magic, version and token.
+     */
+    static byte[] header(long token) {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION)
+            .putLong(token).array();
+    }
+
+    /**
+     * Returns journal records naming changed files.
+     * @param names The names of the files, "" for an overflow.
+     * @return The records.
+     */
+    static byte[] records(List<String> names) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(result)) {
+            for (String name : names) {
+                data.writeUTF(name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toByteArray();
+    }
+
+    /** What status may take from a watcher. */
+    static final class View {
+
+        /**
+         * A view of the journal of a watcher.
+         * @param repo The .gitlet directory of the repository.
+         * @param token The token of the journal.
+         */
+        private View(File repo, long token) {
+            _repo = repo;
+            _token = token;
+        }
+
+        /**
+         * Reports whether the saved state and the journal since account
+         * for every working file.
+         * @return False if status must scan the working directory.
+         */
+        boolean complete() {
+            return _state != null && !_overflow && _synced;
+        }
+
+        /**
+         * Returns the working files, as saved and then changed since.
+         * Only usable if complete.
+         * @param work The working directory.
+         * @return The names of the plain files in WORK.
+         */
+        Set<String> present(File work) {
+            HashSet<String> result = new HashSet<>(_state.keySet());
+            ArrayList<String> files = new ArrayList<>();
+            for (String name : _dirty) {
+                if (new File(work, name).isFile()) {
+                    files.add(name);
+                } else if (!result.remove(name)) {
+                    String prefix = name + "/";
+                    result.removeIf(path -> path.startsWith(prefix));
+                }
+            }
+            result.addAll(files);
+            return result;
+        }
+
+        /**
+         * Returns the ID of a working file if it has not changed since
+         * the state was saved.
+         * @param name The name of the file.
+         * @return The ID, or null if it must be found some other way.
+         */
+        ObjectId known(String name) {
+            return complete() && !_dirty.contains(name)
+                ? _state.get(name) : null;
+        }
+
+        /**
+         * Reports whether the saved state is out of date.
+         * @return True if it is missing, from another watcher, or
+         *         anything has changed since.
+         */
+        boolean stale() {
+            return !complete() || !_dirty.isEmpty();
+        }
+
+        /**
+         * Saves the working files, found by a status that began after
+         * this view was read.
+         * @param working The ID of each working file, or null if not
+         *                known.
+         */
+        void save(Map<String, ObjectId> working) {
+            File state = new File(_repo, STATE);
+            File tmp = new File(_repo, STATE + ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(tmp.toPath())))) {
+                    out.writeInt(STATE_MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(_token);
+                    out.writeLong(_end);
+                    out.writeInt(working.size());
+                    byte[] raw = new byte[ObjectId.BYTES];
+                    for (Map.Entry<String, ObjectId> file
+                             : working.entrySet()) {
+                        out.writeUTF(file.getKey());
+                        out.writeBoolean(file.getValue() != null);
+                        if (file.getValue() != null) {
+                            file.getValue().copyTo(raw, 0);
+                            out.write(raw);
+                        }
+                    }
+                }
+                Files.move(tmp.toPath(), state.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Reads the saved state, if it was saved from this journal,
+         * leaving _end at the offset it had read to.
+         */
+        private void load() {
+            File state = new File(_repo, STATE);
+            if (!state.isFile()) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(
+                            Files.newInputStream(state.toPath())))) {
+                if (in.readInt() != STATE_MAGIC || in.readInt() != VERSION
+                        || in.readLong() != _token) {
+                    return;
+                }
+                _end = in.readLong();
+                HashMap<String, ObjectId> files = new HashMap<>();
+                byte[] raw = new byte[ObjectId.BYTES];
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    String name = in.readUTF();
+                    ObjectId id = null;
+                    if (in.readBoolean()) {
+                        in.readFully(raw);
+                        id = ObjectId.fromBytes(raw, 0);
+                    }
+                    files.put(name, id);
+                }
+                _state = files;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Collects the names in journal records, stopping before a
+         * record the watcher is still writing.
+         * @param records The records.
+         * @return The number of bytes of whole records.
+         */
+        private int scan(ByteBuffer records) {
+            int done = 0;
+            while (records.remaining() >= Short.BYTES) {
+                int length = records.getShort(done) & 0xffff;
+                if (records.remaining() < Short.BYTES + length) {
+                    break;
+                }
+                byte[] name = new byte[length];
+                records.position(done + Short.BYTES);
+                records.get(name);
+                String text = new String(name, StandardCharsets.UTF_8);
+                if (length == 0) {
+                    _overflow = true;
+                } else if (text.startsWith(COOKIE_PATH)) {
+                    _cookies.add(text);
+                } else {
+                    _dirty.add(text);
+                }
+                done = records.position();
+            }
+            return done;
+        }
+
+        /** The .gitlet directory of the repository. */
+        private final File _repo;
+
+        /** The token of the journal. */
+        private final long _token;
+
+        /** The offset in the journal read to. */
+        private long _end;
+
+        /** The saved working files, or null if not saved from this
+         *  journal. */
+        private HashMap<String, ObjectId> _state;
+
+        /** Files changed since the state was saved. */
+        private final HashSet<String> _dirty = new HashSet<>();
+
+        /** True if the journal overflowed since the state was saved. */
+        private boolean _overflow;
+
+        /** Journal names of the cookies seen since the state was
+         *  saved. */
+        private final HashSet<String> _cookies = new HashSet<>();
+
+        /** False if the watcher did not journal a cookie in time. */
+        private boolean _synced = true;
+    }
+
+    /**
+     * Reports whether a watcher holds the lock of a repository.
+     * @param repo The .gitlet directory of the repository.
+     * @return True if one is running.
+     */
+    private static boolean running(File repo) {
+        File lock = new File(repo, LOCK);
+        if (!lock.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lock.toPath(),
+                StandardOpenOption.WRITE)) {
+            FileLock held = channel.tryLock();
+            if (held == null) {
+                return true;
+            }
+            held.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Watches a directory and every directory of the working tree under
+     * it.
+     * @param service The watch service.
+     * @param tree The working tree.
+     * @param root The working directory.
+     * @param dir The directory.
+     * @param found Receives the path of each file and directory under
+     *              DIR, which may have changed before it was watched.
+     * @throws IOException If a directory cannot be watched.
+     */
+    private static void register(WatchService service, WorkTree tree,
+                                 Path root, Path dir, List<String> found)
+        throws IOException {
+        dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        File[] files = dir.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = name(root, file.toPath());
+            if (tree.ignored(name, file.isDirectory())) {
+                continue;
+            }
+            found.add(name);
+            if (file.isDirectory()) {
+                register(service, tree, root, file.toPath(), found);
+            }
+        }
+    }
+
+    /**
+     * Returns the name status uses for a path in the working tree.
+     * @param root The working directory.
+     * @param path The path.
+     * @return PATH relative to ROOT, with '/' between directories.
+     */
+    private static String name(Path root, Path path) {
+        return root.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Writes all of some bytes to the journal.
+     * @param out The journal.
+     * @param bytes The bytes.
+     * @throws IOException If the write fails.
+     */
+    private static void write(FileChannel out, byte[] bytes)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** Name of the journal. */
+    private static final String JOURNAL = "watch";
+
+    /** Name of the lock the watcher holds. */
+    private static final String LOCK = "watch.lock";
+
+    /** Name of the file asking the watcher to stop. */
+    private static final String STOP = "watch.stop";
+
+    /** Start of the names of cookie files. */
+    private static final String COOKIE = "watch.cookie.";
+
+    /** Name of the .gitlet directory in the journal, with a '/'. */
+    private static final String REPO_PATH = ".gitlet/";
+
+    /** Start of the journal names of cookie files. */
+    private static final String COOKIE_PATH = REPO_PATH + COOKIE;
+
+    /** Name of the state saved by status. */
+    private static final String STATE = "watchState";
+
+    /** Bytes in the journal's header. */
+    private static final int HEADER = 16;
+
+    /** Milliseconds between checks for a request to stop. */
+    private static final long POLL = 250;
+
+    /** Default milliseconds to wait for a cookie to be journaled. */
+    private static final int TIMEOUT = 2000;
+
+    /** Milliseconds between reads of the journal while syncing. */
+    private static final long SYNC_POLL = 2;
+}
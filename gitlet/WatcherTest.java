@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of reading the watcher's journal and the state status saves.
+ *  @author Andrew Tom
+ */
+public class WatcherTest {
+
+    /** Makes a .gitlet directory with a journal of no changes. */
+    @Before
+    public void setUp() throws IOException {
+        _repo = Scratch.dir();
+        append(Watcher.header(TOKEN));
+    }
+
+    /** Deletes the directory. */
+    @After
+    public void tearDown() {
+        Scratch.delete(_repo);
+    }
+
+    /** Nothing can be taken from a journal before status saves. */
+    @Test
+    public void incompleteUntilSaved() throws IOException {
+        append(Watcher.records(List.of("a", "b")));
+        Watcher.View view = Watcher.read(_repo);
+        assertFalse(view.complete());
+        assertTrue(view.stale());
+        assertNull(view.known("a"));
+        view.save(state());
+        view = Watcher.read(_repo);
+        assertTrue(view.complete());
+        assertFalse(view.stale());
+        assertEquals(A, view.known("a"));
+        assertNull(view.known("u"));
+    }
+
+    /** Only files journaled since the save are dirty. */
+    @Test
+    public void changesSinceSaveAreDirty() throws IOException {
+        Watcher.read(_repo).save(state());
+        append(Watcher.records(List.of("a", "c")));
+        Watcher.View view = Watcher.read(_repo);
+        assertTrue(view.complete());
+        assertTrue(view.stale());
+        assertNull(view.known("a"));
+        assertEquals(B, view.known("b"));
+        assertEquals(Set.of("b", "u"), view.present(_repo));
+    }
+
+    /** A record still being written is left for the next reader. */
+    @Test
+    public void partialRecordIsLeft() throws IOException {
+        Watcher.read(_repo).save(state());
+        byte[] whole = Watcher.records(List.of("b"));
+        append(Arrays.copyOf(whole, whole.length - 1));
+        Watcher.View view = Watcher.read(_repo);
+        assertFalse(view.stale());
+        assertEquals(B, view.known("b"));
+    }
+
+    /** An overflow makes the state unusable. */
+    @Test
+    public void overflowForcesScan() throws IOException {
+        Watcher.read(_repo).save(state());
+        append(Watcher.records(List.of("")));
+        Watcher.View view = Watcher.read(_repo);
+        assertFalse(view.complete());
+        assertNull(view.known("b"));
+    }
+
+    /** A state saved from another watcher's journal is ignored. */
+    @Test
+    public void otherTokenIgnored() throws IOException {
+        Watcher.read(_repo).save(state());
+        new File(_repo, "watch").delete();
+        append(Watcher.header(TOKEN + 1));
+        assertFalse(Watcher.read(_repo).complete());
+    }
+
+    /**
+     * A file edited just before status is seen as changed, because
+     * status waits for the watcher to journal everything queued first.
+     */
+    @Test
+    public void syncsWithRunningWatcher() throws Exception {
+        File work = Scratch.dir();
+        File repo = Scratch.repo(work);
+        File f = new File(work, "f.txt");
+        Utils.writeContents(f, "one");
+        Thread watcher = new Thread(() -> Watcher.run(repo, work));
+        watcher.start();
+        try {
+            Watcher.View view = null;
+            for (int i = 0; i < WAIT && view == null; i += 1) {
+                Thread.sleep(1);
+                view = Watcher.view(repo);
+            }
+            assertNotNull(view);
+            view.save(new HashMap<>(Map.of("f.txt", A)));
+            for (int i = 0; i < ROUNDS; i += 1) {
+                view = Watcher.view(repo);
+                assertTrue(view.complete());
+                assertFalse(view.stale());
+                assertEquals(A, view.known("f.txt"));
+                Utils.writeContents(f, "two" + i);
+                view = Watcher.view(repo);
+                assertTrue(view.complete());
+                assertNull(view.known("f.txt"));
+                view.save(new HashMap<>(Map.of("f.txt", A)));
+            }
+        } finally {
+            Watcher.stop(repo);
+            watcher.join();
+            Scratch.delete(work);
+        }
+    }
+
+    /**
+     * Returns a state of three working files, two of them known.
+     * @return The ID of each file, or null.
+     */
+    private static HashMap<String, ObjectId> state() {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        result.put("a", A);
+        result.put("b", B);
+        result.put("u", null);
+        return result;
+    }
+
+    /**
+     * Appends bytes to the journal.
+     * @param bytes The bytes.
+     */
+    private void append(byte[] bytes) throws IOException {
+        Files.write(new File(_repo, "watch").toPath(), bytes,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /** Most milliseconds to wait for the watcher to start. */
+    private static final int WAIT = 5000;
+
+    /** Edits made while the watcher runs. */
+    private static final int ROUNDS = 20;
+
+    /** Token of the journal. */
+    private static final long TOKEN = 42;
+
+    /** IDs of working files. */
+    private static final ObjectId A = Utils.sha1Id("a"), B = Utils.sha1Id("b");
+
+    /** The scratch .gitlet directory. */
+    private File _repo;
+}
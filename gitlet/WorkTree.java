@@ -0,0 +1,172 @@
+package gitlet;
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.TreeSet;
+
+/**
+ * The files of a working directory, named by their paths relative to
+ * it with '/' between directories, as commits name them. The .gitlet
+ * directory is never part of the working tree, and neither is
+ * anything the IgnoreRules in .gitletignore at its top match; ignored
+ * directories are not looked in at all.
+ * @author Andrew Tom
+ */
+class WorkTree {
+
+    /** Name of the file of ignore patterns. */
+    static final String IGNORE = ".gitletignore";
+
+    /**
+     * The working tree of a directory, ignoring what its .gitletignore
+     * says to.
+     * @param work The working directory.
+     */
+    WorkTree(File work) {
+        _work = work;
+        File ignore = new File(work, IGNORE);
+        _rules = new IgnoreRules(
+                ignore.isFile() ? Utils.readContentsAsString(ignore) : "");
+    }
+
+    /**
+     * Returns every plain file of the tree.
+     * @return Their paths, sorted.
+     */
+    TreeSet<String> list() {
+        TreeSet<String> result = new TreeSet<>();
+        walk(_work, "", result);
+        return result;
+    }
+
+    /**
+     * Reports whether a path is left out of the tree.
+     * @param path The path from the top of the tree.
+     * @param dir True if it is a directory.
+     * @return True if it is .gitlet, in it, or ignored.
+     */
+    boolean ignored(String path, boolean dir) {
+        return path.equals(REPO) || path.startsWith(REPO + "/")
+            || _rules.ignored(path, dir);
+    }
+
+    /**
+     * Returns the files named by command-line operands, each a file, a
+     * directory standing for every file of the tree under it, or a
+     * glob pattern such as "*.txt" or "src/**.java" matched against
+     * every file of the tree. A file named outright is included even
+     * if it is ignored.
+     * @param operands The operands.
+     * @return The paths of the files, sorted and without repeats.
+     * @throws GitletException If an operand names no file.
+     */
+    TreeSet<String> expand(String... operands) {
+        TreeSet<String> result = new TreeSet<>();
+        TreeSet<String> all = null;
+        for (String operand : operands) {
+            if (isGlob(operand)) {
+                if (all == null) {
+                    all = list();
+                }
+                PathMatcher glob = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + operand);
+                boolean matched = false;
+                for (String path : all) {
+                    if (glob.matches(Path.of(path))) {
+                        result.add(path);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    throw Utils.error("File does not exist.");
+                }
+                continue;
+            }
+            String path = relative(operand);
+            File file = new File(_work, path);
+            if (path.isEmpty() || file.isDirectory()) {
+                walk(file, path.isEmpty() ? "" : path + "/", result);
+            } else if (file.isFile()) {
+                result.add(path);
+            } else {
+                throw Utils.error("File does not exist.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the plain files of the tree under a directory to a set,
+     * without looking in ignored directories.
+     * @param dir The directory, which is not ignored.
+     * @param prefix The path of DIR with a trailing '/', or "" for the
+     *               working directory itself.
+     * @param result Receives the path of each file.
+     */
+    private void walk(File dir, String prefix, TreeSet<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            boolean isDir = file.isDirectory();
+            if (path.equals(REPO) || _rules.matches(path, isDir)) {
+                continue;
+            }
+            if (isDir) {
+                walk(file, path + "/", result);
+            } else if (file.isFile()) {
+                result.add(path);
+            }
+        }
+    }
+
+    /**
+     * Returns the path of an operand relative to the working directory.
+     * @param operand A file name, relative to the working directory or
+     *                absolute.
+     * @return Its path, or "" for the working directory itself.
+     * @throws GitletException If it is outside the working directory or
+     *                         in .gitlet.
+     */
+    private String relative(String operand) {
+        Path base = _work.getAbsoluteFile().toPath().normalize();
+        Path path = base.resolve(operand).normalize();
+        if (!path.startsWith(base)) {
+            throw Utils.error("File is outside the working directory.");
+        }
+        String result = base.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+        if (result.equals(REPO) || result.startsWith(REPO + "/")) {
+            throw Utils.error("File does not exist.");
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether an operand is a glob pattern.
+     * @param operand The operand.
+     * @return True if it has a wildcard or bracket.
+     */
+    private static boolean isGlob(String operand) {
+        for (char c : GLOB_CHARS.toCharArray()) {
+            if (operand.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Name of the repository directory, never part of the tree. */
+    private static final String REPO = ".gitlet";
+
+    /** Characters that make an operand a glob pattern. */
+    private static final String GLOB_CHARS = "*?[{";
+    /** The working directory. */
+    private final File _work;
+
+    /** What .gitletignore says to ignore. */
+    private final IgnoreRules _rules;
+}